@@ -0,0 +1,32 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transit;
+
+/**
+ * Implemented by ReadHandlers for values encoded as escaped strings
+ * (e.g. "~:foo" or "~i42") that can decode from a window onto the
+ * parser's buffer. The parser passes the representation without its
+ * escape prefix and without copying it into a String. The window is only
+ * valid for the duration of the call, so handlers must not keep it.
+ */
+public interface CharSequenceReadHandler<T> {
+    /**
+     * Converts the string representation of a transit value to an
+     * instance of a type
+     * @param rep the representation, not including the escape and tag
+     * @return the converted object
+     */
+    T fromChars(CharSequence rep);
+}
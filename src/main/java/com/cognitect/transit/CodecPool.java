@@ -0,0 +1,56 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transit;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * A bounded pool of writers and readers for one format and handler set.
+ * Borrowing one resets a pooled instance to the given stream, so its
+ * handler lookups, caches and buffers are reused; a new one is created
+ * when the pool is empty. Instances are used by one thread at a time,
+ * between borrowing and releasing them.
+ */
+public interface CodecPool {
+
+    /**
+     * Borrows a writer
+     * @param out the output stream to write to
+     * @return a writer, to be released when done
+     */
+    <T> ResettableWriter<T> writer(OutputStream out);
+
+    /**
+     * Borrows a reader
+     * @param in the input stream to read from
+     * @return a reader, to be released when done
+     */
+    ResettableReader reader(InputStream in);
+
+    /**
+     * Flushes a writer borrowed from this pool and returns it to the pool,
+     * or drops it if the pool is full. It must not be used afterwards.
+     * @param writer the writer to release
+     */
+    void release(ResettableWriter<?> writer);
+
+    /**
+     * Returns a reader borrowed from this pool to the pool, or drops it if
+     * the pool is full. It must not be used afterwards.
+     * @param reader the reader to release
+     */
+    void release(ResettableReader reader);
+}
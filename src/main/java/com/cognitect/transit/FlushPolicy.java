@@ -0,0 +1,103 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Determines when a Writer pushes buffered output to its output stream.
+ * A Writer consults its policy after each top-level value it writes;
+ * nested values are never flushed individually.
+ */
+public final class FlushPolicy {
+
+    /**
+     * Flush policy modes
+     */
+    public static enum Mode { NEVER, EACH_VALUE, EVERY_N_VALUES, EVERY_N_BYTES, INTERVAL }
+
+    /**
+     * Never flushes; output reaches the stream when the writer's buffer
+     * fills or when Writer.flush is called
+     */
+    public static final FlushPolicy NEVER = new FlushPolicy(Mode.NEVER, 0);
+
+    /**
+     * Flushes after every top-level value; this is the default policy
+     */
+    public static final FlushPolicy EACH_VALUE = new FlushPolicy(Mode.EACH_VALUE, 1);
+
+    private final Mode mode;
+    private final long threshold;
+
+    private FlushPolicy(Mode mode, long threshold) {
+        this.mode = mode;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Creates a policy that flushes after every n top-level values
+     * @param n number of values
+     * @return a flush policy
+     */
+    public static FlushPolicy everyValues(long n) {
+        if (n < 1)
+            throw new IllegalArgumentException("Value count must be positive: " + n);
+        return new FlushPolicy(Mode.EVERY_N_VALUES, n);
+    }
+
+    /**
+     * Creates a policy that flushes once at least n bytes have been
+     * written since the last flush
+     * @param n number of bytes
+     * @return a flush policy
+     */
+    public static FlushPolicy everyBytes(long n) {
+        if (n < 1)
+            throw new IllegalArgumentException("Byte count must be positive: " + n);
+        return new FlushPolicy(Mode.EVERY_N_BYTES, n);
+    }
+
+    /**
+     * Creates a policy that flushes once at least the given amount of time
+     * has passed since the last flush; the check happens when a value is
+     * written, there is no background flushing
+     * @param duration amount of time
+     * @param unit unit of duration
+     * @return a flush policy
+     */
+    public static FlushPolicy interval(long duration, TimeUnit unit) {
+        if (duration < 0)
+            throw new IllegalArgumentException("Interval must not be negative: " + duration);
+        return new FlushPolicy(Mode.INTERVAL, unit.toNanos(duration));
+    }
+
+    /**
+     * Gets the mode of this policy
+     * @return mode
+     */
+    public Mode getMode() {
+        return mode;
+    }
+
+    /**
+     * Gets the threshold of this policy: a value count, a byte count or
+     * an interval in nanoseconds, depending on the mode
+     * @return threshold
+     */
+    public long getThreshold() {
+        return threshold;
+    }
+}
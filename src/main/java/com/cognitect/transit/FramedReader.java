@@ -0,0 +1,60 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transit;
+
+/**
+ * Reads the records written by a FramedWriter, in order or by number. If
+ * the footer is missing, because the writer did not finish, the records
+ * are found by following their length prefixes, and a trailing partial
+ * record is ignored. A FramedReader is not thread safe; readers sharing
+ * a file, each reading a range of records, should have a channel each.
+ */
+public interface FramedReader {
+
+    /**
+     * @return the number of records
+     */
+    long count();
+
+    /**
+     * @param n a record number
+     * @return the offset in the input of record n
+     */
+    long offset(long n);
+
+    /**
+     * Reads record n, which must be less than count
+     * @param n a record number
+     * @return the record's value
+     */
+    <T> T read(long n);
+
+    /**
+     * Makes record n the next one next reads
+     * @param n a record number, up to count
+     */
+    void seek(long n);
+
+    /**
+     * @return whether there is a record after the last one read
+     */
+    boolean hasNext();
+
+    /**
+     * Reads the record after the last one read, or the first record
+     * @return the record's value
+     */
+    <T> T next();
+}
@@ -0,0 +1,45 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transit;
+
+/**
+ * Writes transit values as framed records, which can be found and skipped
+ * without parsing them. The output is a header, the records, and a footer
+ * indexing them:
+ *
+ * <pre>
+ * header: "TRF1", flags byte (1 if records carry checksums)
+ * record: 4-byte length, the value as its own top-level transit value,
+ *         and a 4-byte CRC32 of the value if checksums are on
+ * footer: the 8-byte offset of each record, then the 8-byte offset of
+ *         the first of those, the 8-byte record count and "TRFX"
+ * </pre>
+ *
+ * All numbers are big-endian. See FramedReader.
+ */
+public interface FramedWriter<T> {
+
+    /**
+     * Writes a value as the next record
+     * @param o the value to write
+     */
+    void write(T o);
+
+    /**
+     * Writes the footer and flushes the output stream, which is left
+     * open. No records can be written after it.
+     */
+    void finish();
+}
@@ -0,0 +1,52 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.cognitect.transit;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Reads a sequence of top-level values, decoding them on several threads.
+ * Each top-level value has its own cache, so values can be decoded
+ * independently once the boundaries between them have been found; the
+ * boundaries are found by scanning the input, without decoding it.
+ */
+public interface ParallelReader {
+
+    /**
+     * Reads all the values in the input, passing each to action on the
+     * calling thread, in input order unless the reader was created
+     * unordered
+     * @param action the action to perform on each value
+     */
+    <T> void forEach(Consumer<T> action);
+
+    /**
+     * Reads the next value in the input on the calling thread. The
+     * elements of a large msgpack array are decoded in parts on the
+     * reader's pool, with the boundaries between them and the cache
+     * entries in effect at each found by scanning the array first.
+     * @return the value
+     */
+    <T> T read();
+
+    /**
+     * Reads all the values in the input
+     * @return the values, in input order unless the reader was created
+     * unordered
+     */
+    <T> List<T> readAll();
+}
@@ -0,0 +1,24 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transit;
+
+/**
+ * Marks a ReadHandler as pure: for equal representations it returns equal,
+ * immutable values, and it has no side effects. Readers created with a
+ * decode memo reuse the values pure handlers return for escaped strings
+ * (e.g. "~:user/id") across calls to read, instead of decoding them again.
+ */
+public interface PureReadHandler {
+}
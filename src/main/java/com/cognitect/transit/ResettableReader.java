@@ -0,0 +1,32 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.cognitect.transit;
+
+import java.io.InputStream;
+
+/**
+ * A Reader that can be retargeted to another input source. The readers
+ * TransitFactory creates are all resettable.
+ */
+public interface ResettableReader extends Reader {
+    /**
+     * Makes this reader read from another input source, as a new reader
+     * would, keeping its parser, caches and decode memo where it can.
+     * Any input buffered from the previous source is dropped.
+     * @param in the input stream to read from
+     */
+    void reset(InputStream in);
+}
@@ -0,0 +1,32 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.cognitect.transit;
+
+import java.io.OutputStream;
+
+/**
+ * A Writer that can be retargeted to another output stream. The writers
+ * TransitFactory creates are all resettable.
+ */
+public interface ResettableWriter<T> extends Writer<T> {
+    /**
+     * Makes this writer write to another output stream, as a new writer
+     * would, keeping its encoder and caches. Output buffered for the
+     * previous stream is flushed to it first.
+     * @param out the output stream to write to
+     */
+    void reset(OutputStream out);
+}
@@ -0,0 +1,80 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transit;
+
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * A reader that can also read values without building them, and read
+ * top-level values and the elements of a top-level array one at a time.
+ * The readers TransitFactory creates for an engine, a buffer or a file,
+ * and those TransitContext creates, are streaming readers.
+ */
+public interface StreamingReader extends Reader {
+
+    /**
+     * Reads a single value from an input source, reporting it to handler
+     * as a sequence of events instead of building it
+     * @param handler the receiver of the events
+     */
+    void read(TransitEventHandler handler);
+
+    /**
+     * Gets a token reader over the same input source, sharing this
+     * reader's position
+     * @return a token reader
+     */
+    TransitTokenReader tokenReader();
+
+    /**
+     * Reads the elements of a top-level array one at a time, instead of
+     * the whole array at once. The cache is kept across the elements, as
+     * it would be when reading the array with read.
+     * @return an iterator over the elements
+     */
+    <T> Iterator<T> iterate();
+
+    /**
+     * Checks for another top-level value, without the exception read
+     * throws at the end of the input
+     * @return true if there is another value to read
+     */
+    boolean hasNext();
+
+    /**
+     * Reads each of the remaining top-level values, passing it to action
+     * @param action the action to perform on each value
+     */
+    <T> void forEach(Consumer<T> action);
+
+    /**
+     * Gets a spliterator over the remaining top-level values. Splitting
+     * it reads the next batchSize values into a separate spliterator, so
+     * values can be processed in parallel while they are read in order.
+     * @param batchSize maximum number of values split off at a time
+     * @return a spliterator
+     */
+    <T> Spliterator<T> spliterator(int batchSize);
+
+    /**
+     * Gets a stream of the remaining top-level values, read in batches of
+     * 1024 values when the stream is parallel
+     * @return a stream
+     */
+    <T> Stream<T> stream();
+}
@@ -0,0 +1,78 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transit;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Creates writers and readers from configuration built once: handler
+ * maps compiled from the handlers it was created with, a tuned JSON
+ * factory whose buffers and symbol tables its readers and writers share,
+ * and pools of encoders for encode and decode. A context is immutable
+ * and can be shared across threads; create one per handler set and keep
+ * it, rather than passing handlers to TransitFactory for each instance.
+ */
+public interface TransitContext {
+
+    /**
+     * Creates a writer
+     * @param type format to write in
+     * @param out output stream to write to
+     * @return a writer
+     */
+    <T> Writer<T> writer(TransitFactory.Format type, OutputStream out);
+
+    /**
+     * Creates a writer
+     * @param type format to write in
+     * @param out output stream to write to
+     * @param flushPolicy determines when buffered output is flushed to out
+     * @return a writer
+     */
+    <T> Writer<T> writer(TransitFactory.Format type, OutputStream out, FlushPolicy flushPolicy);
+
+    /**
+     * Creates a reader
+     * @param type the format to read in
+     * @param in the input stream to read from
+     * @return a reader
+     */
+    StreamingReader reader(TransitFactory.Format type, InputStream in);
+
+    /**
+     * Encodes a single value, as a writer would, with pooled encoders
+     * @param type format to write in
+     * @param o the value to encode
+     * @return the encoded value
+     */
+    byte[] encode(TransitFactory.Format type, Object o);
+
+    /**
+     * Decodes a single value, as a reader would, parsing bytes in place
+     * @param type the format to read in
+     * @param bytes the encoded value
+     * @return the value
+     */
+    <T> T decode(TransitFactory.Format type, byte[] bytes);
+
+    /**
+     * Creates a pool of this context's writers and readers
+     * @param type the format to write and read in
+     * @param size the most writers, and the most readers, the pool keeps
+     * @return a codec pool
+     */
+    CodecPool codecPool(TransitFactory.Format type, int size);
+}
@@ -0,0 +1,88 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.cognitect.transit;
+
+/**
+ * Receives the values of a transit document as a sequence of events,
+ * without any maps or lists being built. Cache codes are resolved and
+ * scalar tagged values (keywords, symbols, dates, uuids, etc.) are decoded
+ * by the reader's read handlers before they are reported; tagged values
+ * with a map or array representation are reported as that representation,
+ * enclosed by onTagged and onTaggedEnd.
+ */
+public interface TransitEventHandler {
+
+    /**
+     * Called at the start of a map
+     * @param size number of entries, or -1 if the encoding does not say
+     */
+    void onMapStart(int size);
+
+    /**
+     * Called before each map key; the event that follows is the key
+     * itself, the one after that its value
+     */
+    void onKey();
+
+    /**
+     * Called at the end of a map
+     */
+    void onMapEnd();
+
+    /**
+     * Called at the start of an array
+     * @param size number of elements, or -1 if the encoding does not say
+     */
+    void onArrayStart(int size);
+
+    /**
+     * Called at the end of an array
+     */
+    void onArrayEnd();
+
+    /**
+     * Called at the start of a tagged value whose representation is a map
+     * or an array; the events for the representation follow
+     * @param tag the tag
+     */
+    void onTagged(String tag);
+
+    /**
+     * Called at the end of a tagged value
+     */
+    void onTaggedEnd();
+
+    void onNull();
+
+    void onBoolean(boolean b);
+
+    void onLong(long l);
+
+    void onDouble(double d);
+
+    void onString(String s);
+
+    void onKeyword(Keyword k);
+
+    void onSymbol(Symbol s);
+
+    /**
+     * Called for any other scalar value, e.g. a BigInteger, a Date, a UUID
+     * or the value decoded by a custom read handler
+     * @param o the value
+     */
+    void onValue(Object o);
+}
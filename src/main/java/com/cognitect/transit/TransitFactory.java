@@ -19,7 +19,13 @@ import com.cognitect.transit.impl.*;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.EnumMap;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 
 /**
@@ -28,9 +34,25 @@ import java.util.function.Function;
  */
 public class TransitFactory {
     /**
-     * Transit formats
+     * Transit formats. MSGPACK_NATIVE is msgpack that writes binary values
+     * as msgpack bin, dates as msgpack timestamps and UUIDs as a msgpack
+     * extension type ('u'), instead of their transit encodings. It is read
+     * and written with the direct engine, and can only be read by transit
+     * readers that support it. There is no default handler for
+     * java.time.Instant in any format; an Instant written with a custom
+     * handler tagged "m" is written as a timestamp with nanoseconds, and
+     * read back as a Date.
      */
-    public static enum Format { JSON, MSGPACK, JSON_VERBOSE }
+    public static enum Format { JSON, MSGPACK, JSON_VERBOSE, MSGPACK_NATIVE }
+
+    /**
+     * Codec engines. DEFAULT encodes and decodes through Jackson and the
+     * msgpack library. DIRECT uses transit's own codecs, which work on byte
+     * buffers: a msgpack codec that creates no intermediate value objects,
+     * and a JSON parser that resolves cache codes and transit prefixes
+     * before building strings. JSON is always written with Jackson.
+     */
+    public static enum Engine { DEFAULT, DIRECT }
 
     /**
      * Creates a writer instance.
@@ -89,14 +111,49 @@ public class TransitFactory {
      * @return a writer
      */
     public static <T> Writer<T> writer(Format type, OutputStream out, Map<Class, WriteHandler<?, ?>> customHandlers, WriteHandler<?, ?> defaultWriteHandler, Function<Object,Object> transform) {
+        return writer(type, out, customHandlers, defaultWriteHandler, transform, FlushPolicy.EACH_VALUE);
+    }
+
+    /**
+     * Creates a writer instance.
+     * @param type format to write in
+     * @param out output stream to write to
+     * @param customHandlers additional WriteHandlers to use in addition
+     *                       to or in place of the default WriteHandlers
+     * @param defaultWriteHandler WriteHandler to use by default
+     * @param transform a transform function to apply to values before writing
+     * @param flushPolicy determines when buffered output is flushed to out
+     * @return a writer
+     */
+    public static <T> Writer<T> writer(Format type, OutputStream out, Map<Class, WriteHandler<?, ?>> customHandlers, WriteHandler<?, ?> defaultWriteHandler, Function<Object,Object> transform, FlushPolicy flushPolicy) {
+        return writer(type, Engine.DEFAULT, out, customHandlers, defaultWriteHandler, transform, flushPolicy);
+    }
+
+    /**
+     * Creates a writer instance.
+     * @param type format to write in
+     * @param engine codec engine to write with
+     * @param out output stream to write to
+     * @param customHandlers additional WriteHandlers to use in addition
+     *                       to or in place of the default WriteHandlers
+     * @param defaultWriteHandler WriteHandler to use by default
+     * @param transform a transform function to apply to values before writing
+     * @param flushPolicy determines when buffered output is flushed to out
+     * @return a writer
+     */
+    public static <T> Writer<T> writer(Format type, Engine engine, OutputStream out, Map<Class, WriteHandler<?, ?>> customHandlers, WriteHandler<?, ?> defaultWriteHandler, Function<Object,Object> transform, FlushPolicy flushPolicy) {
         try {
             switch (type) {
                 case MSGPACK:
-                    return WriterFactory.getMsgpackInstance(out, customHandlers, defaultWriteHandler, transform);
+                    if (engine == Engine.DIRECT)
+                        return WriterFactory.getDirectMsgpackInstance(out, customHandlers, defaultWriteHandler, transform, flushPolicy);
+                    return WriterFactory.getMsgpackInstance(out, customHandlers, defaultWriteHandler, transform, flushPolicy);
+                case MSGPACK_NATIVE:
+                    return WriterFactory.getNativeMsgpackInstance(out, customHandlers, defaultWriteHandler, transform, flushPolicy);
                 case JSON:
-                    return WriterFactory.getJsonInstance(out, customHandlers, defaultWriteHandler, false, transform);
+                    return WriterFactory.getJsonInstance(out, customHandlers, defaultWriteHandler, false, transform, flushPolicy);
                 case JSON_VERBOSE:
-                    return WriterFactory.getJsonInstance(out, customHandlers, defaultWriteHandler, true, transform);
+                    return WriterFactory.getJsonInstance(out, customHandlers, defaultWriteHandler, true, transform, flushPolicy);
                 default:
                     throw new IllegalArgumentException("Unknown Writer type: " + type.toString());
             }
@@ -115,6 +172,17 @@ public class TransitFactory {
         return reader(type, in, defaultDefaultReadHandler());
     }
 
+    /**
+     * Creates a streaming reader instance with the default engine and
+     * handlers.
+     * @param type the format to read in
+     * @param in the input stream to read from
+     * @return a streaming reader
+     */
+    public static StreamingReader streamingReader(Format type, InputStream in) {
+        return reader(type, Engine.DEFAULT, in, null, null);
+    }
+
     /**
      * Creates a reader instance.
      * @param type the format to read in
@@ -154,13 +222,61 @@ public class TransitFactory {
     public static Reader reader(Format type, final InputStream in,
                                 final Map<String, ReadHandler<?, ?>> customHandlers,
                                 final DefaultReadHandler<?> customDefaultHandler) {
+        return reader(type, Engine.DEFAULT, in, customHandlers, customDefaultHandler);
+    }
+
+    /**
+     * Creates a reader instance.
+     * @param type the format to read in
+     * @param engine codec engine to read with
+     * @param in the input stream to read from
+     * @param customHandlers a map of custom ReadHandlers to use in addition
+     *                       or in place of the default ReadHandlers
+     * @param customDefaultHandler a DefaultReadHandler to use for processing
+     *                             encoded values for which there is no read handler
+     * @return a reader
+     */
+    public static StreamingReader reader(Format type, Engine engine, final InputStream in,
+                                final Map<String, ReadHandler<?, ?>> customHandlers,
+                                final DefaultReadHandler<?> customDefaultHandler) {
+        return reader(type, engine, in, customHandlers, customDefaultHandler, 0);
+    }
+
+    /**
+     * Creates a reader instance with a decode memo. The memo maps escaped
+     * strings to the values decoded from them by pure handlers (see
+     * PureReadHandler), such as keywords, symbols, UUIDs and URIs, and is
+     * kept across calls to read, so keys that repeat from value to value
+     * are decoded once. The least recently used entries are evicted when
+     * the memo is full.
+     * @param type the format to read in
+     * @param engine codec engine to read with
+     * @param in the input stream to read from
+     * @param customHandlers a map of custom ReadHandlers to use in addition
+     *                       or in place of the default ReadHandlers
+     * @param customDefaultHandler a DefaultReadHandler to use for processing
+     *                             encoded values for which there is no read handler
+     * @param decodeMemoSize maximum number of entries in the decode memo,
+     *                       or 0 for no memo
+     * @return a reader
+     */
+    public static StreamingReader reader(Format type, Engine engine, final InputStream in,
+                                final Map<String, ReadHandler<?, ?>> customHandlers,
+                                final DefaultReadHandler<?> customDefaultHandler,
+                                int decodeMemoSize) {
         try {
             switch (type) {
                 case JSON:
                 case JSON_VERBOSE:
-                    return ReaderFactory.getJsonInstance(in, customHandlers, customDefaultHandler);
+                    if (engine == Engine.DIRECT)
+                        return ReaderFactory.getDirectJsonInstance(in, customHandlers, customDefaultHandler, decodeMemoSize);
+                    return ReaderFactory.getJsonInstance(in, customHandlers, customDefaultHandler, decodeMemoSize);
                 case MSGPACK:
-                    return ReaderFactory.getMsgpackInstance(in, customHandlers, customDefaultHandler);
+                    if (engine == Engine.DIRECT)
+                        return ReaderFactory.getDirectMsgpackInstance(in, customHandlers, customDefaultHandler, decodeMemoSize);
+                    return ReaderFactory.getMsgpackInstance(in, customHandlers, customDefaultHandler, decodeMemoSize);
+                case MSGPACK_NATIVE:
+                    return ReaderFactory.getDirectMsgpackInstance(in, customHandlers, customDefaultHandler, decodeMemoSize);
                 default:
                     throw new IllegalArgumentException("Unknown Reader type: " + type.toString());
             }
@@ -170,7 +286,306 @@ public class TransitFactory {
     }
 
     /**
-     * Converts a string or keyword to a keyword
+     * Creates a reader of the bytes between a buffer's position and limit,
+     * which the reader leaves untouched. A buffer backed by an array is
+     * parsed in place, without copying; other buffers are read with bulk
+     * gets. Buffers are read with the direct engine.
+     * @param type the format to read in
+     * @param buffer the buffer to read from
+     * @return a reader
+     */
+    public static StreamingReader reader(Format type, ByteBuffer buffer) {
+        return reader(type, buffer, null, null);
+    }
+
+    /**
+     * Creates a reader of the bytes between a buffer's position and limit.
+     * @param type the format to read in
+     * @param buffer the buffer to read from
+     * @param customHandlers a map of custom ReadHandlers to use in addition
+     *                       or in place of the default ReadHandlers
+     * @param customDefaultHandler a DefaultReadHandler to use for processing
+     *                             encoded values for which there is no read handler
+     * @return a reader
+     */
+    public static StreamingReader reader(Format type, ByteBuffer buffer,
+                                Map<String, ReadHandler<?, ?>> customHandlers,
+                                DefaultReadHandler<?> customDefaultHandler) {
+        return reader(type, new ByteBuffer[] {buffer}, customHandlers, customDefaultHandler);
+    }
+
+    /**
+     * Creates a reader of a file, which is mapped into memory rather than
+     * read through a stream.
+     * @param type the format to read in
+     * @param path the file to read
+     * @return a reader
+     */
+    public static StreamingReader reader(Format type, Path path) {
+        return reader(type, path, null, null);
+    }
+
+    /**
+     * Creates a reader of a file, which is mapped into memory rather than
+     * read through a stream.
+     * @param type the format to read in
+     * @param path the file to read
+     * @param customHandlers a map of custom ReadHandlers to use in addition
+     *                       or in place of the default ReadHandlers
+     * @param customDefaultHandler a DefaultReadHandler to use for processing
+     *                             encoded values for which there is no read handler
+     * @return a reader
+     */
+    public static StreamingReader reader(Format type, Path path,
+                                Map<String, ReadHandler<?, ?>> customHandlers,
+                                DefaultReadHandler<?> customDefaultHandler) {
+        try {
+            return reader(type, ByteBufferInputStream.map(path), customHandlers, customDefaultHandler);
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static StreamingReader reader(Format type, ByteBuffer[] buffers,
+                                 Map<String, ReadHandler<?, ?>> customHandlers,
+                                 DefaultReadHandler<?> customDefaultHandler) {
+        switch (type) {
+            case JSON:
+            case JSON_VERBOSE:
+                return ReaderFactory.getDirectJsonInstance(customHandlers, customDefaultHandler, 0, buffers);
+            case MSGPACK:
+            case MSGPACK_NATIVE:
+                return ReaderFactory.getDirectMsgpackInstance(customHandlers, customDefaultHandler, 0, buffers);
+            default:
+                throw new IllegalArgumentException("Unknown Reader type: " + type.toString());
+        }
+    }
+
+    // the codecs encode and decode use, created on first use
+    private static class Codecs {
+        static final Map<Format, OneShotCodec> codecs = new EnumMap<Format, OneShotCodec>(Format.class);
+        static {
+            WriteHandler<?, ?> h = defaultDefaultWriteHandler();
+            codecs.put(Format.JSON, new OneShotCodec(WriterFactory.getJsonEmitterSource(null, h, false, null), true, false, null, null));
+            codecs.put(Format.JSON_VERBOSE, new OneShotCodec(WriterFactory.getJsonEmitterSource(null, h, true, null), false, false, null, null));
+            codecs.put(Format.MSGPACK, new OneShotCodec(WriterFactory.getMsgpackEmitterSource(null, h, false, null), true, true, null, null));
+            codecs.put(Format.MSGPACK_NATIVE, new OneShotCodec(WriterFactory.getMsgpackEmitterSource(null, h, true, null), true, true, null, null));
+        }
+    }
+
+    /**
+     * Encodes a single value, as a writer would, with the default
+     * handlers. Encoders and their buffers are pooled, so this is cheaper
+     * than creating a writer for each value.
+     * @param type format to write in
+     * @param o the value to encode
+     * @return the encoded value
+     */
+    public static byte[] encode(Format type, Object o) {
+        return Codecs.codecs.get(type).encode(o);
+    }
+
+    /**
+     * Decodes a single value, as a reader would, with the default
+     * handlers, parsing bytes in place.
+     * @param type the format to read in
+     * @param bytes the encoded value
+     * @return the value
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T decode(Format type, byte[] bytes) {
+        return (T) Codecs.codecs.get(type).decode(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Decodes a single JSON value, as a reader would, with the default
+     * handlers.
+     * @param type JSON or JSON_VERBOSE
+     * @param s the encoded value
+     * @return the value
+     */
+    public static <T> T decode(Format type, String s) {
+        if (type != Format.JSON && type != Format.JSON_VERBOSE)
+            throw new IllegalArgumentException("Cannot decode " + type.toString() + " from a string");
+        return decode(type, s.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Creates a TransitContext with the default handlers and engine.
+     * @return a context
+     */
+    public static TransitContext context() {
+        return context(Engine.DEFAULT, null, null, null, null, null);
+    }
+
+    /**
+     * Creates a TransitContext, compiling the handlers once for all the
+     * writers and readers created from it.
+     * @param engine codec engine to write and read with
+     * @param writeHandlers additional WriteHandlers
+     * @param defaultWriteHandler WriteHandler to use when no other handler
+     *                            is found for a value, or null for the default
+     * @param readHandlers a map of custom ReadHandlers to use in addition
+     *                     or in place of the default ReadHandlers
+     * @param defaultReadHandler a DefaultReadHandler to use for processing
+     *                           encoded values for which there is no read
+     *                           handler, or null for the default
+     * @param transform a transform function to apply to values before writing
+     * @return a context
+     */
+    public static TransitContext context(Engine engine,
+                                         Map<Class, WriteHandler<?, ?>> writeHandlers,
+                                         WriteHandler<?, ?> defaultWriteHandler,
+                                         Map<String, ReadHandler<?, ?>> readHandlers,
+                                         DefaultReadHandler<?> defaultReadHandler,
+                                         Function<Object, Object> transform) {
+        return new TransitContextImpl(engine, writeHandlers, defaultWriteHandler, readHandlers, defaultReadHandler, transform);
+    }
+
+    /**
+     * Creates a CodecPool of writers and readers with the default handlers.
+     * @param type the format to write and read in
+     * @param size the most writers, and the most readers, the pool keeps
+     * @return a codec pool
+     */
+    public static CodecPool codecPool(Format type, int size) {
+        return codecPool(type, null, null, size);
+    }
+
+    /**
+     * Creates a CodecPool of writers and readers.
+     * @param type the format to write and read in
+     * @param writeHandlers additional WriteHandlers
+     * @param readHandlers a map of custom ReadHandlers to use in addition
+     *                     or in place of the default ReadHandlers
+     * @param size the most writers, and the most readers, the pool keeps
+     * @return a codec pool
+     */
+    public static CodecPool codecPool(final Format type,
+                                      final Map<Class, WriteHandler<?, ?>> writeHandlers,
+                                      final Map<String, ReadHandler<?, ?>> readHandlers, int size) {
+        return new CodecPoolImpl(new Function<OutputStream, ResettableWriter<?>>() {
+            @Override
+            public ResettableWriter<?> apply(OutputStream out) {
+                return (ResettableWriter<?>) writer(type, out, writeHandlers);
+            }
+        }, new Function<InputStream, ResettableReader>() {
+            @Override
+            public ResettableReader apply(InputStream in) {
+                return (ResettableReader) reader(type, in, readHandlers);
+            }
+        }, size);
+    }
+
+    /**
+     * Creates a ParallelReader instance that decodes on the common
+     * fork-join pool and returns values in input order.
+     * @param type the format to read in
+     * @param in the input stream to read from
+     * @return a parallel reader
+     */
+    public static ParallelReader parallelReader(Format type, InputStream in) {
+        return parallelReader(type, in, null, null, ForkJoinPool.commonPool(), true);
+    }
+
+    /**
+     * Creates a ParallelReader instance.
+     * @param type the format to read in
+     * @param in the input stream to read from
+     * @param customHandlers a map of custom ReadHandlers to use in addition
+     *                       or in place of the default ReadHandlers
+     * @param customDefaultHandler a DefaultReadHandler to use for processing
+     *                             encoded values for which there is no read
+     *                             handler
+     * @param pool the pool to decode values on
+     * @param ordered true to return values in input order, false to return
+     *                them as they are decoded
+     * @return a parallel reader
+     */
+    public static ParallelReader parallelReader(Format type, InputStream in,
+                                                Map<String, ReadHandler<?, ?>> customHandlers,
+                                                DefaultReadHandler<?> customDefaultHandler,
+                                                ForkJoinPool pool, boolean ordered) {
+        switch (type) {
+            case JSON:
+            case JSON_VERBOSE:
+                return ReaderFactory.getParallelInstance(in, false, customHandlers, customDefaultHandler, pool, ordered);
+            case MSGPACK:
+            case MSGPACK_NATIVE:
+                return ReaderFactory.getParallelInstance(in, true, customHandlers, customDefaultHandler, pool, ordered);
+            default:
+                throw new IllegalArgumentException("Unknown Reader type: " + type.toString());
+        }
+    }
+
+    /**
+     * Creates a FramedWriter instance.
+     * @param type format to write records in
+     * @param out output stream to write to
+     * @param checksums true to follow each record with a checksum
+     * @return a framed writer
+     */
+    public static <T> FramedWriter<T> framedWriter(Format type, OutputStream out, boolean checksums) {
+        return framedWriter(type, out, null, defaultDefaultWriteHandler(), checksums);
+    }
+
+    /**
+     * Creates a FramedWriter instance.
+     * @param type format to write records in
+     * @param out output stream to write to
+     * @param customHandlers additional WriteHandlers
+     * @param defaultWriteHandler WriteHandler to use when no other handler
+     *                            is found for a value
+     * @param checksums true to follow each record with a checksum
+     * @return a framed writer
+     */
+    public static <T> FramedWriter<T> framedWriter(Format type, OutputStream out,
+                                                   Map<Class, WriteHandler<?, ?>> customHandlers,
+                                                   WriteHandler<?, ?> defaultWriteHandler, boolean checksums) {
+        FramedWriterImpl.Buffer buf = new FramedWriterImpl.Buffer();
+        return new FramedWriterImpl<T>(out, buf, (ResettableWriter<T>) TransitFactory.<T>writer(type, buf, customHandlers, defaultWriteHandler), checksums);
+    }
+
+    /**
+     * Creates a FramedReader instance.
+     * @param type the format the records are in
+     * @param in the channel to read from
+     * @return a framed reader
+     */
+    public static FramedReader framedReader(Format type, SeekableByteChannel in) {
+        return framedReader(type, in, null, null);
+    }
+
+    /**
+     * Creates a FramedReader instance.
+     * @param type the format the records are in
+     * @param in the channel to read from
+     * @param customHandlers a map of custom ReadHandlers to use in addition
+     *                       or in place of the default ReadHandlers
+     * @param customDefaultHandler a DefaultReadHandler to use for processing
+     *                             encoded values for which there is no read
+     *                             handler
+     * @return a framed reader
+     */
+    public static FramedReader framedReader(final Format type, SeekableByteChannel in,
+                                            final Map<String, ReadHandler<?, ?>> customHandlers,
+                                            final DefaultReadHandler<?> customDefaultHandler) {
+        try {
+            return new FramedReaderImpl(in, new Function<InputStream, Reader>() {
+                @Override
+                public Reader apply(InputStream record) {
+                    return reader(type, record, customHandlers, customDefaultHandler);
+                }
+            });
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Converts a string or keyword to a keyword. Keywords made from strings,
+     * like keywords produced by readers, are canonical: equal keywords are
+     * the same instance.
      * @param o A string or a keyword
      * @return a keyword
      */
@@ -180,15 +595,17 @@ public class TransitFactory {
         else if (o instanceof String) {
             String s = (String) o;
             if (s.charAt(0) == ':')
-                return new KeywordImpl(s.substring(1));
+                return KeywordImpl.canonical(s.substring(1));
             else
-                return new KeywordImpl(s);
+                return KeywordImpl.canonical(s);
         }
         else throw new IllegalArgumentException("Cannot make keyword from " + o.getClass().getSimpleName());
     }
 
     /**
-     * Converts a string or a symbol to a symbol
+     * Converts a string or a symbol to a symbol. Symbols made from strings,
+     * like symbols produced by readers, are canonical: equal symbols are
+     * the same instance.
      * @param o a string or a symbol
      * @return a symbol
      */
@@ -198,9 +615,9 @@ public class TransitFactory {
         else if (o instanceof String) {
             String s = (String) o;
             if (s.charAt(0) == ':')
-                return new SymbolImpl(s.substring(1));
+                return SymbolImpl.canonical(s.substring(1));
             else
-                return new SymbolImpl(s);
+                return SymbolImpl.canonical(s);
         }
         else throw new IllegalArgumentException("Cannot make symbol from " + o.getClass().getSimpleName());
     }
@@ -323,4 +740,17 @@ public class TransitFactory {
     public static Map<Class, WriteHandler<?, ?>> writeHandlerMap(Map<Class, WriteHandler<?, ?>> customHandlers) {
         return new WriteHandlerMap(customHandlers);
     }
+
+    /**
+     * Registers strings that are frequently written as map keys. Writers
+     * encode registered keys once and reuse the encoded form each time
+     * the key is written, instead of escaping and encoding it again.
+     * Registration is global and cannot be undone, so register only a
+     * bounded set of well-known keys.
+     * @param keys map keys
+     */
+    public static void registerMapKeys(String... keys) {
+        for (String key : keys)
+            EncodedKeys.register(key);
+    }
 }
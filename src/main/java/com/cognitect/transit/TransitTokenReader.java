@@ -0,0 +1,83 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.cognitect.transit;
+
+/**
+ * Reads transit values one token at a time, without building them. Cache
+ * codes are resolved and scalar tagged values are decoded by the reader's
+ * read handlers, as for TransitEventHandler; values that are skipped are
+ * still read, so later cache codes refer to the right values.
+ */
+public interface TransitTokenReader {
+
+    /**
+     * Transit tokens
+     */
+    enum Token {
+        MAP_START, KEY, MAP_END, ARRAY_START, ARRAY_END, TAGGED_START, TAGGED_END,
+        NULL, BOOLEAN, LONG, DOUBLE, STRING, KEYWORD, SYMBOL, VALUE
+    }
+
+    /**
+     * Advances to the next token. Each map key is preceded by a KEY token;
+     * tagged values with a map or array representation are enclosed by
+     * TAGGED_START and TAGGED_END.
+     * @return the token, or null at the end of the input
+     */
+    Token nextToken();
+
+    /**
+     * @return the current token
+     */
+    Token currentToken();
+
+    /**
+     * @return the size of the map or array just started, or -1 if the
+     * encoding does not say
+     */
+    int getSize();
+
+    boolean getBoolean();
+
+    long getLong();
+
+    double getDouble();
+
+    String getString();
+
+    Keyword getKeyword();
+
+    Symbol getSymbol();
+
+    /**
+     * @return the value of the current scalar token, boxed if it is a
+     * primitive
+     */
+    Object getValue();
+
+    /**
+     * @return the tag of the innermost tagged value the current token is
+     * in, or null
+     */
+    String currentTag();
+
+    /**
+     * Skips the current value: after MAP_START, ARRAY_START or TAGGED_START
+     * advances to the matching end token, after KEY advances past the
+     * entry's value, and otherwise does nothing.
+     */
+    void skipValue();
+}
@@ -14,6 +14,9 @@
 
 package com.cognitect.transit;
 
+import java.util.List;
+import java.util.concurrent.Executor;
+
 /**
  * Interface for writing values in transit format.
  */
@@ -23,4 +26,35 @@ public interface Writer<T> {
      * @param o the value to write
      */
     void write(T o);
+
+    /**
+     * Writes a single value, as write would, encoding the elements of any
+     * very large list or array in it in parts on executor. The output is
+     * the same as that of write.
+     * @param o the value to write
+     * @param executor the executor to encode parts of arrays on
+     */
+    default void write(T o, Executor executor) {
+        write(o);
+    }
+
+    /**
+     * Flushes any output the writer has buffered to its output stream;
+     * only needed when the writer's FlushPolicy does not flush after
+     * every value
+     */
+    default void flush() {}
+
+    /**
+     * Writes each of values, as write would, encoding them on executor.
+     * Each value is encoded with its own cache into a separate buffer,
+     * and the buffers are written to the output stream in order, so the
+     * output is the same as that of writing the values one at a time.
+     * @param values the values to write
+     * @param executor the executor to encode values on
+     */
+    default void writeAll(List<T> values, Executor executor) {
+        for (T o : values)
+            write(o);
+    }
 }
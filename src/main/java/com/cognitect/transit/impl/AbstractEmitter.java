@@ -4,6 +4,7 @@
 package com.cognitect.transit.impl;
 
 import com.cognitect.transit.WriteHandler;
+import com.fasterxml.jackson.core.io.SerializedString;
 
 import java.util.*;
 import java.util.function.Function;
@@ -13,6 +14,7 @@ public abstract class AbstractEmitter implements Emitter
     private WriteHandlerMap writeHandlerMap;
     private WriteHandler defaultWriteHandler;
     private Function<Object,Object> transform;
+    private ArraySplitter splitter;
 
     @Deprecated
     protected AbstractEmitter(WriteHandlerMap writeHandlerMap) {
@@ -26,12 +28,15 @@ public abstract class AbstractEmitter implements Emitter
 
     protected AbstractEmitter(WriteHandlerMap writeHandlerMap, WriteHandler defaultWriteHandler, Function<Object,Object> transform) {
         this.writeHandlerMap = writeHandlerMap;
-        this.writeHandlerMap.transform = transform;
         this.defaultWriteHandler = defaultWriteHandler;
         this.transform = transform;
     }
 
     protected String escape(String s) {
+        return escapeString(s);
+    }
+
+    static String escapeString(String s) {
 
         int l = s.length();
         if(l > 0) {
@@ -54,6 +59,13 @@ public abstract class AbstractEmitter implements Emitter
     protected void emitEncoded(String t, WriteHandler<Object, Object> h, Object o, boolean asMapKey, WriteCache cache) throws Exception {
 
         if(t.length() == 1) {
+            if(h instanceof EncodedWriteHandler) {
+                SerializedString e = ((EncodedWriteHandler) h).encodedString(o);
+                if(e != null) {
+                    emitString(e, asMapKey, cache);
+                    return;
+                }
+            }
             Object r = h.rep(o);
             if(r instanceof String) {
                 emitString(Constants.ESC_STR, t, (String)r, asMapKey, cache);
@@ -75,6 +87,24 @@ public abstract class AbstractEmitter implements Emitter
             emitTagged(t, h.rep(o), asMapKey, cache);
     }
 
+    private void emitString(String s, boolean asMapKey, WriteCache cache) throws Exception {
+        if(asMapKey) {
+            SerializedString e = EncodedKeys.get(s);
+            if(e != null) {
+                emitString(e, asMapKey, cache);
+                return;
+            }
+        }
+        emitString(null, null, escape(s), asMapKey, cache);
+    }
+
+    /**
+     * Writes a complete, escaped string whose encoding has been precomputed
+     */
+    protected void emitString(SerializedString s, boolean asMapKey, WriteCache cache) throws Exception {
+        emitString(null, null, s.getValue(), asMapKey, cache);
+    }
+
     protected void emitMap(Object m, boolean ignored, WriteCache cache) throws Exception
     {
         Iterable<Map.Entry<Object, Object>> entries;
@@ -90,6 +120,11 @@ public abstract class AbstractEmitter implements Emitter
 
     protected void emitArray(Object o, boolean ignored, WriteCache cache) throws Exception {
 
+        if(splitter != null && splitter.splits(o)) {
+            splitter.emitArray(o, cache);
+            return;
+        }
+
         emitArrayStart(Util.arraySize(o));
 
 	    if(o instanceof RandomAccess){
@@ -161,6 +196,12 @@ public abstract class AbstractEmitter implements Emitter
         WriteHandler<Object, Object> h = writeHandlerMap.getHandler(o);
         if (h == null) h = defaultWriteHandler;
 
+        WriteHandlers.MapWriteHandler mh = mapHandler(h);
+        if (mh != null) {
+            marshalMap((Map<Object, Object>) o, mh, asMapKey, cache);
+            return;
+        }
+
         boolean supported = false;
         if(h != null) { // TODO: maybe remove getWriteHandler call and this check and just call tag
             String t = h.tag(o);
@@ -169,7 +210,7 @@ public abstract class AbstractEmitter implements Emitter
                 if(t.length() == 1) {
                     switch(t.charAt(0)) {
                         case '_': emitNil(asMapKey, cache); break;
-                        case 's': emitString(null, null, escape((String)h.rep(o)), asMapKey, cache); break;
+                        case 's': emitString((String)h.rep(o), asMapKey, cache); break;
                         case '?': emitBoolean((Boolean)h.rep(o), asMapKey, cache); break;
                         case 'i': emitInteger(h.rep(o), asMapKey, cache); break;
                         case 'd': emitDouble(h.rep(o), asMapKey, cache); break;
@@ -187,7 +228,6 @@ public abstract class AbstractEmitter implements Emitter
                     else
                         emitEncoded(t, h, o, asMapKey, cache);
                 }
-                flushWriter();
             }
         }
 
@@ -195,19 +235,62 @@ public abstract class AbstractEmitter implements Emitter
             throw new Exception("Not supported: " + o.getClass());
     }
 
+    // only the map handler itself: subclasses may override tag and rep,
+    // so they are written through them
+    private static WriteHandlers.MapWriteHandler mapHandler(WriteHandler<?, ?> h) {
+        return (h != null && h.getClass() == WriteHandlers.MapWriteHandler.class) ? (WriteHandlers.MapWriteHandler) h : null;
+    }
+
+    // classifies the keys of m once, instead of in both tag and rep
+    private void marshalMap(Map<Object, Object> m, WriteHandlers.MapWriteHandler h, boolean asMapKey, WriteCache cache) throws Exception {
+        if (h.stringableKeys(m, transform))
+            emitMap(m.entrySet(), asMapKey, cache);
+        else if (asMapKey)
+            throw new Exception("Cannot be used as a map key " + m);
+        else
+            emitTagged("cmap", h.cmapRep(m), false, cache);
+    }
+
+    /**
+     * Number of bytes written by this emitter that are still held in its
+     * own buffer, i.e. not yet handed to the underlying output stream
+     */
+    protected long bufferedBytes() {
+        return 0;
+    }
+
+    /**
+     * Writes c between two top-level values, for formats that separate
+     * them; others write nothing
+     */
+    protected void emitSeparator(int c) throws Exception {
+    }
+
+    /**
+     * Encodes large arrays in parts with splitter, or sequentially if null;
+     * the splitter writes to this emitter, which must be a SplicingEmitter
+     */
+    void splitArrays(ArraySplitter splitter) {
+        this.splitter = splitter;
+    }
+
     protected void marshalTop(Object o, WriteCache cache) throws Exception {
 
         WriteHandler<Object, Object> h = writeHandlerMap.getHandler(o);
         if (h == null) {
             h = defaultWriteHandler;
         }
-        String tag = h.tag(o);
-        if (tag == null) {
-            throw new Exception("Not supported: " + o);
-        }
 
-        if (tag.length() == 1)
-            o = new Quote(o);
+        // maps are never quoted, no need to classify their keys here
+        if (mapHandler(h) == null) {
+            String tag = h.tag(o);
+            if (tag == null) {
+                throw new Exception("Not supported: " + o);
+            }
+
+            if (tag.length() == 1)
+                o = new Quote(o);
+        }
 
         marshal(o, false, cache);
     }
@@ -4,11 +4,16 @@
 package com.cognitect.transit.impl;
 
 import com.cognitect.transit.ArrayReader;
+import com.cognitect.transit.CharSequenceReadHandler;
 import com.cognitect.transit.DefaultReadHandler;
 import com.cognitect.transit.MapReader;
+import com.cognitect.transit.PureReadHandler;
 import com.cognitect.transit.ReadHandler;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.text.SimpleDateFormat;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -27,8 +32,22 @@ public abstract class AbstractParser implements Parser {
         return dateTimeFormat.get();
     }
 
+    private static final String[] TAGS = new String[128];
+    static {
+        for (int i = 0; i < TAGS.length; i++)
+            TAGS[i] = String.valueOf((char) i);
+    }
+
+    // bounds the tags kept by each parser
+    private static final int MAX_TAGS = 256;
+
     protected final Map<String, ReadHandler<?,?>> handlers;
+    private final ReadHandler<?,?>[] charHandlers;
     private final DefaultReadHandler<?> defaultHandler;
+    protected final CharWindow window = new CharWindow();
+    private final Map<String, Tag> tags = new HashMap<String, Tag>();
+    private DecodeMemo memo;
+    private TransitCursor cursor;
     protected MapReader<Object, Map<Object, Object>, Object, Object> mapBuilder;
     protected ArrayReader<Object, List<Object>, Object> listBuilder;
 
@@ -38,16 +57,125 @@ public abstract class AbstractParser implements Parser {
                              MapReader<?, Map<Object, Object>, Object, Object> mapBuilder,
                              ArrayReader<?, List<Object>, Object> listBuilder) {
         this.handlers = handlers;
+        this.charHandlers = (handlers instanceof ReadHandlerMap) ?
+                ((ReadHandlerMap) handlers).charHandlers() : ReadHandlerMap.charHandlers(handlers);
         this.defaultHandler = defaultHandler;
         this.mapBuilder = (MapReader<Object, Map<Object, Object>, Object, Object>) mapBuilder;
         this.listBuilder = (ArrayReader<Object, List<Object>, Object>) listBuilder;
     }
 
+    protected static String tagString(char tag) {
+        return tag < 128 ? TAGS[tag] : String.valueOf(tag);
+    }
+
     @SuppressWarnings("unchecked")
     protected ReadHandler<Object, Object> getHandler(String tag) {
+        if (tag.length() == 1 && tag.charAt(0) < 128)
+            return (ReadHandler<Object, Object>) charHandlers[tag.charAt(0)];
         return (ReadHandler<Object, Object>) handlers.get(tag);
     }
 
+    protected ReadHandler<?, ?> getHandler(char tag) {
+        return tag < 128 ? charHandlers[tag] : handlers.get(String.valueOf(tag));
+    }
+
+    /**
+     * Decodes the string representation of a value with a single char tag,
+     * passing the window itself to handlers that accept one
+     */
+    protected Object decode(char tag, CharWindow rep) {
+        ReadHandler<?, ?> h = getHandler(tag);
+        if (memo != null && h instanceof PureReadHandler) {
+            Object o = memo.get(tag, rep);
+            if (o == null) {
+                o = decode(tag, h, rep);
+                if (o != null)
+                    memo.put(tag, rep, o);
+            }
+            return o;
+        }
+        return decode(tag, h, rep);
+    }
+
+    private Object decode(char tag, ReadHandler<?, ?> h, CharWindow rep) {
+        if (h instanceof CharSequenceReadHandler)
+            return ((CharSequenceReadHandler<?>) h).fromChars(rep);
+        return decode(tagString(tag), rep.toString());
+    }
+
+    /**
+     * @return true if decode(char, CharWindow) can use h without the
+     * representation being copied into a String
+     */
+    protected boolean decodesChars(ReadHandler<?, ?> h) {
+        return h instanceof CharSequenceReadHandler || (memo != null && h instanceof PureReadHandler);
+    }
+
+    /**
+     * Sets a memo of values decoded by pure handlers, kept across parses
+     */
+    public void setDecodeMemo(DecodeMemo memo) {
+        this.memo = memo;
+    }
+
+    /**
+     * @return true if there is no other top-level value in the input
+     */
+    public abstract boolean atEnd() throws IOException;
+
+    /**
+     * Reads the start of a top-level array, whose elements are then read
+     * with hasNextElement and parseVal
+     */
+    public abstract void beginArray() throws IOException;
+
+    /**
+     * @return true if the array started by beginArray has another
+     * element; otherwise reads the end of the array
+     */
+    public abstract boolean hasNextElement() throws IOException;
+
+    /**
+     * Makes this parser read from in, dropping any input it has buffered
+     * and its cursor
+     * @return false if it cannot, in which case it must be replaced
+     */
+    public final boolean reset(InputStream in) {
+        if (!resetInput(in))
+            return false;
+        cursor = null;
+        return true;
+    }
+
+    protected boolean resetInput(InputStream in) {
+        return false;
+    }
+
+    /**
+     * @return a cursor over this parser's input, for reading values
+     * without building them
+     */
+    public TransitCursor cursor() {
+        if (cursor == null)
+            cursor = new TransitCursor(this, tokenSource());
+        return cursor;
+    }
+
+    /**
+     * @return the raw tokens of this parser's input
+     */
+    protected abstract TokenSource tokenSource();
+
+    protected Tag tag(String s) {
+        Tag t = tags.get(s);
+        if (t == null) {
+            t = new Tag(s.substring(2));
+            if (tags.size() < MAX_TAGS)
+                tags.put(s, t);
+        }
+        return t;
+    }
+
     protected Object decode(String tag, Object rep) {
 
         ReadHandler<Object, Object> d = getHandler(tag);
@@ -72,9 +200,9 @@ public abstract class AbstractParser implements Parser {
                             case Constants.RESERVED:
                                 return s.substring(1);
                             case Constants.TAG:
-                                return new Tag(s.substring(2));
+                                return tag(s);
                             default:
-                                return decode(s.substring(1, 2), s.substring(2));
+                                return decode(s.charAt(1), window.wrap(s, 2));
                         }
                     }
                     case Constants.SUB: {
@@ -0,0 +1,160 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Encodes the elements of a large array in parts, on an executor, and
+ * splices the parts into the output of the emitter writing the array.
+ *
+ * Cache codes depend on the order strings are written in, so a part does
+ * not consult a cache: it writes an empty string in place of each
+ * cacheable string and records where. Splicing then runs those strings
+ * through the writer's cache in order, and writes whatever it returns, so
+ * the output is the same as that of writing the array sequentially.
+ */
+public class ArraySplitter {
+
+    public static final int MIN_SPLIT_SIZE = 4096;
+    private static final int MIN_PART_SIZE = 1024;
+    private static final int PARTS_PER_CPU = 4;
+
+    private final SplicingEmitter target;
+    private final EmitterSource source;
+    private final Executor executor;
+    private final boolean cacheEnabled;
+
+    /**
+     * @param target the emitter to write arrays to
+     * @param source creates emitters of target's kind to encode parts with
+     */
+    public ArraySplitter(SplicingEmitter target, EmitterSource source, Executor executor, boolean cacheEnabled) {
+        this.target = target;
+        this.source = source;
+        this.executor = executor;
+        this.cacheEnabled = cacheEnabled;
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(8192);
+        }
+
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+    // the encoded elements of one part of an array
+    private class Part extends WriteCache {
+        private final Buffer buf = new Buffer();
+        private final AbstractEmitter emitter;
+        private final SplicingEmitter splicing;
+        private String[] deferred = new String[64];
+        private boolean[] asMapKeys = new boolean[64];
+        private int[] offsets = new int[64];
+        private int count;
+
+        Part() throws Exception {
+            super(cacheEnabled);
+            this.emitter = source.emitter(buf);
+            this.splicing = (SplicingEmitter) emitter;
+        }
+
+        @Override
+        public String cacheWrite(String s, boolean asMapKey) {
+            if (!isEnabled() || !isCacheable(s, asMapKey))
+                return s;
+            if (count == deferred.length) {
+                deferred = Arrays.copyOf(deferred, count * 2);
+                asMapKeys = Arrays.copyOf(asMapKeys, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            deferred[count] = s;
+            asMapKeys[count] = asMapKey;
+            offsets[count++] = buf.size() + (int) emitter.bufferedBytes();
+            return "";
+        }
+
+        Part encode(List<?> xs) throws Exception {
+            splicing.startPart();
+            for (int i = 0; i < xs.size(); i++)
+                emitter.marshal(xs.get(i), false, this);
+            splicing.endPart();
+            emitter.flushWriter();
+            return this;
+        }
+
+        void spliceInto(WriteCache cache, int emptyString) throws Exception {
+            byte[] b = buf.bytes();
+            int framing = splicing.partFraming();
+            int separator = splicing.partSeparator();
+            int from = framing;
+            for (int i = 0; i < count; i++) {
+                int at = offsets[i];
+                if (separator >= 0 && b[at] == separator)
+                    at++;
+                target.spliceBytes(b, from, at - from);
+                target.spliceString(cache.cacheWrite(deferred[i], asMapKeys[i]));
+                from = at + emptyString;
+            }
+            target.spliceBytes(b, from, buf.size() - framing - from);
+        }
+    }
+
+    /**
+     * @return whether o is an array worth splitting
+     */
+    public boolean splits(Object o) {
+        if (o instanceof Object[])
+            return ((Object[]) o).length >= MIN_SPLIT_SIZE;
+        return o instanceof List && o instanceof RandomAccess && ((List) o).size() >= MIN_SPLIT_SIZE;
+    }
+
+    public void emitArray(Object o, WriteCache cache) throws Exception {
+        List<?> xs = (o instanceof Object[]) ? Arrays.asList((Object[]) o) : (List<?>) o;
+        int n = xs.size();
+        int size = Math.max(MIN_PART_SIZE, n / (PARTS_PER_CPU * Runtime.getRuntime().availableProcessors()));
+        List<CompletableFuture<Part>> parts = new ArrayList<CompletableFuture<Part>>();
+        for (int i = 0; i < n; i += size) {
+            final List<?> part = xs.subList(i, Math.min(n, i + size));
+            parts.add(CompletableFuture.supplyAsync(new Supplier<Part>() {
+                @Override
+                public Part get() {
+                    try {
+                        return new Part().encode(part);
+                    } catch (Exception e) {
+                        throw new CompletionException(e);
+                    }
+                }
+            }, executor));
+        }
+
+        target.emitArrayStart((long) n);
+        int emptyString = target.emptyStringLength();
+        int separator = target.partSeparator();
+        try {
+            for (int i = 0; i < parts.size(); i++) {
+                if (i > 0 && separator >= 0)
+                    target.spliceBytes(new byte[]{(byte) separator}, 0, 1);
+                parts.get(i).join().spliceInto(cache, emptyString);
+            }
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            throw e;
+        }
+        target.emitArrayEnd();
+    }
+}
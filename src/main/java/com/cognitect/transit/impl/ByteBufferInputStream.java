@@ -0,0 +1,90 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads the bytes between the positions and limits of a sequence of
+ * buffers, with bulk gets, leaving the buffers themselves untouched
+ */
+public class ByteBufferInputStream extends InputStream {
+
+    // the largest region of a file mapped as one buffer
+    private static final long REGION_SIZE = 1L << 30;
+
+    private final ByteBuffer[] buffers;
+    private int current;
+
+    public ByteBufferInputStream(ByteBuffer... buffers) {
+        this.buffers = new ByteBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++)
+            this.buffers[i] = buffers[i].duplicate();
+    }
+
+    /**
+     * Maps a file into memory, in regions of up to REGION_SIZE bytes, as
+     * the buffers a stream reads from. The file need not stay open.
+     */
+    public static MappedByteBuffer[] map(Path path) throws IOException {
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            MappedByteBuffer[] regions = new MappedByteBuffer[(int) ((size + REGION_SIZE - 1) / REGION_SIZE)];
+            for (int i = 0; i < regions.length; i++) {
+                long start = i * REGION_SIZE;
+                regions[i] = ch.map(FileChannel.MapMode.READ_ONLY, start, Math.min(REGION_SIZE, size - start));
+            }
+            return regions;
+        }
+    }
+
+    // the buffer to read from, or null at the end
+    private ByteBuffer buffer() {
+        while (current < buffers.length && !buffers[current].hasRemaining())
+            current++;
+        return current < buffers.length ? buffers[current] : null;
+    }
+
+    @Override
+    public int read() {
+        ByteBuffer b = buffer();
+        return b != null ? b.get() & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] dst, int off, int len) {
+        if (len == 0)
+            return 0;
+        ByteBuffer b = buffer();
+        if (b == null)
+            return -1;
+        int n = Math.min(len, b.remaining());
+        b.get(dst, off, n);
+        return n;
+    }
+
+    @Override
+    public long skip(long n) {
+        long skipped = 0;
+        ByteBuffer b;
+        while (skipped < n && (b = buffer()) != null) {
+            int k = (int) Math.min(n - skipped, b.remaining());
+            b.position(b.position() + k);
+            skipped += k;
+        }
+        return skipped;
+    }
+
+    @Override
+    public int available() {
+        ByteBuffer b = buffer();
+        return b != null ? b.remaining() : 0;
+    }
+}
@@ -0,0 +1,158 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+/**
+ * A concurrent table of canonical instances, keyed by string. Values are
+ * weakly held, so instances no longer in use anywhere else are collected
+ * and their entries removed.
+ *
+ * Lookups take no lock and can be made by a range of chars, so a key is
+ * only built as a String when it is not in the table. Chains of entries
+ * are immutable; they are replaced, under the table's lock, to add or
+ * remove entries.
+ */
+public class CanonicalTable<T> {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private static class Entry<T> extends WeakReference<T> {
+        final String key;
+        final int hash;
+        final Entry<T> next;
+
+        Entry(String key, int hash, T value, Entry<T> next, ReferenceQueue<T> queue) {
+            super(value, queue);
+            this.key = key;
+            this.hash = hash;
+            this.next = next;
+        }
+    }
+
+    private volatile AtomicReferenceArray<Entry<T>> table = new AtomicReferenceArray<Entry<T>>(INITIAL_CAPACITY);
+    private final ReferenceQueue<T> queue = new ReferenceQueue<T>();
+    private final Function<String, T> factory;
+    // guarded by this
+    private int count;
+
+    public CanonicalTable(Function<String, T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the canonical instance for key, creating it if there is none
+     */
+    public T get(String key) {
+        return get(key, 0, key.length());
+    }
+
+    /**
+     * Returns the canonical instance for the chars of key from start to
+     * end, creating it if there is none
+     */
+    public T get(CharSequence key, int start, int end) {
+        int h = hash(key, start, end);
+        AtomicReferenceArray<Entry<T>> t = table;
+        for (Entry<T> e = t.get(h & (t.length() - 1)); e != null; e = e.next) {
+            T v;
+            if (e.hash == h && matches(e.key, key, start, end) && (v = e.get()) != null)
+                return v;
+        }
+        return create(key.subSequence(start, end).toString(), h);
+    }
+
+    // the hash String.hashCode gives the chars
+    private static int hash(CharSequence key, int start, int end) {
+        if (key instanceof String && start == 0 && end == key.length())
+            return key.hashCode();
+        int h = 0;
+        for (int i = start; i < end; i++)
+            h = 31 * h + key.charAt(i);
+        return h;
+    }
+
+    private static boolean matches(String s, CharSequence key, int start, int end) {
+        if (s.length() != end - start)
+            return false;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) != key.charAt(start + i))
+                return false;
+        }
+        return true;
+    }
+
+    private synchronized T create(String key, int h) {
+        expunge();
+        AtomicReferenceArray<Entry<T>> t = table;
+        int i = h & (t.length() - 1);
+        for (Entry<T> e = t.get(i); e != null; e = e.next) {
+            T v;
+            if (e.hash == h && e.key.equals(key) && (v = e.get()) != null)
+                return v;
+        }
+        T created = factory.apply(key);
+        t.set(i, new Entry<T>(key, h, created, t.get(i), queue));
+        if (++count > t.length() * 3 / 4)
+            resize();
+        return created;
+    }
+
+    public synchronized int size() {
+        expunge();
+        return count;
+    }
+
+    // guarded by this
+    private void resize() {
+        AtomicReferenceArray<Entry<T>> t = table;
+        AtomicReferenceArray<Entry<T>> resized = new AtomicReferenceArray<Entry<T>>(t.length() * 2);
+        int live = 0;
+        for (int i = 0; i < t.length(); i++) {
+            for (Entry<T> e = t.get(i); e != null; e = e.next) {
+                T v = e.get();
+                if (v == null)
+                    continue;
+                int j = e.hash & (resized.length() - 1);
+                resized.set(j, new Entry<T>(e.key, e.hash, v, resized.get(j), queue));
+                live++;
+            }
+        }
+        count = live;
+        table = resized;
+    }
+
+    // removes the entries of collected instances; guarded by this
+    @SuppressWarnings("unchecked")
+    private void expunge() {
+        Entry<T> ref;
+        while ((ref = (Entry<T>) queue.poll()) != null) {
+            AtomicReferenceArray<Entry<T>> t = table;
+            int i = ref.hash & (t.length() - 1);
+            Entry<T> head = t.get(i);
+            boolean found = false;
+            for (Entry<T> e = head; e != null && !found; e = e.next)
+                found = e == ref;
+            if (!found)
+                continue;
+            // rebuild the chain from its live entries
+            Entry<T> chain = null;
+            int live = 0, total = 0;
+            for (Entry<T> e = head; e != null; e = e.next) {
+                total++;
+                T v = e.get();
+                if (v != null) {
+                    chain = new Entry<T>(e.key, e.hash, v, chain, queue);
+                    live++;
+                }
+            }
+            t.set(i, chain);
+            count -= total - live;
+        }
+    }
+}
@@ -0,0 +1,94 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable CharSequence over part of a char array, a byte array holding
+ * ASCII text, or a String.
+ */
+public class CharWindow implements CharSequence {
+
+    private char[] chars;
+    private byte[] bytes;
+    private String str;
+    private int offset;
+    private int length;
+
+    public CharWindow wrap(char[] chars, int offset, int length) {
+        this.chars = chars;
+        this.bytes = null;
+        this.str = null;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    public CharWindow wrapAscii(byte[] bytes, int offset, int length) {
+        this.chars = null;
+        this.bytes = bytes;
+        this.str = null;
+        this.offset = offset;
+        this.length = length;
+        return this;
+    }
+
+    public CharWindow wrap(String str, int offset) {
+        this.chars = null;
+        this.bytes = null;
+        this.str = str;
+        this.offset = offset;
+        this.length = str.length() - offset;
+        return this;
+    }
+
+    /**
+     * Drops the first n chars from the window
+     */
+    public CharWindow skip(int n) {
+        this.offset += n;
+        this.length -= n;
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        if (chars != null)
+            return chars[offset + index];
+        if (bytes != null)
+            return (char) bytes[offset + index];
+        return str.charAt(offset + index);
+    }
+
+    /**
+     * @return the chars from start to end, as a String
+     */
+    @Override
+    public String subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end)
+            throw new IndexOutOfBoundsException(start + ", " + end);
+        if (chars != null)
+            return new String(chars, offset + start, end - start);
+        if (bytes != null)
+            return new String(bytes, offset + start, end - start, StandardCharsets.ISO_8859_1);
+        return str.substring(offset + start, offset + end);
+    }
+
+    @Override
+    public String toString() {
+        if (chars != null)
+            return new String(chars, offset, length);
+        if (bytes != null)
+            return new String(bytes, offset, length, StandardCharsets.ISO_8859_1);
+        return str.substring(offset);
+    }
+}
@@ -0,0 +1,67 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.CodecPool;
+import com.cognitect.transit.ResettableReader;
+import com.cognitect.transit.ResettableWriter;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Function;
+
+public class CodecPoolImpl implements CodecPool {
+
+    private final Function<OutputStream, ResettableWriter<?>> writers;
+    private final Function<InputStream, ResettableReader> readers;
+    private final BlockingQueue<ResettableWriter<?>> pooledWriters;
+    private final BlockingQueue<ResettableReader> pooledReaders;
+
+    /**
+     * @param writers creates a writer when none is pooled
+     * @param readers creates a reader when none is pooled
+     * @param size the most writers, and the most readers, kept
+     */
+    public CodecPoolImpl(Function<OutputStream, ResettableWriter<?>> writers, Function<InputStream, ResettableReader> readers, int size) {
+        if (size < 1)
+            throw new IllegalArgumentException("Pool size must be positive: " + size);
+        this.writers = writers;
+        this.readers = readers;
+        this.pooledWriters = new ArrayBlockingQueue<ResettableWriter<?>>(size);
+        this.pooledReaders = new ArrayBlockingQueue<ResettableReader>(size);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> ResettableWriter<T> writer(OutputStream out) {
+        ResettableWriter<?> w = pooledWriters.poll();
+        if (w == null)
+            return (ResettableWriter<T>) writers.apply(out);
+        w.reset(out);
+        return (ResettableWriter<T>) w;
+    }
+
+    @Override
+    public ResettableReader reader(InputStream in) {
+        ResettableReader r = pooledReaders.poll();
+        if (r == null)
+            return readers.apply(in);
+        r.reset(in);
+        return r;
+    }
+
+    @Override
+    public void release(ResettableWriter<?> writer) {
+        // a writer that fails to flush is left mid-value, and not pooled
+        writer.flush();
+        pooledWriters.offer(writer);
+    }
+
+    @Override
+    public void release(ResettableReader reader) {
+        pooledReaders.offer(reader);
+    }
+}
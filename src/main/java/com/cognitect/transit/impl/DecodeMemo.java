@@ -0,0 +1,89 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+/**
+ * A bounded memo of values decoded from escaped strings, keyed by tag and
+ * representation. Entries live in 4-way sets and the least recently used
+ * entry of a set is evicted, so lookups and updates probe a single set and
+ * never allocate, except for the key of a new entry.
+ */
+public class DecodeMemo {
+
+    private static final int WAYS = 4;
+
+    private final String[] keys;
+    private final int[] hashes;
+    private final Object[] values;
+    private final long[] used;
+    private final int setMask;
+    private long tick;
+
+    /**
+     * @param maxEntries capacity, rounded up to a power of two of at least 4
+     */
+    public DecodeMemo(int maxEntries) {
+        int sets = 1;
+        while (sets * WAYS < maxEntries)
+            sets <<= 1;
+        int size = sets * WAYS;
+        this.keys = new String[size];
+        this.hashes = new int[size];
+        this.values = new Object[size];
+        this.used = new long[size];
+        this.setMask = sets - 1;
+    }
+
+    private static int hash(char tag, CharSequence rep) {
+        int h = tag;
+        for (int i = 0, n = rep.length(); i < n; i++)
+            h = 31 * h + rep.charAt(i);
+        return h ^ (h >>> 16);
+    }
+
+    private static boolean matches(String key, char tag, CharSequence rep) {
+        int n = rep.length();
+        if (key.length() != n + 1 || key.charAt(0) != tag)
+            return false;
+        for (int i = 0; i < n; i++) {
+            if (key.charAt(i + 1) != rep.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the value memoized for tag and rep, or null
+     */
+    public Object get(char tag, CharSequence rep) {
+        int h = hash(tag, rep);
+        int base = (h & setMask) * WAYS;
+        for (int i = base; i < base + WAYS; i++) {
+            String k = keys[i];
+            if (k != null && hashes[i] == h && matches(k, tag, rep)) {
+                used[i] = ++tick;
+                return values[i];
+            }
+        }
+        return null;
+    }
+
+    public void put(char tag, CharSequence rep, Object value) {
+        int h = hash(tag, rep);
+        int base = (h & setMask) * WAYS;
+        int victim = base;
+        for (int i = base; i < base + WAYS; i++) {
+            if (keys[i] == null) {
+                victim = i;
+                break;
+            }
+            if (used[i] < used[victim])
+                victim = i;
+        }
+        keys[victim] = tag + rep.toString();
+        hashes[victim] = h;
+        values[victim] = value;
+        used[victim] = ++tick;
+    }
+}
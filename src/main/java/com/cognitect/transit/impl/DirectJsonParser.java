@@ -0,0 +1,642 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.*;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A JSON parser written for transit. It works on the raw bytes of the
+ * input: cache codes are resolved to cache indices, and escaped strings
+ * are classified by their first bytes, before any String is built. Only
+ * strings that are new to the cache, or not cacheable, are materialized,
+ * and then without their transit prefix.
+ */
+public class DirectJsonParser extends AbstractParser {
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private InputStream in;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+
+    // set by scanString
+    private boolean escaped;
+    private boolean ascii;
+
+    // set by beginArray, cleared once an element has been read
+    private boolean firstElement;
+
+    // set by scanNumber
+    private long number;
+    private double fraction;
+    private BigInteger bigNumber;
+
+    public DirectJsonParser(InputStream in,
+                            Map<String, ReadHandler<?,?>> handlers,
+                            DefaultReadHandler<?> defaultHandler,
+                            MapReader<?, Map<Object, Object>, Object, Object> mapBuilder,
+                            ArrayReader<?, List<Object>, Object> listBuilder) {
+        super(handlers, defaultHandler, mapBuilder, listBuilder);
+        this.in = in;
+        this.buf = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Creates a parser that reads from a byte array, without copying it
+     */
+    public DirectJsonParser(byte[] buf, int off, int len,
+                            Map<String, ReadHandler<?,?>> handlers,
+                            DefaultReadHandler<?> defaultHandler,
+                            MapReader<?, Map<Object, Object>, Object, Object> mapBuilder,
+                            ArrayReader<?, List<Object>, Object> listBuilder) {
+        super(handlers, defaultHandler, mapBuilder, listBuilder);
+        this.in = null;
+        this.buf = buf;
+        this.pos = off;
+        this.limit = off + len;
+    }
+
+    // a parser of a byte array has no buffer of its own to refill
+    @Override
+    protected boolean resetInput(InputStream in) {
+        if (this.in == null)
+            return false;
+        this.in = in;
+        pos = limit = 0;
+        firstElement = false;
+        return true;
+    }
+
+    /**
+     * Reads more input, keeping the bytes from pos on
+     * @return false at end of input
+     */
+    private boolean fill() throws IOException {
+        if (in == null)
+            return false;
+        int remaining = limit - pos;
+        if (remaining == buf.length) {
+            byte[] b = new byte[buf.length * 2];
+            System.arraycopy(buf, pos, b, 0, remaining);
+            buf = b;
+        } else if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, remaining);
+        }
+        pos = 0;
+        limit = remaining;
+        int r = in.read(buf, limit, buf.length - limit);
+        if (r < 0)
+            return false;
+        limit += r;
+        return true;
+    }
+
+    private void require(int n) throws IOException {
+        while (limit - pos < n) {
+            if (!fill())
+                throw new EOFException();
+        }
+    }
+
+    /**
+     * Skips whitespace
+     * @return the next byte, not consumed, or -1 at end of input
+     */
+    private int peek() throws IOException {
+        while (true) {
+            while (pos < limit) {
+                int b = buf[pos];
+                if (b != ' ' && b != '\n' && b != '\r' && b != '\t')
+                    return b;
+                pos++;
+            }
+            if (!fill())
+                return -1;
+        }
+    }
+
+    private int next() throws IOException {
+        int b = peek();
+        if (b < 0)
+            throw new EOFException();
+        pos++;
+        return b;
+    }
+
+    private void expect(int c) throws IOException {
+        int b = next();
+        if (b != c)
+            throw unexpected(b);
+    }
+
+    private IOException unexpected(int b) {
+        return new IOException("Unexpected character '" + (char) b + "' in JSON input");
+    }
+
+    @Override
+    public Object parse(ReadCache cache) throws IOException {
+        if (peek() < 0)
+            throw new EOFException();
+        return parseVal(false, cache);
+    }
+
+    @Override
+    public boolean atEnd() throws IOException {
+        return peek() < 0;
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        expect('[');
+        firstElement = true;
+    }
+
+    @Override
+    public boolean hasNextElement() throws IOException {
+        if (firstElement) {
+            firstElement = false;
+            if (peek() != ']')
+                return true;
+            pos++;
+            return false;
+        }
+        int b = next();
+        if (b == ']')
+            return false;
+        if (b != ',')
+            throw unexpected(b);
+        return true;
+    }
+
+    @Override
+    public Object parseVal(boolean asMapKey, ReadCache cache) throws IOException {
+        int b = peek();
+        switch (b) {
+            case '{':
+                return parseMap(asMapKey, cache, null);
+            case '[':
+                return parseArray(asMapKey, cache, null);
+            case '"':
+                pos++;
+                return parseString(asMapKey, cache);
+            case 't':
+                literal("true");
+                return true;
+            case 'f':
+                literal("false");
+                return false;
+            case 'n':
+                literal("null");
+                return null;
+            case -1:
+                throw new EOFException();
+            default:
+                if (b == '-' || (b >= '0' && b <= '9'))
+                    return parseNumber();
+                throw unexpected(b);
+        }
+    }
+
+    private void literal(String s) throws IOException {
+        int n = s.length();
+        require(n);
+        for (int i = 0; i < n; i++) {
+            if (buf[pos + i] != s.charAt(i))
+                throw unexpected(buf[pos + i]);
+        }
+        pos += n;
+    }
+
+    private Object parseNumber() throws IOException {
+        switch (scanNumber()) {
+            case LONG: return number;
+            case DOUBLE: return fraction;
+            default: return bigNumber;
+        }
+    }
+
+    /**
+     * Reads a number into number, fraction or bigNumber
+     * @return LONG, DOUBLE or VALUE, telling which one was set
+     */
+    private TokenSource.Kind scanNumber() throws IOException {
+        int i = 0;
+        boolean integral = true;
+        while (true) {
+            if (pos + i == limit && !fill())
+                break;
+            int b = buf[pos + i];
+            if (b >= '0' && b <= '9' || b == '-' || b == '+') {
+                i++;
+            } else if (b == '.' || b == 'e' || b == 'E') {
+                integral = false;
+                i++;
+            } else {
+                break;
+            }
+        }
+        int start = pos;
+        pos += i;
+        if (integral) {
+            boolean negative = buf[start] == '-';
+            int d = negative ? start + 1 : start;
+            // 18 digits always fit in a long
+            if (pos - d <= 18 && pos > d) {
+                long v = 0;
+                for (int j = d; j < pos; j++) {
+                    int c = buf[j] - '0';
+                    if (c < 0 || c > 9)
+                        throw unexpected(buf[j]);
+                    v = v * 10 + c;
+                }
+                number = negative ? -v : v;
+                return TokenSource.Kind.LONG;
+            }
+            String s = new String(buf, start, i, StandardCharsets.ISO_8859_1);
+            try {
+                number = Long.parseLong(s);
+                return TokenSource.Kind.LONG;
+            } catch (NumberFormatException e) {
+                bigNumber = new BigInteger(s);
+                return TokenSource.Kind.VALUE;
+            }
+        }
+        fraction = Double.parseDouble(new String(buf, start, i, StandardCharsets.ISO_8859_1));
+        return TokenSource.Kind.DOUBLE;
+    }
+
+    /**
+     * Finds the closing quote of the string starting at pos, reading more
+     * input as needed
+     * @return the offset of the closing quote from pos
+     */
+    private int scanString() throws IOException {
+        escaped = false;
+        ascii = true;
+        int i = 0;
+        while (true) {
+            if (pos + i >= limit) {
+                if (!fill())
+                    throw new EOFException();
+                continue;
+            }
+            int b = buf[pos + i];
+            if (b == '"')
+                return i;
+            if (b == '\\') {
+                escaped = true;
+                i += 2;
+            } else {
+                if (b < 0)
+                    ascii = false;
+                i++;
+            }
+        }
+    }
+
+    private Object parseString(boolean asMapKey, ReadCache cache) throws IOException {
+        int len = scanString();
+        int start = pos;
+        pos += len + 1;
+
+        if (len >= 2 && !escaped) {
+            byte b0 = buf[start];
+            byte b1 = buf[start + 1];
+            if (b0 == Constants.SUB) {
+                if (b1 == ' ' && len == 2)
+                    return Constants.MAP_AS_ARRAY;
+                // cache code, no string needed
+                int i = b1 - WriteCache.BASE_CHAR_IDX;
+                if (len == 3)
+                    i = (i * WriteCache.CACHE_CODE_DIGITS) + (buf[start + 2] - WriteCache.BASE_CHAR_IDX);
+                return cache.get(i);
+            }
+        }
+
+        // a non-ASCII second byte is negative, and never a transit tag
+        if (len >= 2 && buf[start] == Constants.ESC && buf[start + 1] > 0 && buf[start + 1] != '\\') {
+            int c = buf[start + 1];
+            switch (c) {
+                case Constants.ESC:
+                case Constants.SUB:
+                case Constants.RESERVED: {
+                    String s = decodeString(start + 1, len - 1);
+                    if (asMapKey && s.length() + 1 >= WriteCache.MIN_SIZE_CACHEABLE)
+                        cache.put(s);
+                    return s;
+                }
+                case Constants.TAG: {
+                    String s = decodeString(start + 2, len - 2);
+                    Tag t = new Tag(s);
+                    if (s.length() + 2 >= WriteCache.MIN_SIZE_CACHEABLE)
+                        cache.put(t);
+                    return t;
+                }
+                default: {
+                    Object o;
+                    int n;
+                    if (ascii && !escaped) {
+                        o = decode((char) c, window.wrapAscii(buf, start + 2, len - 2));
+                        n = len;
+                    } else {
+                        String s = decodeString(start + 2, len - 2);
+                        o = decode((char) c, window.wrap(s, 0));
+                        n = s.length() + 2;
+                    }
+                    if (n >= WriteCache.MIN_SIZE_CACHEABLE && (asMapKey || c == ':' || c == '$'))
+                        cache.put(o);
+                    return o;
+                }
+            }
+        }
+
+        String s = decodeString(start, len);
+        if (escaped) {
+            // the escapes could hide a transit prefix
+            return cache.cacheRead(s, asMapKey, this);
+        }
+        if (asMapKey && s.length() >= WriteCache.MIN_SIZE_CACHEABLE)
+            cache.put(s);
+        return s;
+    }
+
+    private String decodeString(int start, int len) throws IOException {
+        if (!escaped)
+            return new String(buf, start, len, ascii ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+
+        StringBuilder sb = new StringBuilder(len);
+        int end = start + len;
+        int run = start;
+        int i = start;
+        while (i < end) {
+            if (buf[i] != '\\') {
+                i++;
+                continue;
+            }
+            if (i > run)
+                sb.append(new String(buf, run, i - run, StandardCharsets.UTF_8));
+            int e = buf[i + 1];
+            i += 2;
+            switch (e) {
+                case '"': sb.append('"'); break;
+                case '\\': sb.append('\\'); break;
+                case '/': sb.append('/'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'n': sb.append('\n'); break;
+                case 'r': sb.append('\r'); break;
+                case 't': sb.append('\t'); break;
+                case 'u':
+                    if (i + 4 > end)
+                        throw new IOException("Invalid unicode escape in JSON input");
+                    sb.append((char) Integer.parseInt(new String(buf, i, 4, StandardCharsets.ISO_8859_1), 16));
+                    i += 4;
+                    break;
+                default:
+                    throw unexpected(e);
+            }
+            run = i;
+        }
+        if (end > run)
+            sb.append(new String(buf, run, end - run, StandardCharsets.UTF_8));
+        return sb.toString();
+    }
+
+    private Object parseTagged(String tag, ReadCache cache) throws IOException {
+        ReadHandler<Object, Object> val_handler = getHandler(tag);
+        if (val_handler != null) {
+            int b = peek();
+            if (b == '{' && val_handler instanceof MapReadHandler) {
+                // use map reader to decode value
+                return parseMap(false, cache, (MapReadHandler<Object, ?, Object, Object, ?>) val_handler);
+            } else if (b == '[' && val_handler instanceof ArrayReadHandler) {
+                // use array reader to decode value
+                return parseArray(false, cache, (ArrayReadHandler<Object, ?, Object, ?>) val_handler);
+            } else {
+                // read value and decode normally
+                return val_handler.fromRep(parseVal(false, cache));
+            }
+        } else {
+            // default decode
+            return this.decode(tag, parseVal(false, cache));
+        }
+    }
+
+    @Override
+    public Object parseMap(boolean ignored, ReadCache cache, MapReadHandler<Object, ?, Object, Object, ?> handler) throws IOException {
+        expect('{');
+        return parseEntries(cache, handler, '}', ':');
+    }
+
+    // parses key/value pairs up to and including end
+    private Object parseEntries(ReadCache cache, MapReadHandler<Object, ?, Object, Object, ?> handler, int end, int separator) throws IOException {
+
+        MapReader<Object, ?, Object, Object> mr = (handler != null) ? handler.mapReader() : mapBuilder;
+
+        Object mb = mr.init();
+
+        if (peek() == end) {
+            pos++;
+            return mr.complete(mb);
+        }
+
+        while (true) {
+            Object key = parseVal(true, cache);
+            expect(separator);
+            if (key instanceof Tag) {
+                Object val = parseTagged(((Tag) key).getValue(), cache);
+                expect(end);
+                return val;
+            }
+            mb = mr.add(mb, key, parseVal(false, cache));
+            int b = next();
+            if (b == end)
+                return mr.complete(mb);
+            if (b != ',')
+                throw unexpected(b);
+        }
+    }
+
+    @Override
+    public Object parseArray(boolean ignored, ReadCache cache, ArrayReadHandler<Object, ?, Object, ?> handler) throws IOException {
+
+        expect('[');
+
+        if (peek() != ']') {
+            Object firstVal = parseVal(false, cache);
+            if (firstVal != null) {
+                if (firstVal == Constants.MAP_AS_ARRAY) {
+                    // build a map w/ rest of array contents
+                    int b = next();
+                    if (b == ']')
+                        return mapBuilder.complete(mapBuilder.init());
+                    if (b != ',')
+                        throw unexpected(b);
+                    return parseEntries(cache, null, ']', ',');
+                } else if (firstVal instanceof Tag) {
+                    expect(',');
+                    Object val = parseTagged(((Tag) firstVal).getValue(), cache);
+                    expect(']');
+                    return val;
+                }
+            }
+
+            // process array w/o special decoding or interpretation
+            ArrayReader<Object, ?, Object> ar = (handler != null) ? handler.arrayReader() : listBuilder;
+            Object ab = ar.init();
+            ab = ar.add(ab, firstVal);
+            while (true) {
+                int b = next();
+                if (b == ']')
+                    return ar.complete(ab);
+                if (b != ',')
+                    throw unexpected(b);
+                ab = ar.add(ab, parseVal(false, cache));
+            }
+        }
+
+        pos++;
+        // make an empty collection, honoring handler's arrayReader, if present
+        ArrayReader<Object, ?, Object> ar = (handler != null) ? handler.arrayReader() : listBuilder;
+        return ar.complete(ar.init(0));
+    }
+
+    @Override
+    protected TokenSource tokenSource() {
+        return new Tokens();
+    }
+
+    // tracks the commas and colons between tokens, which the recursive
+    // parse handles by its structure
+    private class Tokens implements TokenSource {
+
+        private byte[] containers = new byte[16];
+        private boolean[] needComma = new boolean[16];
+        private boolean[] keyNext = new boolean[16];
+        private int depth;
+        // the colon after a key is consumed on the next call, so the key's
+        // bytes stay in place until it has been classified
+        private boolean colon;
+        private int start;
+        private int len;
+
+        private void push(byte c) {
+            if (depth == containers.length) {
+                containers = Arrays.copyOf(containers, depth * 2);
+                needComma = Arrays.copyOf(needComma, depth * 2);
+                keyNext = Arrays.copyOf(keyNext, depth * 2);
+            }
+            containers[depth] = c;
+            needComma[depth] = false;
+            keyNext[depth] = c == '{';
+            depth++;
+        }
+
+        private void valueDone() {
+            if (depth > 0) {
+                needComma[depth - 1] = true;
+                keyNext[depth - 1] = containers[depth - 1] == '{';
+            }
+        }
+
+        @Override
+        public Kind next() throws IOException {
+            if (colon) {
+                colon = false;
+                expect(':');
+            }
+            int b = peek();
+            if (depth > 0) {
+                int f = depth - 1;
+                if (b == (containers[f] == '{' ? '}' : ']')) {
+                    pos++;
+                    depth--;
+                    valueDone();
+                    return containers[f] == '{' ? Kind.MAP_END : Kind.ARRAY_END;
+                }
+                if (needComma[f]) {
+                    if (b != ',')
+                        throw unexpected(b);
+                    pos++;
+                    needComma[f] = false;
+                    b = peek();
+                }
+            }
+            switch (b) {
+                case '{':
+                    pos++;
+                    push((byte) '{');
+                    return Kind.MAP_START;
+                case '[':
+                    pos++;
+                    push((byte) '[');
+                    return Kind.ARRAY_START;
+                case '"':
+                    pos++;
+                    len = scanString();
+                    start = pos;
+                    pos += len + 1;
+                    if (depth > 0 && keyNext[depth - 1]) {
+                        keyNext[depth - 1] = false;
+                        colon = true;
+                    } else {
+                        valueDone();
+                    }
+                    return Kind.STRING;
+                case 't':
+                    literal("true");
+                    valueDone();
+                    return Kind.TRUE;
+                case 'f':
+                    literal("false");
+                    valueDone();
+                    return Kind.FALSE;
+                case 'n':
+                    literal("null");
+                    valueDone();
+                    return Kind.NULL;
+                case -1:
+                    if (depth == 0)
+                        return Kind.EOF;
+                    throw new EOFException();
+                default:
+                    if (b == '-' || (b >= '0' && b <= '9')) {
+                        Kind k = scanNumber();
+                        valueDone();
+                        return k;
+                    }
+                    throw unexpected(b);
+            }
+        }
+
+        @Override
+        public int size() { return -1; }
+
+        @Override
+        public CharWindow chars(CharWindow window) throws IOException {
+            if (ascii && !escaped)
+                return window.wrapAscii(buf, start, len);
+            return window.wrap(decodeString(start, len), 0);
+        }
+
+        @Override
+        public long longValue() { return number; }
+
+        @Override
+        public double doubleValue() { return fraction; }
+
+        @Override
+        public Object value() { return bigNumber; }
+    }
+}
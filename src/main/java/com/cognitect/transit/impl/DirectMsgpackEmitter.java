@@ -0,0 +1,170 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.WriteHandler;
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.io.IOException;
+import java.util.Base64;
+import java.util.Map;
+import java.util.function.Function;
+
+public class DirectMsgpackEmitter extends AbstractEmitter implements SplicingEmitter {
+
+    protected final MsgpackEncoder gen;
+
+    public DirectMsgpackEmitter(MsgpackEncoder gen, WriteHandlerMap writeHandlerMap, WriteHandler defaultWriteHandler, Function<Object,Object> transform) {
+        super(writeHandlerMap, defaultWriteHandler, transform);
+        this.gen = gen;
+    }
+
+    @Override
+    public void emit(Object o, boolean asMapKey, WriteCache cache) throws Exception {
+        marshalTop(o, cache);
+    }
+
+    @Override
+    public void emitNil(boolean asMapKey, WriteCache cache) throws Exception {
+        this.gen.writeNil();
+    }
+
+    @Override
+    public void emitString(String prefix, String tag, String s, boolean asMapKey, WriteCache cache) throws Exception {
+        String outString = cache.cacheWrite(Util.maybePrefix(prefix, tag, s), asMapKey);
+        this.gen.writeString(outString);
+    }
+
+    @Override
+    protected void emitString(SerializedString s, boolean asMapKey, WriteCache cache) throws Exception {
+        String outString = cache.cacheWrite(s.getValue(), asMapKey);
+        if(outString == s.getValue())
+            this.gen.writeRaw(s.asUnquotedUTF8());
+        else
+            this.gen.writeString(outString);
+    }
+
+    @Override
+    public void emitBoolean(Boolean b, boolean asMapKey, WriteCache cache) throws Exception {
+        this.gen.writeBoolean(b);
+    }
+
+    @Override
+    public void emitBoolean(boolean b, boolean asMapKey, WriteCache cache) throws Exception {
+        this.gen.writeBoolean(b);
+    }
+
+    @Override
+    public void emitInteger(Object o, boolean asMapKey, WriteCache cache) throws Exception {
+        this.gen.writeLong(Util.numberToPrimitiveLong(o));
+    }
+
+    @Override
+    public void emitInteger(long i, boolean asMapKey, WriteCache cache) throws Exception {
+        this.gen.writeLong(i);
+    }
+
+    @Override
+    public void emitDouble(Object d, boolean asMapKey, WriteCache cache) throws Exception {
+        if (d instanceof Double)
+            this.gen.writeDouble((Double) d);
+        else if (d instanceof Float)
+            this.gen.writeFloat((Float) d);
+        else
+            throw new Exception("Unknown floating point type: " + d.getClass());
+    }
+
+    @Override
+    public void emitDouble(float d, boolean asMapKey, WriteCache cache) throws Exception {
+        this.gen.writeFloat(d);
+    }
+
+    @Override
+    public void emitDouble(double d, boolean asMapKey, WriteCache cache) throws Exception {
+        this.gen.writeDouble(d);
+    }
+
+    @Override
+    public void emitBinary(Object b, boolean asMapKey, WriteCache cache) throws Exception {
+        byte[] encodedBytes = Base64.getEncoder().encode((byte[])b);
+        emitString(Constants.ESC_STR, "b", new String(encodedBytes), asMapKey, cache);
+    }
+
+    @Override
+    public void emitArrayStart(Long size) throws Exception {
+        this.gen.writeArrayHeader(size.intValue());
+    }
+
+    @Override
+    public void emitArrayEnd() throws Exception {
+    }
+
+    @Override
+    public void emitMapStart(Long size) throws Exception {
+        this.gen.writeMapHeader(size.intValue());
+    }
+
+    @Override
+    public void emitMapEnd() throws Exception {
+    }
+
+    @Override
+    public void flushWriter() throws IOException {
+        this.gen.flush();
+    }
+
+    @Override
+    protected long bufferedBytes() {
+        return this.gen.buffered();
+    }
+
+    // parts are written as bare elements, with no framing or separators
+    @Override
+    public void startPart() throws Exception {
+    }
+
+    @Override
+    public void endPart() throws Exception {
+    }
+
+    @Override
+    public int partFraming() {
+        return 0;
+    }
+
+    @Override
+    public int partSeparator() {
+        return -1;
+    }
+
+    @Override
+    public int emptyStringLength() {
+        return 1;
+    }
+
+    @Override
+    public void spliceBytes(byte[] b, int off, int len) throws Exception {
+        this.gen.writeBytes(b, off, len);
+    }
+
+    @Override
+    public void spliceString(String s) throws Exception {
+        this.gen.writeString(s);
+    }
+
+    @Override
+    public boolean prefersStrings() {
+        return false;
+    }
+
+    @Override
+    protected void emitMap(Iterable<Map.Entry<Object, Object>> i, boolean ignored, WriteCache cache) throws Exception {
+        emitMapStart(Util.mapSize(i));
+        for (Map.Entry e : i) {
+            marshal(e.getKey(), true, cache);
+            marshal(e.getValue(), false, cache);
+        }
+        emitMapEnd();
+    }
+}
@@ -0,0 +1,257 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+public class DirectMsgpackParser extends AbstractParser {
+    protected final MsgpackDecoder mp;
+    private int remainingElements;
+
+    public DirectMsgpackParser(MsgpackDecoder mp,
+                               Map<String, ReadHandler<?,?>> handlers,
+                               DefaultReadHandler defaultHandler,
+                               MapReader<?, Map<Object, Object>, Object, Object> mapBuilder,
+                               ArrayReader<?, List<Object>, Object> listBuilder) {
+        super(handlers, defaultHandler, mapBuilder, listBuilder);
+        this.mp = mp;
+    }
+
+    @Override
+    protected boolean resetInput(InputStream in) {
+        if (!mp.reset(in))
+            return false;
+        remainingElements = 0;
+        return true;
+    }
+
+    @Override
+    public Object parse(ReadCache cache) throws IOException {
+        return parseVal(false, cache);
+    }
+
+    @Override
+    public boolean atEnd() throws IOException {
+        return mp.atEnd();
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        if (mp.nextType() != MsgpackDecoder.Type.ARRAY)
+            throw new IOException("Expected an array, found " + mp.nextType());
+        remainingElements = mp.readArrayHeader();
+    }
+
+    @Override
+    public boolean hasNextElement() {
+        if (remainingElements > 0) {
+            remainingElements--;
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public Object parseVal(boolean asMapKey, ReadCache cache) throws IOException {
+        switch (mp.nextType()) {
+            case MAP:
+                return parseMap(asMapKey, cache, null);
+            case ARRAY:
+                return parseArray(asMapKey, cache, null);
+            case STRING:
+                return cache.cacheRead(mp.readString(), asMapKey, this);
+            case INTEGER:
+                return mp.readInteger();
+            case FLOAT:
+                return mp.readDouble();
+            case BOOLEAN:
+                return mp.readBoolean();
+            case BINARY:
+                // binary is a ground type, its decoding cannot be overridden
+                return mp.readBinary();
+            case EXT:
+                return parseExt();
+            case NIL:
+                mp.readNil();
+        }
+
+        return null;
+    }
+
+    private Object parseExt() throws IOException {
+        int len = mp.readExtHeader();
+        switch (mp.extType()) {
+            case MsgpackEncoder.EXT_TIMESTAMP:
+                return decode("m", mp.readTimestamp(len));
+            case MsgpackEncoder.EXT_UUID:
+                if (len == 16) {
+                    Long msb = mp.readInt64();
+                    Long lsb = mp.readInt64();
+                    return decode("u", Arrays.asList(msb, lsb));
+                }
+        }
+        throw new IOException("Unsupported msgpack extension type " + mp.extType() + " of length " + len);
+    }
+
+    private Object parseTagged(String tag, ReadCache cache) throws IOException {
+        ReadHandler<Object, Object> val_handler = getHandler(tag);
+        if (val_handler != null) {
+            MsgpackDecoder.Type next = this.mp.nextType();
+            if (next == MsgpackDecoder.Type.MAP && val_handler instanceof MapReadHandler) {
+                // use map reader to decode value
+                return parseMap(false, cache, (MapReadHandler<Object, ?, Object, Object, ?>) val_handler);
+            } else if (next == MsgpackDecoder.Type.ARRAY && val_handler instanceof ArrayReadHandler) {
+                // use array reader to decode value
+                return parseArray(false, cache, (ArrayReadHandler<Object, ?, Object, ?>) val_handler);
+            } else {
+                // read value and decode normally
+                return val_handler.fromRep(parseVal(false, cache));
+            }
+        } else {
+            // default decode
+            return this.decode(tag, parseVal(false, cache));
+        }
+    }
+
+    @Override
+    public Object parseMap(boolean ignored, ReadCache cache, MapReadHandler<Object, ?, Object, Object, ?> handler) throws IOException {
+
+        int sz = this.mp.readMapHeader();
+
+        MapReader<Object, ?, Object, Object> mr = (handler != null) ? handler.mapReader() : mapBuilder;
+
+        Object mb = mr.init(sz);
+
+        for (int remainder = sz; remainder > 0; remainder--) {
+            Object key = parseVal(true, cache);
+            if (key instanceof Tag) {
+                return parseTagged(((Tag) key).getValue(), cache);
+            } else {
+                mb = mr.add(mb, key, parseVal(false, cache));
+            }
+        }
+
+        return mr.complete(mb);
+    }
+
+    @Override
+    public Object parseArray(boolean ignored, ReadCache cache, ArrayReadHandler<Object, ?, Object, ?> handler) throws IOException {
+
+        int sz = this.mp.readArrayHeader();
+
+        ArrayReader<Object, ?, Object> ar = (handler != null) ? handler.arrayReader() : listBuilder;
+
+        Object ab = ar.init(sz);
+
+        for (int remainder = sz; remainder > 0; remainder--) {
+            Object val = parseVal(false, cache);
+            if ((val != null) && (val instanceof Tag)) {
+                // it's a tagged value
+                return parseTagged(((Tag) val).getValue(), cache);
+            } else {
+                // fall through to regular parse
+                ab = ar.add(ab, val);
+            }
+        }
+
+        return ar.complete(ab);
+    }
+
+    @Override
+    protected TokenSource tokenSource() {
+        return new Tokens();
+    }
+
+    // msgpack containers carry their sizes, so the number of items left
+    // in each is tracked to report their ends
+    private class Tokens implements TokenSource {
+
+        private int[] remaining = new int[16];
+        private boolean[] maps = new boolean[16];
+        private int depth;
+        private int size;
+        private String string;
+        private long longValue;
+        private double doubleValue;
+        private Object value;
+
+        private void push(boolean map, int items) {
+            if (depth == remaining.length) {
+                remaining = Arrays.copyOf(remaining, depth * 2);
+                maps = Arrays.copyOf(maps, depth * 2);
+            }
+            remaining[depth] = items;
+            maps[depth] = map;
+            depth++;
+        }
+
+        @Override
+        public Kind next() throws IOException {
+            if (depth > 0) {
+                if (remaining[depth - 1] == 0)
+                    return maps[--depth] ? Kind.MAP_END : Kind.ARRAY_END;
+                remaining[depth - 1]--;
+            } else if (mp.atEnd()) {
+                return Kind.EOF;
+            }
+            switch (mp.nextType()) {
+                case MAP:
+                    size = mp.readMapHeader();
+                    push(true, size * 2);
+                    return Kind.MAP_START;
+                case ARRAY:
+                    size = mp.readArrayHeader();
+                    push(false, size);
+                    return Kind.ARRAY_START;
+                case STRING:
+                    string = mp.readString();
+                    return Kind.STRING;
+                case INTEGER:
+                    if (mp.nextIntegerFitsLong()) {
+                        longValue = mp.readLong();
+                        return Kind.LONG;
+                    }
+                    value = mp.readInteger();
+                    return Kind.VALUE;
+                case FLOAT:
+                    doubleValue = mp.readDouble();
+                    return Kind.DOUBLE;
+                case BOOLEAN:
+                    return mp.readBoolean() ? Kind.TRUE : Kind.FALSE;
+                case BINARY:
+                    value = mp.readBinary();
+                    return Kind.VALUE;
+                case EXT:
+                    value = parseExt();
+                    return Kind.VALUE;
+                default:
+                    mp.readNil();
+                    return Kind.NULL;
+            }
+        }
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public CharWindow chars(CharWindow window) {
+            return window.wrap(string, 0);
+        }
+
+        @Override
+        public long longValue() { return longValue; }
+
+        @Override
+        public double doubleValue() { return doubleValue; }
+
+        @Override
+        public Object value() { return value; }
+    }
+}
@@ -0,0 +1,15 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Creates emitters like a writer's own, each writing to its own stream,
+ * for encoding values or parts of values on other threads
+ */
+public interface EmitterSource {
+    AbstractEmitter emitter(OutputStream out) throws IOException;
+}
@@ -0,0 +1,27 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Registry of strings that are frequently written as map keys, holding
+ * their escaped forms with the UTF-8 encoding precomputed.
+ */
+public class EncodedKeys {
+
+    private static final ConcurrentHashMap<String, SerializedString> keys = new ConcurrentHashMap<String, SerializedString>();
+    private static volatile boolean empty = true;
+
+    public static void register(String key) {
+        keys.computeIfAbsent(key, k -> new SerializedString(AbstractEmitter.escapeString(k)));
+        empty = false;
+    }
+
+    public static SerializedString get(String key) {
+        return empty ? null : keys.get(key);
+    }
+}
@@ -0,0 +1,19 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.fasterxml.jackson.core.io.SerializedString;
+
+/**
+ * Implemented by write handlers that can supply the complete, escaped
+ * string form of a value (e.g. "~:foo") with its encoding precomputed,
+ * so emitters can write it without rebuilding or re-encoding it.
+ */
+public interface EncodedWriteHandler {
+    /**
+     * @param o the object being written
+     * @return the encoded string form of o, or null if o has none
+     */
+    SerializedString encodedString(Object o);
+}
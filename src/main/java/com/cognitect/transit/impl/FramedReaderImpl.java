@@ -0,0 +1,153 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.FramedReader;
+import com.cognitect.transit.Reader;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Arrays;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+public class FramedReaderImpl implements FramedReader {
+
+    private final SeekableByteChannel in;
+    private final Function<InputStream, Reader> readers;
+    private final boolean checksums;
+    private final CRC32 crc = new CRC32();
+    private long[] offsets;
+    private int count;
+    private long next;
+
+    /**
+     * @param readers creates a reader for the bytes of a record
+     */
+    public FramedReaderImpl(SeekableByteChannel in, Function<InputStream, Reader> readers) throws IOException {
+        this.in = in;
+        this.readers = readers;
+        ByteBuffer header = read(0, FramedWriterImpl.HEADER_SIZE);
+        for (byte b : FramedWriterImpl.MAGIC) {
+            if (header.get() != b)
+                throw new IOException("Not a framed transit file");
+        }
+        this.checksums = (header.get() & FramedWriterImpl.CHECKSUMS) != 0;
+        if (!readIndex())
+            scanIndex();
+    }
+
+    private ByteBuffer read(long position, int len) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(len);
+        in.position(position);
+        while (b.hasRemaining()) {
+            if (in.read(b) < 0)
+                throw new EOFException();
+        }
+        b.flip();
+        return b;
+    }
+
+    // reads the footer, if there is a complete one
+    private boolean readIndex() throws IOException {
+        long size = in.size();
+        if (size < FramedWriterImpl.HEADER_SIZE + FramedWriterImpl.TRAILER_SIZE)
+            return false;
+        ByteBuffer trailer = read(size - FramedWriterImpl.TRAILER_SIZE, FramedWriterImpl.TRAILER_SIZE);
+        long index = trailer.getLong();
+        long n = trailer.getLong();
+        for (byte b : FramedWriterImpl.FOOTER_MAGIC) {
+            if (trailer.get() != b)
+                return false;
+        }
+        if (n < 0 || n > Integer.MAX_VALUE / 8 || index + n * 8 + FramedWriterImpl.TRAILER_SIZE != size)
+            return false;
+        ByteBuffer b = read(index, (int) n * 8);
+        offsets = new long[(int) n];
+        b.asLongBuffer().get(offsets);
+        count = (int) n;
+        return true;
+    }
+
+    // finds the records from their length prefixes, up to the first one
+    // that is cut short or corrupt, or the start of a partial footer
+    private void scanIndex() throws IOException {
+        long size = in.size();
+        long position = FramedWriterImpl.HEADER_SIZE;
+        offsets = new long[1024];
+        count = 0;
+        while (position + 4 <= size) {
+            int len = read(position, 4).getInt();
+            // records are never empty, and the footer starts with the
+            // zero high bytes of the first record's offset
+            if (len <= 0)
+                break;
+            long end = position + 4 + len + (checksums ? 4 : 0);
+            if (end > size)
+                break;
+            if (checksums && !checksumMatches(read(position + 4, len + 4), len))
+                break;
+            if (count == offsets.length)
+                offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = position;
+            position = end;
+        }
+    }
+
+    // true if the len bytes of a record in b are followed by their checksum
+    private boolean checksumMatches(ByteBuffer b, int len) {
+        crc.reset();
+        crc.update(b.array(), 0, len);
+        return (int) crc.getValue() == b.getInt(len);
+    }
+
+    @Override
+    public long count() {
+        return count;
+    }
+
+    @Override
+    public long offset(long n) {
+        if (n < 0 || n >= count)
+            throw new IndexOutOfBoundsException("No record " + n);
+        return offsets[(int) n];
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T read(long n) {
+        long offset = offset(n);
+        try {
+            int len = read(offset, 4).getInt();
+            ByteBuffer b = read(offset + 4, len + (checksums ? 4 : 0));
+            if (checksums && !checksumMatches(b, len))
+                throw new IOException("Checksum mismatch in record " + n);
+            next = n + 1;
+            return (T) readers.apply(new ByteArrayInputStream(b.array(), 0, len)).read();
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void seek(long n) {
+        if (n < 0 || n > count)
+            throw new IndexOutOfBoundsException("No record " + n);
+        next = n;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return next < count;
+    }
+
+    @Override
+    public <T> T next() {
+        return read(next);
+    }
+}
@@ -0,0 +1,117 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.FramedWriter;
+import com.cognitect.transit.ResettableWriter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+public class FramedWriterImpl<T> implements FramedWriter<T> {
+
+    static final byte[] MAGIC = {'T', 'R', 'F', '1'};
+    static final byte[] FOOTER_MAGIC = {'T', 'R', 'F', 'X'};
+    static final int HEADER_SIZE = 5;
+    static final int TRAILER_SIZE = 20;
+    static final int CHECKSUMS = 1;
+
+    private final OutputStream out;
+    private final Buffer buf;
+    private final ResettableWriter<T> writer;
+    private final boolean checksums;
+    private final CRC32 crc = new CRC32();
+    private final byte[] scratch = new byte[8];
+    private long position;
+    private long[] offsets = new long[1024];
+    private int count;
+    private boolean finished;
+
+    public static class Buffer extends ByteArrayOutputStream {
+        byte[] bytes() {
+            return buf;
+        }
+    }
+
+    /**
+     * @param writer the writer to encode values with, writing to buf
+     */
+    public FramedWriterImpl(OutputStream out, Buffer buf, ResettableWriter<T> writer, boolean checksums) {
+        this.out = out;
+        this.buf = buf;
+        this.writer = writer;
+        this.checksums = checksums;
+    }
+
+    private void writeLong(long v, int n) throws IOException {
+        for (int i = 0; i < n; i++)
+            scratch[i] = (byte) (v >> (8 * (n - 1 - i)));
+        out.write(scratch, 0, n);
+        position += n;
+    }
+
+    private void writeBytes(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        position += len;
+    }
+
+    private void writeHeader() throws IOException {
+        writeBytes(MAGIC, 0, MAGIC.length);
+        writeLong(checksums ? CHECKSUMS : 0, 1);
+    }
+
+    @Override
+    public void write(T o) {
+        if (finished)
+            throw new IllegalStateException("Writer is finished");
+        try {
+            if (position == 0)
+                writeHeader();
+            // each record is written as the first value of a new stream,
+            // so it is never preceded by a separator
+            buf.reset();
+            writer.reset(buf);
+            writer.write(o);
+            writer.flush();
+            byte[] b = buf.bytes();
+            int len = buf.size();
+
+            if (count == offsets.length)
+                offsets = Arrays.copyOf(offsets, count * 2);
+            offsets[count++] = position;
+            writeLong(len, 4);
+            writeBytes(b, 0, len);
+            if (checksums) {
+                crc.reset();
+                crc.update(b, 0, len);
+                writeLong(crc.getValue(), 4);
+            }
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (finished)
+            return;
+        try {
+            if (position == 0)
+                writeHeader();
+            long index = position;
+            for (int i = 0; i < count; i++)
+                writeLong(offsets[i], 8);
+            writeLong(index, 8);
+            writeLong(count, 8);
+            writeBytes(FOOTER_MAGIC, 0, FOOTER_MAGIC.length);
+            out.flush();
+            finished = true;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
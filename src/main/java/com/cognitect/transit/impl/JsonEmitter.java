@@ -5,14 +5,17 @@ package com.cognitect.transit.impl;
 
 import com.cognitect.transit.WriteHandler;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.JsonStringEncoder;
+import com.fasterxml.jackson.core.io.SerializedString;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.Base64;
 
-public class JsonEmitter extends AbstractEmitter {
+public class JsonEmitter extends AbstractEmitter implements SplicingEmitter {
 
     private final static BigInteger JSON_INT_MAX = new BigInteger(String.valueOf((long) Math.pow(2, 53) - 1));
     private final static BigInteger JSON_INT_MIN = new BigInteger("-" + JSON_INT_MAX.toString());
@@ -56,6 +59,15 @@ public class JsonEmitter extends AbstractEmitter {
         gen.writeString(outString);
     }
 
+    @Override
+    protected void emitString(SerializedString s, boolean asMapKey, WriteCache cache) throws Exception {
+        String outString = cache.cacheWrite(s.getValue(), asMapKey);
+        if(outString == s.getValue())
+            gen.writeString(s);
+        else
+            gen.writeString(outString);
+    }
+
     @Override
     public void emitBoolean(Boolean b, boolean asMapKey, WriteCache cache) throws Exception {
         if(asMapKey) {
@@ -152,6 +164,58 @@ public class JsonEmitter extends AbstractEmitter {
         gen.flush();
     }
 
+    @Override
+    protected long bufferedBytes() {
+        return Math.max(gen.getOutputBuffered(), 0);
+    }
+
+    @Override
+    protected void emitSeparator(int c) throws Exception {
+        gen.writeRaw((char) c);
+    }
+
+    // a part is written as an array, so that gen separates its elements
+    @Override
+    public void startPart() throws Exception {
+        gen.writeStartArray();
+    }
+
+    @Override
+    public void endPart() throws Exception {
+        gen.writeEndArray();
+    }
+
+    @Override
+    public int partFraming() {
+        return 1;
+    }
+
+    @Override
+    public int partSeparator() {
+        return ',';
+    }
+
+    @Override
+    public int emptyStringLength() {
+        return 2;
+    }
+
+    // spliced bytes bypass gen, so it must not be holding any
+    @Override
+    public void spliceBytes(byte[] b, int off, int len) throws Exception {
+        gen.flush();
+        ((OutputStream) gen.getOutputTarget()).write(b, off, len);
+    }
+
+    @Override
+    public void spliceString(String s) throws Exception {
+        gen.flush();
+        OutputStream out = (OutputStream) gen.getOutputTarget();
+        out.write('"');
+        out.write(JsonStringEncoder.getInstance().quoteAsUTF8(s));
+        out.write('"');
+    }
+
     @Override
     public boolean prefersStrings() {
 
@@ -15,6 +15,8 @@ import java.util.Map;
 public class JsonParser extends AbstractParser {
 
     private final com.fasterxml.jackson.core.JsonParser jp;
+    // set when atEnd has moved to the first token of the next value
+    private boolean peeked;
 
     public JsonParser(com.fasterxml.jackson.core.JsonParser jp,
                       Map<String, ReadHandler<?,?>> handlers,
@@ -38,14 +40,49 @@ public class JsonParser extends AbstractParser {
         return val;
     }
 
+    private JsonToken advance() throws IOException {
+        if (peeked) {
+            peeked = false;
+            return jp.getCurrentToken();
+        }
+        return jp.nextToken();
+    }
+
+    @Override
+    public boolean atEnd() throws IOException {
+        if (!peeked) {
+            if (jp.nextToken() == null)
+                return true;
+            peeked = true;
+        }
+        return false;
+    }
+
     @Override
     public Object parse(ReadCache cache) throws IOException {
-        if(jp.nextToken() == null)
+        if(advance() == null)
             throw new EOFException();
         else
             return parseVal(false, cache);
     }
 
+    @Override
+    public void beginArray() throws IOException {
+        JsonToken t = advance();
+        if (t == null)
+            throw new EOFException();
+        if (t != JsonToken.START_ARRAY)
+            throw new IOException("Expected an array, found " + t);
+    }
+
+    @Override
+    public boolean hasNextElement() throws IOException {
+        JsonToken t = jp.nextToken();
+        if (t == null)
+            throw new EOFException();
+        return t != JsonToken.END_ARRAY;
+    }
+
     @Override
     public Object parseVal(boolean asMapKey, ReadCache cache) throws IOException {
 
@@ -55,9 +92,8 @@ public class JsonParser extends AbstractParser {
             case START_ARRAY:
                 return parseArray(asMapKey, cache, null);
             case FIELD_NAME:
-                return cache.cacheRead(jp.getText(), asMapKey, this);
             case VALUE_STRING:
-                return cache.cacheRead(jp.getText(), asMapKey, this);
+                return parseText(asMapKey, cache);
             case VALUE_NUMBER_INT:
                 return parseLong();
             case VALUE_NUMBER_FLOAT:
@@ -72,6 +108,31 @@ public class JsonParser extends AbstractParser {
         }
     }
 
+    // resolves cache codes and decodes escaped values from Jackson's
+    // char buffer, building a String only when it is needed
+    private Object parseText(boolean asMapKey, ReadCache cache) throws IOException {
+        int len = jp.getTextLength();
+        if (len >= 2) {
+            char[] cs = jp.getTextCharacters();
+            int off = jp.getTextOffset();
+            char c0 = cs[off];
+            char c1 = cs[off + 1];
+            if (c0 == Constants.SUB && len <= 3 && c1 != ' ') {
+                int i = c1 - WriteCache.BASE_CHAR_IDX;
+                if (len == 3)
+                    i = (i * WriteCache.CACHE_CODE_DIGITS) + (cs[off + 2] - WriteCache.BASE_CHAR_IDX);
+                return cache.get(i);
+            }
+            if (c0 == Constants.ESC && decodesChars(getHandler(c1))) {
+                Object o = decode(c1, window.wrap(cs, off + 2, len - 2));
+                if (len >= WriteCache.MIN_SIZE_CACHEABLE && (asMapKey || c1 == ':' || c1 == '$'))
+                    cache.put(o);
+                return o;
+            }
+        }
+        return cache.cacheRead(jp.getText(), asMapKey, this);
+    }
+
     @Override
     public Object parseMap(boolean ignored, ReadCache cache, MapReadHandler<Object, ?, Object, Object, ?> handler) throws IOException {
         return parseMap(ignored, cache, handler, JsonToken.END_OBJECT);
@@ -165,4 +226,62 @@ public class JsonParser extends AbstractParser {
         ArrayReader<Object, ?, Object> ar = (handler != null) ? handler.arrayReader() : listBuilder;
         return ar.complete(ar.init(0));
     }
+
+    @Override
+    protected TokenSource tokenSource() {
+        return new Tokens();
+    }
+
+    private class Tokens implements TokenSource {
+
+        private long longValue;
+        private double doubleValue;
+        private Object value;
+
+        @Override
+        public Kind next() throws IOException {
+            JsonToken t = advance();
+            if (t == null)
+                return Kind.EOF;
+            switch (t) {
+                case START_OBJECT: return Kind.MAP_START;
+                case END_OBJECT: return Kind.MAP_END;
+                case START_ARRAY: return Kind.ARRAY_START;
+                case END_ARRAY: return Kind.ARRAY_END;
+                case FIELD_NAME:
+                case VALUE_STRING:
+                    return Kind.STRING;
+                case VALUE_NUMBER_INT:
+                    if (jp.getNumberType() == com.fasterxml.jackson.core.JsonParser.NumberType.BIG_INTEGER) {
+                        value = jp.getBigIntegerValue();
+                        return Kind.VALUE;
+                    }
+                    longValue = jp.getLongValue();
+                    return Kind.LONG;
+                case VALUE_NUMBER_FLOAT:
+                    doubleValue = jp.getDoubleValue();
+                    return Kind.DOUBLE;
+                case VALUE_TRUE: return Kind.TRUE;
+                case VALUE_FALSE: return Kind.FALSE;
+                default: return Kind.NULL;
+            }
+        }
+
+        @Override
+        public int size() { return -1; }
+
+        @Override
+        public CharWindow chars(CharWindow window) throws IOException {
+            return window.wrap(jp.getTextCharacters(), jp.getTextOffset(), jp.getTextLength());
+        }
+
+        @Override
+        public long longValue() { return longValue; }
+
+        @Override
+        public double doubleValue() { return doubleValue; }
+
+        @Override
+        public Object value() { return value; }
+    }
 }
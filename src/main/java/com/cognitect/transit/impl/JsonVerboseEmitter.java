@@ -5,6 +5,7 @@ package com.cognitect.transit.impl;
 
 import com.cognitect.transit.WriteHandler;
 import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.io.SerializedString;
 
 import java.util.Map;
 import java.util.function.Function;
@@ -33,6 +34,23 @@ public class JsonVerboseEmitter extends JsonEmitter {
             gen.writeString(outString);
     }
 
+    @Override
+    protected void emitString(SerializedString s, boolean asMapKey, WriteCache cache) throws Exception {
+        String outString = cache.cacheWrite(s.getValue(), asMapKey);
+        if(outString == s.getValue()) {
+            if(asMapKey)
+                gen.writeFieldName(s);
+            else
+                gen.writeString(s);
+        }
+        else {
+            if(asMapKey)
+                gen.writeFieldName(outString);
+            else
+                gen.writeString(outString);
+        }
+    }
+
     @Override
     protected void emitTagged(String t, Object o, boolean ignored, WriteCache cache) throws Exception {
         emitMapStart(1L);
@@ -4,6 +4,7 @@
 package com.cognitect.transit.impl;
 
 import com.cognitect.transit.Keyword;
+import com.fasterxml.jackson.core.io.SerializedString;
 
 public class KeywordImpl implements Comparable<Keyword>, Keyword {
 
@@ -11,6 +12,7 @@ public class KeywordImpl implements Comparable<Keyword>, Keyword {
     final String name;
     transient String _str;
     transient int _hash;
+    transient SerializedString _encoded;
 
     public KeywordImpl(String nsname) {
         int i = nsname.indexOf('/');
@@ -21,6 +23,27 @@ public class KeywordImpl implements Comparable<Keyword>, Keyword {
             ns = nsname.substring(0, i).intern();
             name = nsname.substring(i + 1).intern();
         }
+        _hash = 17 * toString().hashCode();
+    }
+
+    private static final CanonicalTable<KeywordImpl> canonical = new CanonicalTable<KeywordImpl>(KeywordImpl::new);
+
+    /**
+     * Returns the canonical keyword for nsname; decoding and
+     * TransitFactory.keyword return canonical keywords, so equal keywords
+     * from either are the same instance
+     * @param nsname namespace and name, without the leading ':'
+     */
+    public static KeywordImpl canonical(String nsname) {
+        return canonical.get(nsname);
+    }
+
+    /**
+     * Returns the canonical keyword for the chars of nsname from start to end,
+     * building no string when there is one
+     */
+    public static KeywordImpl canonical(CharSequence nsname, int start, int end) {
+        return canonical.get(nsname, start, end);
     }
 
     @Override
@@ -34,6 +57,16 @@ public class KeywordImpl implements Comparable<Keyword>, Keyword {
         return _str;
     }
 
+    /**
+     * @return the escaped transit string for this keyword, e.g. "~:foo",
+     * with its encoded forms computed on first use
+     */
+    public SerializedString encoded() {
+        if(_encoded == null)
+            _encoded = new SerializedString(Constants.ESC_STR + toString());
+        return _encoded;
+    }
+
     @Override
     public String getName() {
         return name;
@@ -0,0 +1,267 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.DefaultReadHandler;
+import com.cognitect.transit.ReadHandler;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes the elements of a large top-level msgpack array in parts, on a
+ * pool.
+ *
+ * A part's cache codes can refer to strings in earlier parts, so a
+ * sequential pass first finds where the elements start, from their
+ * headers, and which strings define which cache entries. Each part is
+ * then decoded with a cache holding the entries in effect where it
+ * starts, decoded from the strings that defined them, so it reads what
+ * a sequential read would.
+ */
+public class MsgpackArraySplitter {
+
+    public static final int MIN_SPLIT_SIZE = 4096;
+    private static final int MIN_PART_SIZE = 1024;
+    private static final int PARTS_PER_CPU = 4;
+
+    private final Map<String, ReadHandler<?,?>> handlers;
+    private final DefaultReadHandler<?> defaultHandler;
+    private final ForkJoinPool pool;
+
+    // the offset of the string that defined each cache entry, or -1
+    private final int[] entries = new int[WriteCache.MAX_CACHE_ENTRIES];
+    private int index;
+
+    // the containers enclosing the item being scanned, with the number of
+    // items left in each
+    private int[] left = new int[16];
+    private boolean[] maps = new boolean[16];
+
+    public MsgpackArraySplitter(Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler,
+                                ForkJoinPool pool) {
+        this.handlers = handlers;
+        this.defaultHandler = defaultHandler;
+        this.pool = pool;
+    }
+
+    private DirectMsgpackParser parser(byte[] b, int off, int len) {
+        return new DirectMsgpackParser(new MsgpackDecoder(b, off, len), handlers, defaultHandler,
+                new MapBuilderImpl(), new ListBuilderImpl());
+    }
+
+    private static int arraySize(byte[] b, int off) {
+        int h = b[off] & 0xff;
+        if ((h & 0xf0) == 0x90)
+            return h & 0x0f;
+        if (h == 0xdc)
+            return (int) length(b, off + 1, 2);
+        if (h == 0xdd)
+            return (int) Math.min(length(b, off + 1, 4), Integer.MAX_VALUE);
+        return -1;
+    }
+
+    private static long length(byte[] b, int off, int n) {
+        long v = 0;
+        for (int j = 0; j < n; j++)
+            v = (v << 8) | (b[off + j] & 0xff);
+        return v;
+    }
+
+    /**
+     * Reads the value in b from off to end, which must be complete,
+     * splitting it if it is a large array
+     */
+    public Object read(byte[] b, int off, int end) throws IOException {
+        int n = arraySize(b, off);
+        if (n < MIN_SPLIT_SIZE)
+            return parser(b, off, end - off).parse(new ReadCache());
+
+        int size = Math.max(MIN_PART_SIZE, n / (PARTS_PER_CPU * pool.getParallelism()));
+        int i = off + ((b[off] & 0xff) == 0xdc ? 3 : (b[off] & 0xff) == 0xdd ? 5 : 1);
+        Arrays.fill(entries, -1);
+        index = 0;
+        List<Part> parts = new ArrayList<Part>();
+        for (int e = 0; e < n; e++) {
+            if (e % size == 0) {
+                if (!parts.isEmpty())
+                    parts.get(parts.size() - 1).end = i;
+                parts.add(new Part(b, i, end, Math.min(size, n - e), entries.clone(), index));
+            }
+            i = scan(b, i);
+        }
+        parts.get(parts.size() - 1).end = i;
+
+        List<Future<Object[]>> decoded = new ArrayList<Future<Object[]>>();
+        try {
+            for (Part p : parts)
+                decoded.add(pool.submit(p));
+            ListBuilderImpl lb = new ListBuilderImpl();
+            List<Object> l = lb.init(n);
+            for (Future<Object[]> f : decoded) {
+                Object[] values = f.get();
+                // a tag among the elements makes the array a tagged value,
+                // which only a sequential read decodes
+                if (values == null)
+                    return parser(b, off, end - off).parse(new ReadCache());
+                for (Object o : values)
+                    l = lb.add(l, o);
+            }
+            return lb.complete(l);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException)
+                throw (IOException) cause;
+            throw new RuntimeException(cause);
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } finally {
+            for (Future<Object[]> f : decoded)
+                f.cancel(false);
+        }
+    }
+
+    private class Part implements Callable<Object[]> {
+        private final byte[] b;
+        private final int start;
+        private final int limit;
+        private final int count;
+        private final int[] entries;
+        private final int index;
+        int end;
+
+        Part(byte[] b, int start, int limit, int count, int[] entries, int index) {
+            this.b = b;
+            this.start = start;
+            this.limit = limit;
+            this.count = count;
+            this.entries = entries;
+            this.index = index;
+        }
+
+        @Override
+        public Object[] call() throws IOException {
+            DirectMsgpackParser p = parser(b, start, end - start);
+            Object[] cached = new Object[WriteCache.MAX_CACHE_ENTRIES];
+            for (int i = 0; i < cached.length; i++) {
+                if (entries[i] >= 0)
+                    cached[i] = p.parseString(new MsgpackDecoder(b, entries[i], limit - entries[i]).readString());
+            }
+            ReadCache cache = new ReadCache(cached, index);
+            Object[] values = new Object[count];
+            for (int i = 0; i < count; i++) {
+                Object o = p.parseVal(false, cache);
+                if (o instanceof Tag)
+                    return null;
+                values[i] = o;
+            }
+            return values;
+        }
+    }
+
+    /**
+     * Finds the end of the value at i, as RecordScanner does, recording
+     * the cache entries its strings define
+     * @return the offset just past the value
+     */
+    private int scan(byte[] b, int i) throws IOException {
+        int depth = 0;
+        do {
+            boolean asMapKey = false;
+            if (depth > 0) {
+                asMapKey = maps[depth - 1] && (left[depth - 1] & 1) == 0;
+                left[depth - 1]--;
+            }
+            int at = i;
+            int h = b[i++] & 0xff;
+            if (h <= 0x7f || h >= 0xe0) {
+                // fixint
+            } else if (h <= 0x8f) {
+                depth = push(depth, 2 * (h & 0x0f), true);
+            } else if (h <= 0x9f) {
+                depth = push(depth, h & 0x0f, false);
+            } else if (h <= 0xbf) {
+                i = string(b, at, i, h & 0x1f, asMapKey);
+            } else {
+                switch (h) {
+                    case 0xc0: case 0xc2: case 0xc3: break;
+                    case 0xcc: case 0xd0: i += 1; break;
+                    case 0xcd: case 0xd1: i += 2; break;
+                    case 0xca: case 0xce: case 0xd2: i += 4; break;
+                    case 0xcb: case 0xcf: case 0xd3: i += 8; break;
+                    case 0xd4: i += 2; break;
+                    case 0xd5: i += 3; break;
+                    case 0xd6: i += 5; break;
+                    case 0xd7: i += 9; break;
+                    case 0xd8: i += 17; break;
+                    case 0xc4: i += 1 + (int) length(b, i, 1); break;
+                    case 0xc5: i += 2 + (int) length(b, i, 2); break;
+                    case 0xc6: i += 4 + (int) length(b, i, 4); break;
+                    case 0xc7: i += 2 + (int) length(b, i, 1); break;
+                    case 0xc8: i += 3 + (int) length(b, i, 2); break;
+                    case 0xc9: i += 5 + (int) length(b, i, 4); break;
+                    case 0xd9: i = string(b, at, i + 1, (int) length(b, i, 1), asMapKey); break;
+                    case 0xda: i = string(b, at, i + 2, (int) length(b, i, 2), asMapKey); break;
+                    case 0xdb: i = string(b, at, i + 4, (int) length(b, i, 4), asMapKey); break;
+                    case 0xdc: depth = push(depth, (int) length(b, i, 2), false); i += 2; break;
+                    case 0xdd: depth = push(depth, (int) length(b, i, 4), false); i += 4; break;
+                    case 0xde: depth = push(depth, 2 * (int) length(b, i, 2), true); i += 2; break;
+                    case 0xdf: depth = push(depth, 2 * (int) length(b, i, 4), true); i += 4; break;
+                    default:
+                        throw new IOException("Invalid msgpack type 0x" + Integer.toHexString(h));
+                }
+            }
+            while (depth > 0 && left[depth - 1] == 0)
+                depth--;
+        } while (depth > 0);
+        return i;
+    }
+
+    private int push(int depth, int items, boolean map) {
+        if (items == 0)
+            return depth;
+        if (depth == left.length) {
+            left = Arrays.copyOf(left, depth * 2);
+            maps = Arrays.copyOf(maps, depth * 2);
+        }
+        left[depth] = items;
+        maps[depth] = map;
+        return depth + 1;
+    }
+
+    /**
+     * Records the cache entry the string with its header at at and its
+     * bytes at off defines, if any, as ReadCache.cacheRead would
+     * @return the offset just past the string
+     */
+    private int string(byte[] b, int at, int off, int len, boolean asMapKey) {
+        if (len >= WriteCache.MIN_SIZE_CACHEABLE && b[off] != Constants.SUB &&
+                (asMapKey || (b[off] == Constants.ESC &&
+                        (b[off + 1] == ':' || b[off + 1] == '$' || b[off + 1] == '#'))) &&
+                charLength(b, off, len) >= WriteCache.MIN_SIZE_CACHEABLE) {
+            if (index == WriteCache.MAX_CACHE_ENTRIES)
+                index = 0;
+            entries[index++] = at;
+        }
+        return off + len;
+    }
+
+    // the length of the decoded string, which is len if its first
+    // MIN_SIZE_CACHEABLE bytes are ASCII
+    private static int charLength(byte[] b, int off, int len) {
+        for (int i = 0; i < WriteCache.MIN_SIZE_CACHEABLE; i++) {
+            if (b[off + i] < 0)
+                return new String(b, off, len, StandardCharsets.UTF_8).length();
+        }
+        return len;
+    }
+}
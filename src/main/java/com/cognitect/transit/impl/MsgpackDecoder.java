@@ -0,0 +1,386 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads msgpack values from a byte buffer, refilled from an input stream
+ * when one is given. Scalars are decoded straight from the buffer, with
+ * no intermediate value objects.
+ */
+public class MsgpackDecoder {
+
+    public static enum Type { NIL, BOOLEAN, INTEGER, FLOAT, STRING, ARRAY, MAP, BINARY, EXT }
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private InputStream in;
+    private byte[] buf;
+    private int pos;
+    private int limit;
+    private int extType;
+
+    public MsgpackDecoder(InputStream in) {
+        this.in = in;
+        this.buf = new byte[BUFFER_SIZE];
+    }
+
+    /**
+     * Creates a decoder that reads from a byte array, without copying it
+     */
+    public MsgpackDecoder(byte[] buf, int off, int len) {
+        this.in = null;
+        this.buf = buf;
+        this.pos = off;
+        this.limit = off + len;
+    }
+
+    /**
+     * Makes this decoder read from in, dropping any input it has buffered
+     * @return false for a decoder of a byte array, which has no buffer of
+     * its own to refill
+     */
+    public boolean reset(InputStream in) {
+        if (this.in == null)
+            return false;
+        this.in = in;
+        pos = limit = 0;
+        return true;
+    }
+
+    /**
+     * Makes at least n bytes available in the buffer, or throws
+     * EOFException
+     */
+    private void require(int n) throws IOException {
+        if (limit - pos >= n)
+            return;
+        if (in == null)
+            throw new EOFException();
+        int remaining = limit - pos;
+        if (n > buf.length) {
+            byte[] b = new byte[Math.max(n, buf.length * 2)];
+            System.arraycopy(buf, pos, b, 0, remaining);
+            buf = b;
+        } else if (remaining > 0) {
+            System.arraycopy(buf, pos, buf, 0, remaining);
+        }
+        pos = 0;
+        limit = remaining;
+        while (limit < n) {
+            int r = in.read(buf, limit, buf.length - limit);
+            if (r < 0)
+                throw new EOFException();
+            limit += r;
+        }
+    }
+
+    private int u1() {
+        return buf[pos++] & 0xff;
+    }
+
+    private int u2() {
+        int v = ((buf[pos] & 0xff) << 8) | (buf[pos + 1] & 0xff);
+        pos += 2;
+        return v;
+    }
+
+    private int i4() {
+        int v = ((buf[pos] & 0xff) << 24) | ((buf[pos + 1] & 0xff) << 16) |
+                ((buf[pos + 2] & 0xff) << 8) | (buf[pos + 3] & 0xff);
+        pos += 4;
+        return v;
+    }
+
+    private long i8() {
+        long hi = i4();
+        return (hi << 32) | (i4() & 0xffffffffL);
+    }
+
+    /**
+     * @return true if no more values can be read
+     */
+    public boolean atEnd() throws IOException {
+        if (pos < limit)
+            return false;
+        if (in == null)
+            return true;
+        try {
+            require(1);
+            return false;
+        } catch (EOFException e) {
+            return true;
+        }
+    }
+
+    public Type nextType() throws IOException {
+        require(1);
+        int b = buf[pos] & 0xff;
+        if (b <= 0x7f || b >= 0xe0)
+            return Type.INTEGER;
+        if (b <= 0x8f)
+            return Type.MAP;
+        if (b <= 0x9f)
+            return Type.ARRAY;
+        if (b <= 0xbf)
+            return Type.STRING;
+        switch (b) {
+            case 0xc0: return Type.NIL;
+            case 0xc4: case 0xc5: case 0xc6: return Type.BINARY;
+            case 0xc7: case 0xc8: case 0xc9:
+            case 0xd4: case 0xd5: case 0xd6: case 0xd7: case 0xd8: return Type.EXT;
+            case 0xc2:
+            case 0xc3: return Type.BOOLEAN;
+            case 0xca:
+            case 0xcb: return Type.FLOAT;
+            case 0xcc: case 0xcd: case 0xce: case 0xcf:
+            case 0xd0: case 0xd1: case 0xd2: case 0xd3: return Type.INTEGER;
+            case 0xd9: case 0xda: case 0xdb: return Type.STRING;
+            case 0xdc: case 0xdd: return Type.ARRAY;
+            case 0xde: case 0xdf: return Type.MAP;
+            default: throw unexpected(b);
+        }
+    }
+
+    private static IOException unexpected(int b) {
+        return new IOException("Unsupported msgpack type byte: 0x" + Integer.toHexString(b));
+    }
+
+    public void readNil() throws IOException {
+        require(1);
+        int b = u1();
+        if (b != 0xc0)
+            throw unexpected(b);
+    }
+
+    public boolean readBoolean() throws IOException {
+        require(1);
+        int b = u1();
+        switch (b) {
+            case 0xc2: return false;
+            case 0xc3: return true;
+            default: throw unexpected(b);
+        }
+    }
+
+    /**
+     * Reads an integer; unsigned 64 bit values above Long.MAX_VALUE are
+     * returned as BigInteger, everything else as Long
+     */
+    public Object readInteger() throws IOException {
+        if (!nextIntegerFitsLong()) {
+            pos++;
+            return new BigInteger(Long.toUnsignedString(i8()));
+        }
+        return readLong();
+    }
+
+    /**
+     * @return false if the next integer is an unsigned 64 bit value above
+     * Long.MAX_VALUE, which readLong would reject
+     */
+    public boolean nextIntegerFitsLong() throws IOException {
+        require(1);
+        if ((buf[pos] & 0xff) != 0xcf)
+            return true;
+        require(9);
+        return buf[pos + 1] >= 0;
+    }
+
+    public long readLong() throws IOException {
+        require(1);
+        int b = u1();
+        if (b <= 0x7f)
+            return b;
+        if (b >= 0xe0)
+            return (byte) b;
+        switch (b) {
+            case 0xcc: require(1); return u1();
+            case 0xcd: require(2); return u2();
+            case 0xce: require(4); return i4() & 0xffffffffL;
+            case 0xcf: {
+                require(8);
+                long v = i8();
+                if (v < 0)
+                    throw new IOException("Unsigned integer out of long range: " + Long.toUnsignedString(v));
+                return v;
+            }
+            case 0xd0: require(1); return (byte) u1();
+            case 0xd1: require(2); return (short) u2();
+            case 0xd2: require(4); return i4();
+            case 0xd3: require(8); return i8();
+            default: throw unexpected(b);
+        }
+    }
+
+    public double readDouble() throws IOException {
+        require(1);
+        int b = u1();
+        switch (b) {
+            case 0xca: require(4); return Float.intBitsToFloat(i4());
+            case 0xcb: require(8); return Double.longBitsToDouble(i8());
+            default: throw unexpected(b);
+        }
+    }
+
+    private int readRawHeader() throws IOException {
+        require(1);
+        int b = u1();
+        if ((b & 0xe0) == 0xa0)
+            return b & 0x1f;
+        switch (b) {
+            case 0xd9: require(1); return u1();
+            case 0xda: require(2); return u2();
+            case 0xdb: require(4); return length(i4());
+            default: throw unexpected(b);
+        }
+    }
+
+    private static int length(int n) throws IOException {
+        if (n < 0)
+            throw new IOException("Length too large: " + (n & 0xffffffffL));
+        return n;
+    }
+
+    public String readString() throws IOException {
+        int n = readRawHeader();
+        require(n);
+        String s = new String(buf, pos, n, StandardCharsets.UTF_8);
+        pos += n;
+        return s;
+    }
+
+    public int readArrayHeader() throws IOException {
+        require(1);
+        int b = u1();
+        if ((b & 0xf0) == 0x90)
+            return b & 0x0f;
+        switch (b) {
+            case 0xdc: require(2); return u2();
+            case 0xdd: require(4); return length(i4());
+            default: throw unexpected(b);
+        }
+    }
+
+    public int readMapHeader() throws IOException {
+        require(1);
+        int b = u1();
+        if ((b & 0xf0) == 0x80)
+            return b & 0x0f;
+        switch (b) {
+            case 0xde: require(2); return u2();
+            case 0xdf: require(4); return length(i4());
+            default: throw unexpected(b);
+        }
+    }
+
+    public byte[] readBinary() throws IOException {
+        require(1);
+        int b = u1();
+        int n;
+        switch (b) {
+            case 0xc4: require(1); n = u1(); break;
+            case 0xc5: require(2); n = u2(); break;
+            case 0xc6: require(4); n = length(i4()); break;
+            default: throw unexpected(b);
+        }
+        byte[] bytes = new byte[n];
+        readBytes(bytes, n);
+        return bytes;
+    }
+
+    private void readBytes(byte[] bytes, int n) throws IOException {
+        int off = 0;
+        while (off < n) {
+            if (pos == limit)
+                require(1);
+            int c = Math.min(n - off, limit - pos);
+            System.arraycopy(buf, pos, bytes, off, c);
+            pos += c;
+            off += c;
+        }
+    }
+
+    /**
+     * Reads the header of an extension value; its type is then available
+     * from extType()
+     * @return the length of the extension data
+     */
+    public int readExtHeader() throws IOException {
+        require(1);
+        int b = u1();
+        int n;
+        switch (b) {
+            case 0xd4: n = 1; break;
+            case 0xd5: n = 2; break;
+            case 0xd6: n = 4; break;
+            case 0xd7: n = 8; break;
+            case 0xd8: n = 16; break;
+            case 0xc7: require(1); n = u1(); break;
+            case 0xc8: require(2); n = u2(); break;
+            case 0xc9: require(4); n = length(i4()); break;
+            default: throw unexpected(b);
+        }
+        require(1);
+        extType = (byte) u1();
+        return n;
+    }
+
+    public int extType() {
+        return extType;
+    }
+
+    /**
+     * Reads the data of a timestamp extension value
+     * @param len length of the extension data
+     * @return milliseconds since the epoch
+     */
+    public long readTimestamp(int len) throws IOException {
+        require(len);
+        long seconds;
+        long nanos;
+        switch (len) {
+            case 4:
+                seconds = i4() & 0xffffffffL;
+                nanos = 0;
+                break;
+            case 8: {
+                long data = i8();
+                seconds = data & 0x3ffffffffL;
+                nanos = data >>> 34;
+                break;
+            }
+            case 12:
+                nanos = i4() & 0xffffffffL;
+                seconds = i8();
+                break;
+            default:
+                throw new IOException("Invalid timestamp length: " + len);
+        }
+        return Math.addExact(Math.multiplyExact(seconds, 1000L), nanos / 1000000L);
+    }
+
+    /**
+     * Reads 8 bytes of extension data as a big-endian long
+     */
+    public long readInt64() throws IOException {
+        require(8);
+        return i8();
+    }
+
+    public void skipBytes(int n) throws IOException {
+        while (n > 0) {
+            if (pos == limit)
+                require(1);
+            int c = Math.min(n, limit - pos);
+            pos += c;
+            n -= c;
+        }
+    }
+}
@@ -4,6 +4,7 @@
 package com.cognitect.transit.impl;
 
 import com.cognitect.transit.WriteHandler;
+import com.fasterxml.jackson.core.io.SerializedString;
 import org.msgpack.packer.Packer;
 
 import java.io.IOException;
@@ -41,12 +42,21 @@ public class MsgpackEmitter extends AbstractEmitter {
         this.gen.writeNil();
     }
 
-@Override
+    @Override
     public void emitString(String prefix, String tag, String s, boolean asMapKey, WriteCache cache) throws Exception {
         String outString = cache.cacheWrite(Util.maybePrefix(prefix, tag, s), asMapKey);
         this.gen.write(outString);
     }
 
+    @Override
+    protected void emitString(SerializedString s, boolean asMapKey, WriteCache cache) throws Exception {
+        String outString = cache.cacheWrite(s.getValue(), asMapKey);
+        if(outString == s.getValue())
+            this.gen.write(s.asUnquotedUTF8());
+        else
+            this.gen.write(outString);
+    }
+
     @Override
     public void emitBoolean(Boolean b, boolean asMapKey, WriteCache cache) throws Exception {
         this.gen.write(b);
@@ -0,0 +1,312 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes msgpack values into a byte buffer that is drained to an output
+ * stream. Values are encoded exactly as the msgpack 0.6 Packer encodes
+ * them, so either can produce data for the other's readers.
+ */
+public class MsgpackEncoder {
+
+    public static final int EXT_TIMESTAMP = -1;
+    public static final int EXT_UUID = 'u';
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private final OutputStream out;
+    private final byte[] buf;
+    private int pos;
+
+    public MsgpackEncoder(OutputStream out) {
+        this.out = out;
+        this.buf = new byte[BUFFER_SIZE];
+    }
+
+    public int buffered() {
+        return pos;
+    }
+
+    public void flush() throws IOException {
+        if (pos > 0) {
+            out.write(buf, 0, pos);
+            pos = 0;
+        }
+    }
+
+    private void ensure(int n) throws IOException {
+        if (buf.length - pos < n)
+            flush();
+    }
+
+    private void put1(int b) {
+        buf[pos++] = (byte) b;
+    }
+
+    private void put2(int v) {
+        buf[pos++] = (byte) (v >> 8);
+        buf[pos++] = (byte) v;
+    }
+
+    private void put4(int v) {
+        buf[pos++] = (byte) (v >> 24);
+        buf[pos++] = (byte) (v >> 16);
+        buf[pos++] = (byte) (v >> 8);
+        buf[pos++] = (byte) v;
+    }
+
+    private void put8(long v) {
+        put4((int) (v >> 32));
+        put4((int) v);
+    }
+
+    public void writeNil() throws IOException {
+        ensure(1);
+        put1(0xc0);
+    }
+
+    public void writeBoolean(boolean b) throws IOException {
+        ensure(1);
+        put1(b ? 0xc3 : 0xc2);
+    }
+
+    public void writeLong(long v) throws IOException {
+        ensure(9);
+        if (v < -(1L << 5)) {
+            if (v < -(1L << 15)) {
+                if (v < -(1L << 31)) {
+                    put1(0xd3);
+                    put8(v);
+                } else {
+                    put1(0xd2);
+                    put4((int) v);
+                }
+            } else if (v < -(1 << 7)) {
+                put1(0xd1);
+                put2((int) v);
+            } else {
+                put1(0xd0);
+                put1((int) v);
+            }
+        } else if (v < (1 << 7)) {
+            put1((int) v);
+        } else if (v < (1L << 16)) {
+            if (v < (1 << 8)) {
+                put1(0xcc);
+                put1((int) v);
+            } else {
+                put1(0xcd);
+                put2((int) v);
+            }
+        } else if (v < (1L << 32)) {
+            put1(0xce);
+            put4((int) v);
+        } else {
+            put1(0xcf);
+            put8(v);
+        }
+    }
+
+    public void writeFloat(float f) throws IOException {
+        ensure(5);
+        put1(0xca);
+        put4(Float.floatToRawIntBits(f));
+    }
+
+    public void writeDouble(double d) throws IOException {
+        ensure(9);
+        put1(0xcb);
+        put8(Double.doubleToRawLongBits(d));
+    }
+
+    public void writeArrayHeader(int size) throws IOException {
+        ensure(5);
+        if (size < 16) {
+            put1(0x90 | size);
+        } else if (size < 65536) {
+            put1(0xdc);
+            put2(size);
+        } else {
+            put1(0xdd);
+            put4(size);
+        }
+    }
+
+    public void writeMapHeader(int size) throws IOException {
+        ensure(5);
+        if (size < 16) {
+            put1(0x80 | size);
+        } else if (size < 65536) {
+            put1(0xde);
+            put2(size);
+        } else {
+            put1(0xdf);
+            put4(size);
+        }
+    }
+
+    private void writeRawHeader(int size) throws IOException {
+        ensure(5);
+        if (size < 32) {
+            put1(0xa0 | size);
+        } else if (size < 65536) {
+            put1(0xda);
+            put2(size);
+        } else {
+            put1(0xdb);
+            put4(size);
+        }
+    }
+
+    /**
+     * Writes bytes that are already UTF-8 encoded as a string
+     */
+    public void writeRaw(byte[] b) throws IOException {
+        writeRawHeader(b.length);
+        writeBytes(b, 0, b.length);
+    }
+
+    protected void writeBytes(byte[] b, int off, int len) throws IOException {
+        if (len > buf.length - pos) {
+            flush();
+            if (len > buf.length) {
+                out.write(b, off, len);
+                return;
+            }
+        }
+        System.arraycopy(b, off, buf, pos, len);
+        pos += len;
+    }
+
+    public void writeBinary(byte[] b) throws IOException {
+        ensure(5);
+        int size = b.length;
+        if (size < 256) {
+            put1(0xc4);
+            put1(size);
+        } else if (size < 65536) {
+            put1(0xc5);
+            put2(size);
+        } else {
+            put1(0xc6);
+            put4(size);
+        }
+        writeBytes(b, 0, size);
+    }
+
+    private void writeExtHeader(int type, int size) {
+        switch (size) {
+            case 1: put1(0xd4); break;
+            case 2: put1(0xd5); break;
+            case 4: put1(0xd6); break;
+            case 8: put1(0xd7); break;
+            case 16: put1(0xd8); break;
+            default:
+                put1(0xc7);
+                put1(size);
+        }
+        put1(type);
+    }
+
+    /**
+     * Writes a timestamp extension value, in the smallest of the 32, 64
+     * and 96 bit forms that holds it
+     * @param seconds seconds since the epoch
+     * @param nanos nanoseconds within the second, 0 to 999,999,999
+     */
+    public void writeTimestamp(long seconds, int nanos) throws IOException {
+        ensure(15);
+        if ((seconds >>> 34) == 0) {
+            long data = ((long) nanos << 34) | seconds;
+            if ((data & 0xffffffff00000000L) == 0) {
+                writeExtHeader(EXT_TIMESTAMP, 4);
+                put4((int) data);
+            } else {
+                writeExtHeader(EXT_TIMESTAMP, 8);
+                put8(data);
+            }
+        } else {
+            writeExtHeader(EXT_TIMESTAMP, 12);
+            put4(nanos);
+            put8(seconds);
+        }
+    }
+
+    public void writeUUID(long msb, long lsb) throws IOException {
+        ensure(18);
+        writeExtHeader(EXT_UUID, 16);
+        put8(msb);
+        put8(lsb);
+    }
+
+    /**
+     * Writes s as a UTF-8 string, encoding it straight into the buffer.
+     * Unpaired surrogates are written as '?', as String.getBytes does.
+     */
+    public void writeString(String s) throws IOException {
+        int len = s.length();
+        int utf8Len = utf8Length(s, len);
+        writeRawHeader(utf8Len);
+        if (utf8Len == len) {
+            // ASCII only
+            int i = 0;
+            while (i < len) {
+                if (pos == buf.length)
+                    flush();
+                int n = Math.min(len - i, buf.length - pos);
+                for (int end = i + n; i < end; i++)
+                    buf[pos++] = (byte) s.charAt(i);
+            }
+            return;
+        }
+        for (int i = 0; i < len; i++) {
+            ensure(4);
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                put1(c);
+            } else if (c < 0x800) {
+                put1(0xc0 | (c >> 6));
+                put1(0x80 | (c & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    put1(0xf0 | (cp >> 18));
+                    put1(0x80 | ((cp >> 12) & 0x3f));
+                    put1(0x80 | ((cp >> 6) & 0x3f));
+                    put1(0x80 | (cp & 0x3f));
+                } else {
+                    put1('?');
+                }
+            } else {
+                put1(0xe0 | (c >> 12));
+                put1(0x80 | ((c >> 6) & 0x3f));
+                put1(0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    private static int utf8Length(String s, int len) {
+        int n = len;
+        for (int i = 0; i < len; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                if (c < 0x800) {
+                    n += 1;
+                } else if (Character.isSurrogate(c)) {
+                    if (Character.isHighSurrogate(c) && i + 1 < len && Character.isLowSurrogate(s.charAt(i + 1))) {
+                        // four bytes for the pair
+                        n += 2;
+                        i++;
+                    }
+                } else {
+                    n += 2;
+                }
+            }
+        }
+        return n;
+    }
+}
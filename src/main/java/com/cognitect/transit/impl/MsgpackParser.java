@@ -4,18 +4,22 @@
 package com.cognitect.transit.impl;
 
 import com.cognitect.transit.*;
+import org.msgpack.MessageTypeException;
 import org.msgpack.type.Value;
 import org.msgpack.type.ValueType;
 import org.msgpack.unpacker.Unpacker;
 
+import java.io.EOFException;
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
 
 public class MsgpackParser extends AbstractParser {
     private final Unpacker mp;
+    private int remainingElements;
 
     public MsgpackParser(Unpacker mp,
                          Map<String, ReadHandler<?,?>> handlers,
@@ -44,6 +48,33 @@ public class MsgpackParser extends AbstractParser {
         return parseVal(false, cache);
     }
 
+    @Override
+    public boolean atEnd() throws IOException {
+        try {
+            mp.getNextType();
+            return false;
+        } catch (EOFException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public void beginArray() throws IOException {
+        if (mp.getNextType() != ValueType.ARRAY)
+            throw new IOException("Expected an array, found " + mp.getNextType());
+        remainingElements = mp.readArrayBegin();
+    }
+
+    @Override
+    public boolean hasNextElement() throws IOException {
+        if (remainingElements > 0) {
+            remainingElements--;
+            return true;
+        }
+        mp.readArrayEnd();
+        return false;
+    }
+
     @Override
     public Object parseVal(boolean asMapKey, ReadCache cache) throws IOException {
         switch (mp.getNextType()) {
@@ -149,4 +180,103 @@ public class MsgpackParser extends AbstractParser {
         this.mp.readArrayEnd();
         return ar.complete(ab);
     }
+
+    @Override
+    protected TokenSource tokenSource() {
+        return new Tokens();
+    }
+
+    // the unpacker needs the end of each map and array read explicitly,
+    // so the number of items left in each is tracked
+    private class Tokens implements TokenSource {
+
+        private int[] remaining = new int[16];
+        private boolean[] maps = new boolean[16];
+        private int depth;
+        private int size;
+        private String string;
+        private long longValue;
+        private double doubleValue;
+        private Object value;
+
+        private void push(boolean map, int items) {
+            if (depth == remaining.length) {
+                remaining = Arrays.copyOf(remaining, depth * 2);
+                maps = Arrays.copyOf(maps, depth * 2);
+            }
+            remaining[depth] = items;
+            maps[depth] = map;
+            depth++;
+        }
+
+        @Override
+        public Kind next() throws IOException {
+            ValueType t;
+            if (depth > 0) {
+                if (remaining[depth - 1] == 0) {
+                    if (maps[--depth]) {
+                        mp.readMapEnd(true);
+                        return Kind.MAP_END;
+                    }
+                    mp.readArrayEnd();
+                    return Kind.ARRAY_END;
+                }
+                remaining[depth - 1]--;
+                t = mp.getNextType();
+            } else {
+                try {
+                    t = mp.getNextType();
+                } catch (EOFException e) {
+                    return Kind.EOF;
+                }
+            }
+            switch (t) {
+                case MAP:
+                    size = mp.readMapBegin();
+                    push(true, size * 2);
+                    return Kind.MAP_START;
+                case ARRAY:
+                    size = mp.readArrayBegin();
+                    push(false, size);
+                    return Kind.ARRAY_START;
+                case RAW:
+                    string = mp.readString();
+                    return Kind.STRING;
+                case INTEGER:
+                    try {
+                        longValue = mp.readLong();
+                        return Kind.LONG;
+                    } catch (MessageTypeException e) {
+                        // a uint64 above Long.MAX_VALUE, which is left unread
+                        value = mp.readBigInteger();
+                        return Kind.VALUE;
+                    }
+                case FLOAT:
+                    doubleValue = mp.readDouble();
+                    return Kind.DOUBLE;
+                case BOOLEAN:
+                    return mp.readBoolean() ? Kind.TRUE : Kind.FALSE;
+                default:
+                    mp.readNil();
+                    return Kind.NULL;
+            }
+        }
+
+        @Override
+        public int size() { return size; }
+
+        @Override
+        public CharWindow chars(CharWindow window) {
+            return window.wrap(string, 0);
+        }
+
+        @Override
+        public long longValue() { return longValue; }
+
+        @Override
+        public double doubleValue() { return doubleValue; }
+
+        @Override
+        public Object value() { return value; }
+    }
 }
@@ -0,0 +1,60 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.WriteHandler;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.UUID;
+import java.util.function.Function;
+
+/**
+ * Emitter for the MSGPACK_NATIVE format: binary values are written as
+ * msgpack bin, dates and instants as timestamp extension values and
+ * UUIDs as a 16 byte extension value. Map keys keep their string
+ * encodings.
+ */
+public class NativeMsgpackEmitter extends DirectMsgpackEmitter {
+
+    public NativeMsgpackEmitter(MsgpackEncoder gen, WriteHandlerMap writeHandlerMap, WriteHandler defaultWriteHandler, Function<Object,Object> transform) {
+        super(gen, writeHandlerMap, defaultWriteHandler, transform);
+    }
+
+    @Override
+    public void emitBinary(Object b, boolean asMapKey, WriteCache cache) throws Exception {
+        if (asMapKey)
+            super.emitBinary(b, asMapKey, cache);
+        else
+            this.gen.writeBinary((byte[]) b);
+    }
+
+    @Override
+    protected void emitEncoded(String t, WriteHandler<Object, Object> h, Object o, boolean asMapKey, WriteCache cache) throws Exception {
+        if (!asMapKey && t.length() == 1) {
+            switch (t.charAt(0)) {
+                case 'm':
+                    if (o instanceof Date) {
+                        long ms = ((Date) o).getTime();
+                        this.gen.writeTimestamp(Math.floorDiv(ms, 1000L), (int) Math.floorMod(ms, 1000L) * 1000000);
+                        return;
+                    }
+                    if (o instanceof Instant) {
+                        Instant i = (Instant) o;
+                        this.gen.writeTimestamp(i.getEpochSecond(), i.getNano());
+                        return;
+                    }
+                    break;
+                case 'u':
+                    if (o instanceof UUID) {
+                        UUID u = (UUID) o;
+                        this.gen.writeUUID(u.getMostSignificantBits(), u.getLeastSignificantBits());
+                        return;
+                    }
+                    break;
+            }
+        }
+        super.emitEncoded(t, h, o, asMapKey, cache);
+    }
+}
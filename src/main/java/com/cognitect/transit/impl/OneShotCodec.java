@@ -0,0 +1,104 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.DefaultReadHandler;
+import com.cognitect.transit.ReadHandler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Encodes single values to byte arrays and decodes them from byte arrays.
+ * Encoders, with their buffers and caches, and read caches are pooled, so
+ * a call allocates little beyond its result. Pools are bounded, and what
+ * does not fit, or grew large, is dropped.
+ */
+public class OneShotCodec {
+
+    private static final int POOL_SIZE = 2 * Runtime.getRuntime().availableProcessors();
+    private static final int MAX_POOLED_BUFFER = 64 * 1024;
+
+    private final EmitterSource emitters;
+    private final boolean cacheEnabled;
+    private final boolean msgpack;
+    private final Map<String, ReadHandler<?,?>> handlers;
+    private final DefaultReadHandler<?> defaultHandler;
+    private final BlockingQueue<Encoder> encoders = new ArrayBlockingQueue<Encoder>(POOL_SIZE);
+    private final BlockingQueue<ReadCache> caches = new ArrayBlockingQueue<ReadCache>(POOL_SIZE);
+
+    /**
+     * @param emitters creates the emitters values are encoded with
+     * @param cacheEnabled false for formats that do not cache, like verbose JSON
+     * @param msgpack true to decode msgpack, false to decode JSON
+     */
+    public OneShotCodec(EmitterSource emitters, boolean cacheEnabled, boolean msgpack,
+                        Map<String, ReadHandler<?,?>> customHandlers, DefaultReadHandler<?> customDefaultHandler) {
+        this.emitters = emitters;
+        this.cacheEnabled = cacheEnabled;
+        this.msgpack = msgpack;
+        this.handlers = ReaderFactory.handlerMap(customHandlers);
+        this.defaultHandler = ReaderFactory.defaultHandler(customDefaultHandler);
+    }
+
+    private static class Buffer extends ByteArrayOutputStream {
+        int capacity() {
+            return buf.length;
+        }
+    }
+
+    private class Encoder {
+        private final Buffer buf = new Buffer();
+        private final AbstractEmitter emitter;
+        private final WriteCache cache = new WriteCache(cacheEnabled);
+
+        Encoder() throws IOException {
+            this.emitter = emitters.emitter(buf);
+        }
+
+        byte[] encode(Object o) throws Exception {
+            buf.reset();
+            emitter.emit(o, false, cache.init());
+            emitter.flushWriter();
+            return buf.toByteArray();
+        }
+    }
+
+    public byte[] encode(Object o) {
+        try {
+            Encoder e = encoders.poll();
+            if (e == null)
+                e = new Encoder();
+            byte[] b = e.encode(o);
+            // an encoder that threw is not returned, as it may have been
+            // left mid-value
+            if (e.buf.capacity() <= MAX_POOLED_BUFFER)
+                encoders.offer(e);
+            return b;
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public Object decode(byte[] b, int off, int len) {
+        ReadCache cache = caches.poll();
+        if (cache == null)
+            cache = new ReadCache();
+        try {
+            AbstractParser p = msgpack ?
+                    new DirectMsgpackParser(new MsgpackDecoder(b, off, len), handlers, defaultHandler,
+                            new MapBuilderImpl(), new ListBuilderImpl()) :
+                    new DirectJsonParser(b, off, len, handlers, defaultHandler,
+                            new MapBuilderImpl(), new ListBuilderImpl());
+            return p.parse(cache.init());
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        } finally {
+            caches.offer(cache);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.DefaultReadHandler;
+import com.cognitect.transit.ParallelReader;
+import com.cognitect.transit.ReadHandler;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * Splits its input into batches of whole top-level values and decodes the
+ * batches on a pool, each with its own parser and cache. Only a bounded
+ * number of batches is in flight, so memory use does not grow with the
+ * size of the input.
+ */
+public class ParallelReaderImpl implements ParallelReader {
+
+    private static final int MAX_BATCH_VALUES = 256;
+    private static final int MAX_BATCH_BYTES = 64 * 1024;
+
+    private final InputStream in;
+    private final boolean msgpack;
+    private final Map<String, ReadHandler<?,?>> handlers;
+    private final DefaultReadHandler<?> defaultHandler;
+    private final ForkJoinPool pool;
+    private final boolean ordered;
+    private final int maxInFlight;
+
+    private final MsgpackArraySplitter splitter;
+
+    private byte[] buf = new byte[MAX_BATCH_BYTES * 2];
+    private int pos;
+    private int limit;
+    private boolean eof;
+
+    public ParallelReaderImpl(InputStream in, boolean msgpack,
+                              Map<String, ReadHandler<?,?>> handlers,
+                              DefaultReadHandler<?> defaultHandler,
+                              ForkJoinPool pool, boolean ordered) {
+        this.in = in;
+        this.msgpack = msgpack;
+        this.handlers = handlers;
+        this.defaultHandler = defaultHandler;
+        this.pool = pool;
+        this.ordered = ordered;
+        this.maxInFlight = pool.getParallelism() * 2;
+        this.splitter = msgpack ? new MsgpackArraySplitter(handlers, defaultHandler, pool) : null;
+    }
+
+    private AbstractParser parser(byte[] b, int off, int len) {
+        return msgpack ?
+                new DirectMsgpackParser(new MsgpackDecoder(b, off, len), handlers, defaultHandler,
+                        new MapBuilderImpl(), new ListBuilderImpl()) :
+                new DirectJsonParser(b, off, len, handlers, defaultHandler,
+                        new MapBuilderImpl(), new ListBuilderImpl());
+    }
+
+    private class Batch implements Callable<List<Object>> {
+
+        private final byte[] bytes;
+        private final int count;
+
+        Batch(byte[] bytes, int count) {
+            this.bytes = bytes;
+            this.count = count;
+        }
+
+        @Override
+        public List<Object> call() throws IOException {
+            AbstractParser p = parser(bytes, 0, bytes.length);
+            ReadCache cache = new ReadCache();
+            List<Object> values = new ArrayList<Object>(count);
+            for (int i = 0; i < count; i++)
+                values.add(p.parse(cache.init()));
+            return values;
+        }
+    }
+
+    /**
+     * Reads more input, keeping the bytes from start on
+     * @return the number of bytes start moved down by
+     */
+    private int fill(int start) throws IOException {
+        int remaining = limit - start;
+        if (remaining > buf.length / 2) {
+            byte[] b = new byte[buf.length * 2];
+            System.arraycopy(buf, start, b, 0, remaining);
+            buf = b;
+        } else {
+            System.arraycopy(buf, start, buf, 0, remaining);
+        }
+        limit = remaining;
+        pos -= start;
+        int r = in.read(buf, limit, buf.length - limit);
+        if (r < 0)
+            eof = true;
+        else
+            limit += r;
+        return start;
+    }
+
+    /**
+     * @return the next batch of values, or null at the end of the input
+     */
+    private Batch nextBatch() throws IOException {
+        int start = pos;
+        int count = 0;
+        while (count < MAX_BATCH_VALUES && pos - start < MAX_BATCH_BYTES) {
+            int from = msgpack ? pos : RecordScanner.skipWhitespace(buf, pos, limit);
+            int end;
+            if (from == limit) {
+                end = -1;
+            } else {
+                end = msgpack ? RecordScanner.msgpackValueEnd(buf, from, limit) :
+                        RecordScanner.jsonValueEnd(buf, from, limit, eof);
+            }
+            if (end < 0) {
+                if (eof) {
+                    if (from < limit)
+                        throw new IOException("Incomplete value at end of input");
+                    pos = limit;
+                    break;
+                }
+                start -= fill(start);
+                continue;
+            }
+            pos = end;
+            count++;
+        }
+        if (count == 0)
+            return null;
+        return new Batch(Arrays.copyOfRange(buf, start, pos), count);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T read() {
+        try {
+            int end;
+            while (true) {
+                if (!msgpack)
+                    pos = RecordScanner.skipWhitespace(buf, pos, limit);
+                end = pos == limit ? -1 : msgpack ? RecordScanner.msgpackValueEnd(buf, pos, limit) :
+                        RecordScanner.jsonValueEnd(buf, pos, limit, eof);
+                if (end >= 0)
+                    break;
+                if (eof) {
+                    if (pos < limit)
+                        throw new IOException("Incomplete value at end of input");
+                    throw new EOFException();
+                }
+                fill(pos);
+            }
+            int start = pos;
+            pos = end;
+            if (msgpack)
+                return (T) splitter.read(buf, start, end);
+            return (T) parser(buf, start, end - start).parse(new ReadCache());
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> void forEach(Consumer<T> action) {
+        try {
+            if (ordered)
+                forEachOrdered((Consumer<Object>) action);
+            else
+                forEachUnordered((Consumer<Object>) action);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private void forEachOrdered(Consumer<Object> action) throws Exception {
+        ArrayDeque<Future<List<Object>>> inFlight = new ArrayDeque<Future<List<Object>>>();
+        try {
+            while (true) {
+                Batch b;
+                while (inFlight.size() < maxInFlight && (b = nextBatch()) != null)
+                    inFlight.add(pool.submit(b));
+                if (inFlight.isEmpty())
+                    return;
+                for (Object o : inFlight.peek().get())
+                    action.accept(o);
+                inFlight.poll();
+            }
+        } finally {
+            for (Future<List<Object>> f : inFlight)
+                f.cancel(false);
+        }
+    }
+
+    private void forEachUnordered(Consumer<Object> action) throws Exception {
+        CompletionService<List<Object>> completed = new ExecutorCompletionService<List<Object>>(pool);
+        Set<Future<List<Object>>> inFlight = new HashSet<Future<List<Object>>>();
+        try {
+            while (true) {
+                Batch b;
+                while (inFlight.size() < maxInFlight && (b = nextBatch()) != null)
+                    inFlight.add(completed.submit(b));
+                if (inFlight.isEmpty())
+                    return;
+                Future<List<Object>> done = completed.take();
+                inFlight.remove(done);
+                for (Object o : done.get())
+                    action.accept(o);
+            }
+        } finally {
+            for (Future<List<Object>> f : inFlight)
+                f.cancel(false);
+        }
+    }
+
+    @Override
+    public <T> List<T> readAll() {
+        final List<T> values = new ArrayList<T>();
+        forEach(new Consumer<T>() {
+            @Override
+            public void accept(T o) {
+                values.add(o);
+            }
+        });
+        return values;
+    }
+}
@@ -13,6 +13,15 @@ public class ReadCache {
         index = 0;
     }
 
+    /**
+     * Creates a cache holding entries, as if they had been read, with
+     * the next entry read going to index
+     */
+    public ReadCache(Object[] entries, int index) {
+        cache = entries;
+        this.index = index;
+    }
+
     private boolean cacheCode(String s) {
 
         if((s.charAt(0) == Constants.SUB) && (!s.equals(Constants.MAP_AS_ARRAY)))
@@ -48,6 +57,24 @@ public class ReadCache {
         return p != null ? p.parseString(s) : s;
     }
 
+    /**
+     * Returns the value cached under a cache code's index
+     */
+    public Object get(int codeIndex) {
+        return cache[codeIndex];
+    }
+
+    /**
+     * Caches a value parsed from a cacheable string, for parsers that
+     * classify strings themselves
+     */
+    public Object put(Object o) {
+        if(index == WriteCache.MAX_CACHE_ENTRIES) {
+            init();
+        }
+        return cache[index++] = o;
+    }
+
 	public ReadCache init(){
 		//need not clear array
 		index = 0;
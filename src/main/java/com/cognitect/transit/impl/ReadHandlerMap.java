@@ -21,6 +21,7 @@ import java.util.*;
 public class ReadHandlerMap implements Map<String, ReadHandler<?, ?>> {
 
     private final Map<String, ReadHandler<?, ?>> handlers;
+    private final ReadHandler<?, ?>[] charHandlers;
 
     public ReadHandlerMap(Map<String, ReadHandler<?, ?>> customHandlers) {
         this.handlers = ReaderFactory.defaultHandlers();
@@ -28,6 +29,25 @@ public class ReadHandlerMap implements Map<String, ReadHandler<?, ?>> {
             disallowOverridingGroundTypes(customHandlers);
             handlers.putAll(customHandlers);
         }
+        this.charHandlers = charHandlers(handlers);
+    }
+
+    /**
+     * Builds an array of the handlers for single char tags, indexed by the
+     * tag char, for tags below 128
+     */
+    static ReadHandler<?, ?>[] charHandlers(Map<String, ReadHandler<?, ?>> handlers) {
+        ReadHandler<?, ?>[] a = new ReadHandler<?, ?>[128];
+        for (Map.Entry<String, ReadHandler<?, ?>> e : handlers.entrySet()) {
+            String tag = e.getKey();
+            if (tag.length() == 1 && tag.charAt(0) < 128)
+                a[tag.charAt(0)] = e.getValue();
+        }
+        return a;
+    }
+
+    ReadHandler<?, ?>[] charHandlers() {
+        return charHandlers;
     }
 
     private static void disallowOverridingGroundTypes(Map<String, ReadHandler<?,?>> handlers) {
@@ -28,21 +28,31 @@ public class ReadHandlers {
         }
     }
 
-    public static class BooleanReadHandler implements ReadHandler<Object, String> {
+    public static class BooleanReadHandler implements ReadHandler<Object, String>, CharSequenceReadHandler<Object> {
 
         @Override
         public Object fromRep(String rep) {
             return rep.equals("t");
         }
+
+        @Override
+        public Object fromChars(CharSequence rep) {
+            return rep.length() == 1 && rep.charAt(0) == 't';
+        }
     }
 
-    public static class CharacterReadHandler implements ReadHandler<Object, String> {
+    public static class CharacterReadHandler implements ReadHandler<Object, String>, CharSequenceReadHandler<Object> {
 
         @Override
         public Object fromRep(String rep) {
 
             return rep.charAt(0);
         }
+
+        @Override
+        public Object fromChars(CharSequence rep) {
+            return rep.charAt(0);
+        }
     }
 
     public static class CmapReadHandler implements ArrayReadHandler<Object, Map<Object, Object>, Object, Object> {
@@ -121,7 +131,7 @@ public class ReadHandlers {
         }
     }
 
-    public static class IntegerReadHandler implements ReadHandler<Object, String> {
+    public static class IntegerReadHandler implements ReadHandler<Object, String>, CharSequenceReadHandler<Object> {
 
         @Override
         public Object fromRep(String rep) {
@@ -131,6 +141,15 @@ public class ReadHandlers {
                 throw new RuntimeException(e);
             }
         }
+
+        @Override
+        public Object fromChars(CharSequence rep) {
+            try {
+                return parseLong(rep);
+            } catch (NumberFormatException e) {
+                return fromRep(rep.toString());
+            }
+        }
     }
 
     public static class BigIntegerReadHandler implements ReadHandler<Object, String> {
@@ -141,12 +160,18 @@ public class ReadHandlers {
         }
     }
 
-    public static class KeywordReadHandler implements ReadHandler<Object, String> {
+    public static class KeywordReadHandler implements ReadHandler<Object, String>, CharSequenceReadHandler<Object>, PureReadHandler {
 
         @Override
         public Object fromRep(String rep) {
             return TransitFactory.keyword(rep);
         }
+
+        @Override
+        public Object fromChars(CharSequence rep) {
+            int start = (rep.charAt(0) == ':') ? 1 : 0;
+            return KeywordImpl.canonical(rep, start, rep.length());
+        }
     }
 
     public static class ListReadHandler implements ArrayReadHandler<List<Object>,List<Object>, Object, Object> {
@@ -233,12 +258,18 @@ public class ReadHandlers {
         }
     }
 
-    public static class SymbolReadHandler implements ReadHandler<Object, String> {
+    public static class SymbolReadHandler implements ReadHandler<Object, String>, CharSequenceReadHandler<Object>, PureReadHandler {
 
         @Override
         public Object fromRep(String rep) {
             return TransitFactory.symbol(rep);
         }
+
+        @Override
+        public Object fromChars(CharSequence rep) {
+            int start = (rep.charAt(0) == ':') ? 1 : 0;
+            return SymbolImpl.canonical(rep, start, rep.length());
+        }
     }
 
     public static class VerboseTimeReadHandler implements ReadHandler<Object, String> {
@@ -251,7 +282,7 @@ public class ReadHandlers {
         }
     }
 
-    public static class TimeReadHandler implements ReadHandler<Object, Object> {
+    public static class TimeReadHandler implements ReadHandler<Object, Object>, CharSequenceReadHandler<Object> {
 
         @Override
         public Object fromRep(Object rep) {
@@ -265,16 +296,25 @@ public class ReadHandlers {
             cal.setTimeInMillis(n);
             return cal.getTime();
         }
+
+        @Override
+        public Object fromChars(CharSequence rep) {
+            try {
+                return new Date(parseLong(rep));
+            } catch (NumberFormatException e) {
+                return fromRep(rep.toString());
+            }
+        }
     }
 
 
-    public static class URIReadHandler implements ReadHandler<Object, String> {
+    public static class URIReadHandler implements ReadHandler<Object, String>, PureReadHandler {
 
         @Override
         public Object fromRep(String rep) { return new URIImpl(rep); }
     }
 
-    public static class UUIDReadHandler implements ReadHandler<Object, Object> {
+    public static class UUIDReadHandler implements ReadHandler<Object, Object>, CharSequenceReadHandler<Object>, PureReadHandler {
 
         @Override
         @SuppressWarnings("unchecked")
@@ -288,6 +328,22 @@ public class ReadHandlers {
                 return new UUID(l.get(0), l.get(1));
             }
         }
+
+        @Override
+        public Object fromChars(CharSequence rep) {
+            // the canonical form; anything else is left to UUID.fromString
+            if (rep.length() == 36 && rep.charAt(8) == '-' && rep.charAt(13) == '-' &&
+                    rep.charAt(18) == '-' && rep.charAt(23) == '-') {
+                long a = hex(rep, 0, 8);
+                long b = hex(rep, 9, 13);
+                long c = hex(rep, 14, 18);
+                long d = hex(rep, 19, 23);
+                long e = hex(rep, 24, 36);
+                if ((a | b | c | d | e) >= 0)
+                    return new UUID((a << 32) | (b << 16) | c, (d << 48) | e);
+            }
+            return UUID.fromString(rep.toString());
+        }
     }
 
     public static class LinkReadHandler implements ReadHandler<Object, Map<String, String>> {
@@ -296,4 +352,37 @@ public class ReadHandlers {
             return new LinkImpl(rep);
         }
     }
+
+    /**
+     * Parses a decimal long from plain digits with an optional minus sign
+     * @throws NumberFormatException for anything else, including overflow
+     */
+    static long parseLong(CharSequence cs) {
+        int len = cs.length();
+        boolean negative = len > 0 && cs.charAt(0) == '-';
+        int start = negative ? 1 : 0;
+        // 18 digits always fit in a long
+        if (len == start || len - start > 18)
+            throw new NumberFormatException();
+        long v = 0;
+        for (int i = start; i < len; i++) {
+            int d = cs.charAt(i) - '0';
+            if (d < 0 || d > 9)
+                throw new NumberFormatException();
+            v = v * 10 + d;
+        }
+        return negative ? -v : v;
+    }
+
+    // parses hex digits from start to end, or returns -1
+    private static long hex(CharSequence cs, int start, int end) {
+        long v = 0;
+        for (int i = start; i < end; i++) {
+            int d = Character.digit(cs.charAt(i), 16);
+            if (d < 0)
+                return -1;
+            v = (v << 4) | d;
+        }
+        return v;
+    }
 }
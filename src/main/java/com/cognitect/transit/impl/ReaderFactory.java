@@ -9,12 +9,28 @@ import com.fasterxml.jackson.core.JsonFactory;
 import org.msgpack.MessagePack;
 
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ReaderFactory {
 
+    private static final int DEFAULT_BATCH_SIZE = 1024;
+
+    // shared, so parsers reuse its symbol tables and buffers
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final ReadHandlerMap DEFAULT_HANDLERS = new ReadHandlerMap(null);
+
     private static Map<Map<String, ReadHandler<?,?>>, ReadHandlerMap> handlerCache = new Cache<Map<String, ReadHandler<?,?>>, ReadHandlerMap>();
 
     public static Map<String, ReadHandler<?,?>> defaultHandlers() {
@@ -54,10 +70,15 @@ public class ReaderFactory {
         };
     }
 
-    private static Map<String, ReadHandler<?,?>> handlerMap(Map<String, ReadHandler<?, ?>> customHandlers) {
+    // compiled maps are used as they are; others are compiled once and
+    // cached, keyed by their contents
+    static Map<String, ReadHandler<?,?>> handlerMap(Map<String, ReadHandler<?, ?>> customHandlers) {
         if (customHandlers instanceof ReadHandlerMap) {
             return customHandlers;
         }
+        if (customHandlers == null) {
+            return DEFAULT_HANDLERS;
+        }
 
         synchronized (ReaderFactory.class) {
             ReadHandlerMap readHandlerMap = handlerCache.get(customHandlers);
@@ -69,25 +90,113 @@ public class ReaderFactory {
         }
     }
 
-    private static DefaultReadHandler defaultHandler(DefaultReadHandler customDefaultHandler) {
+    static DefaultReadHandler defaultHandler(DefaultReadHandler customDefaultHandler) {
         return customDefaultHandler != null ? customDefaultHandler : defaultDefaultHandler();
     }
 
-    public static Reader getJsonInstance(InputStream in,
+    public static StreamingReader getJsonInstance(InputStream in,
                                          Map<String, ReadHandler<?,?>> handlers,
                                          DefaultReadHandler<?> customDefaultHandler) {
-        return new JsonReaderImpl(in, handlerMap(handlers), defaultHandler(customDefaultHandler));
+        return getJsonInstance(in, handlers, customDefaultHandler, 0);
+    }
+
+    public static StreamingReader getJsonInstance(InputStream in,
+                                         Map<String, ReadHandler<?,?>> handlers,
+                                         DefaultReadHandler<?> customDefaultHandler,
+                                         int decodeMemoSize) {
+        return getJsonInstance(JSON_FACTORY, in, handlers, customDefaultHandler, decodeMemoSize);
+    }
+
+    public static StreamingReader getJsonInstance(JsonFactory jf, InputStream in,
+                                         Map<String, ReadHandler<?,?>> handlers,
+                                         DefaultReadHandler<?> customDefaultHandler,
+                                         int decodeMemoSize) {
+        return new JsonReaderImpl(jf, in, handlerMap(handlers), defaultHandler(customDefaultHandler), decodeMemoSize);
     }
 
-    public static Reader getMsgpackInstance(InputStream in,
+    public static StreamingReader getMsgpackInstance(InputStream in,
                                             Map<String, ReadHandler<?,?>> handlers,
                                             DefaultReadHandler<?> customDefaultHandler) {
-        return new MsgPackReaderImpl(in, handlerMap(handlers), defaultHandler(customDefaultHandler));
+        return getMsgpackInstance(in, handlers, customDefaultHandler, 0);
+    }
+
+    public static StreamingReader getMsgpackInstance(InputStream in,
+                                            Map<String, ReadHandler<?,?>> handlers,
+                                            DefaultReadHandler<?> customDefaultHandler,
+                                            int decodeMemoSize) {
+        return new MsgPackReaderImpl(in, handlerMap(handlers), defaultHandler(customDefaultHandler), decodeMemoSize);
+    }
+
+    public static StreamingReader getDirectJsonInstance(InputStream in,
+                                               Map<String, ReadHandler<?,?>> handlers,
+                                               DefaultReadHandler<?> customDefaultHandler) {
+        return getDirectJsonInstance(in, handlers, customDefaultHandler, 0);
+    }
+
+    public static StreamingReader getDirectJsonInstance(InputStream in,
+                                               Map<String, ReadHandler<?,?>> handlers,
+                                               DefaultReadHandler<?> customDefaultHandler,
+                                               int decodeMemoSize) {
+        return new DirectJsonReaderImpl(in, handlerMap(handlers), defaultHandler(customDefaultHandler), decodeMemoSize);
+    }
+
+    public static StreamingReader getDirectMsgpackInstance(InputStream in,
+                                                  Map<String, ReadHandler<?,?>> handlers,
+                                                  DefaultReadHandler<?> customDefaultHandler) {
+        return getDirectMsgpackInstance(in, handlers, customDefaultHandler, 0);
+    }
+
+    public static StreamingReader getDirectMsgpackInstance(InputStream in,
+                                                  Map<String, ReadHandler<?,?>> handlers,
+                                                  DefaultReadHandler<?> customDefaultHandler,
+                                                  int decodeMemoSize) {
+        return new DirectMsgPackReaderImpl(in, handlerMap(handlers), defaultHandler(customDefaultHandler), decodeMemoSize);
+    }
+
+    /**
+     * Creates a reader of the JSON between the positions and limits of
+     * buffers, leaving the buffers untouched. A single heap buffer is
+     * parsed in place; other buffers, such as mapped ones, are read with
+     * bulk gets.
+     */
+    public static StreamingReader getDirectJsonInstance(Map<String, ReadHandler<?,?>> handlers,
+                                               DefaultReadHandler<?> customDefaultHandler,
+                                               int decodeMemoSize,
+                                               ByteBuffer... buffers) {
+        ByteBuffer heap = heapBuffer(buffers);
+        return new DirectJsonReaderImpl(heap == null ? new ByteBufferInputStream(buffers) : null, heap,
+                handlerMap(handlers), defaultHandler(customDefaultHandler), decodeMemoSize);
+    }
+
+    /**
+     * Creates a reader of the msgpack in buffers, as getDirectJsonInstance
+     * does for JSON
+     */
+    public static StreamingReader getDirectMsgpackInstance(Map<String, ReadHandler<?,?>> handlers,
+                                                  DefaultReadHandler<?> customDefaultHandler,
+                                                  int decodeMemoSize,
+                                                  ByteBuffer... buffers) {
+        ByteBuffer heap = heapBuffer(buffers);
+        return new DirectMsgPackReaderImpl(heap == null ? new ByteBufferInputStream(buffers) : null, heap,
+                handlerMap(handlers), defaultHandler(customDefaultHandler), decodeMemoSize);
+    }
+
+    // the only buffer, if it is backed by an array the parsers can use
+    private static ByteBuffer heapBuffer(ByteBuffer[] buffers) {
+        return buffers.length == 1 && buffers[0].hasArray() ? buffers[0].duplicate() : null;
     }
 
-    private abstract static class ReaderImpl implements Reader, ReaderSPI {
+    public static ParallelReader getParallelInstance(InputStream in, boolean msgpack,
+                                                     Map<String, ReadHandler<?,?>> handlers,
+                                                     DefaultReadHandler<?> customDefaultHandler,
+                                                     ForkJoinPool pool, boolean ordered) {
+        return new ParallelReaderImpl(in, msgpack, handlerMap(handlers), defaultHandler(customDefaultHandler), pool, ordered);
+    }
+
+    private abstract static class ReaderImpl implements StreamingReader, ResettableReader, ReaderSPI {
 
         InputStream in;
+        int decodeMemoSize;
         Map<String, ReadHandler<?,?>> handlers;
         DefaultReadHandler defaultHandler;
         MapReader<?, Map<Object, Object>, Object, Object> mapBuilder;
@@ -96,9 +205,10 @@ public class ReaderFactory {
         AbstractParser p;
         boolean initialized;
 
-        public ReaderImpl(InputStream in, Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler) {
+        public ReaderImpl(InputStream in, Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler, int decodeMemoSize) {
             this.initialized = false;
             this.in = in;
+            this.decodeMemoSize = decodeMemoSize;
             this.handlers = handlers;
             this.defaultHandler = defaultHandler;
             this.cache = new ReadCache();
@@ -115,6 +225,72 @@ public class ReaderFactory {
             }
         }
 
+        @Override
+        public void read(TransitEventHandler handler) {
+            if (!initialized) initialize();
+            try {
+                p.cursor().init(cache.init()).read(handler);
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public <T> Iterator<T> iterate() {
+            if (!initialized) initialize();
+            try {
+                p.beginArray();
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+            return new ElementIterator<T>(p, cache.init());
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!initialized) initialize();
+            try {
+                return !p.atEnd();
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public <T> void forEach(Consumer<T> action) {
+            while (hasNext())
+                action.accept(this.<T>read());
+        }
+
+        @Override
+        public <T> Spliterator<T> spliterator(int batchSize) {
+            if (batchSize < 1)
+                throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+            return new ValueSpliterator<T>(this, batchSize);
+        }
+
+        @Override
+        public <T> Stream<T> stream() {
+            return StreamSupport.stream(this.<T>spliterator(DEFAULT_BATCH_SIZE), false);
+        }
+
+        @Override
+        public TransitTokenReader tokenReader() {
+            return new TokenReaderImpl(this);
+        }
+
+        @Override
+        public void reset(InputStream in) {
+            this.in = in;
+            if (initialized && !p.reset(in))
+                initialized = false;
+        }
+
+        TransitCursor cursor() {
+            if (!initialized) initialize();
+            return p.cursor();
+        }
+
         @Override
         public Reader setBuilders(MapReader<?, Map<Object, Object>, Object, Object> mapBuilder,
                                   ArrayReader<?, List<Object>, Object> listBuilder) {
@@ -132,22 +308,221 @@ public class ReaderFactory {
         protected void initialize() {
             ensureBuilders();
             p = createParser();
+            if (decodeMemoSize > 0)
+                p.setDecodeMemo(new DecodeMemo(decodeMemoSize));
             initialized = true;
         }
 
         protected abstract AbstractParser createParser();
     }
 
+    private static class ValueSpliterator<T> implements Spliterator<T> {
+
+        private final StreamingReader reader;
+        private final int batchSize;
+
+        public ValueSpliterator(StreamingReader reader, int batchSize) {
+            this.reader = reader;
+            this.batchSize = batchSize;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (!reader.hasNext())
+                return false;
+            action.accept(reader.<T>read());
+            return true;
+        }
+
+        // reading stays sequential, only the values of a batch are handed
+        // off to be processed elsewhere
+        @Override
+        public Spliterator<T> trySplit() {
+            if (!reader.hasNext())
+                return null;
+            Object[] batch = new Object[batchSize];
+            int n = 0;
+            do {
+                batch[n++] = reader.read();
+            } while (n < batchSize && reader.hasNext());
+            return Spliterators.spliterator(batch, 0, n, Spliterator.ORDERED);
+        }
+
+        @Override
+        public long estimateSize() {
+            return Long.MAX_VALUE;
+        }
+
+        @Override
+        public int characteristics() {
+            return Spliterator.ORDERED;
+        }
+    }
+
+    private static class ElementIterator<T> implements Iterator<T> {
+
+        private final AbstractParser p;
+        private final ReadCache cache;
+        private Boolean hasNext;
+        private boolean first = true;
+
+        public ElementIterator(AbstractParser p, ReadCache cache) {
+            this.p = p;
+            this.cache = cache;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                try {
+                    hasNext = p.hasNextElement();
+                } catch (Throwable e) {
+                    throw new RuntimeException(e);
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T next() {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            hasNext = null;
+            Object o;
+            try {
+                o = p.parseVal(false, cache);
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+            if (first) {
+                first = false;
+                // a map or tagged value written as an array
+                if (o == Constants.MAP_AS_ARRAY || o instanceof Tag)
+                    throw new IllegalStateException("Top-level value is not an array");
+            }
+            return (T) o;
+        }
+    }
+
+    private static class TokenReaderImpl implements TransitTokenReader {
+
+        private final ReaderImpl reader;
+
+        public TokenReaderImpl(ReaderImpl reader) {
+            this.reader = reader;
+        }
+
+        @Override
+        public Token nextToken() {
+            TransitCursor c = reader.cursor();
+            try {
+                // a new top-level value starts with a fresh cache
+                if (c.depth() == 0)
+                    c.init(reader.cache.init());
+                return c.next();
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public Token currentToken() {
+            return reader.cursor().token();
+        }
+
+        private TransitCursor at(Token t) {
+            TransitCursor c = reader.cursor();
+            if (c.token() != t)
+                throw new IllegalStateException("Current token is " + c.token() + ", not " + t);
+            return c;
+        }
+
+        @Override
+        public int getSize() {
+            TransitCursor c = reader.cursor();
+            if (c.token() != Token.MAP_START && c.token() != Token.ARRAY_START)
+                throw new IllegalStateException("Current token is " + c.token() + ", not the start of a map or array");
+            return c.size();
+        }
+
+        @Override
+        public boolean getBoolean() {
+            return at(Token.BOOLEAN).booleanValue();
+        }
+
+        @Override
+        public long getLong() {
+            return at(Token.LONG).longValue();
+        }
+
+        @Override
+        public double getDouble() {
+            return at(Token.DOUBLE).doubleValue();
+        }
+
+        @Override
+        public String getString() {
+            return (String) at(Token.STRING).value();
+        }
+
+        @Override
+        public Keyword getKeyword() {
+            return (Keyword) at(Token.KEYWORD).value();
+        }
+
+        @Override
+        public Symbol getSymbol() {
+            return (Symbol) at(Token.SYMBOL).value();
+        }
+
+        @Override
+        public Object getValue() {
+            TransitCursor c = reader.cursor();
+            if (c.token() == null)
+                throw new IllegalStateException("No current token");
+            switch (c.token()) {
+                case BOOLEAN: return c.booleanValue();
+                case LONG: return c.longValue();
+                case DOUBLE: return c.doubleValue();
+                case NULL:
+                case STRING:
+                case KEYWORD:
+                case SYMBOL:
+                case VALUE:
+                    return c.value();
+                default:
+                    throw new IllegalStateException("Current token is " + c.token() + ", not a scalar");
+            }
+        }
+
+        @Override
+        public String currentTag() {
+            return reader.cursor().currentTag();
+        }
+
+        @Override
+        public void skipValue() {
+            try {
+                reader.cursor().skip();
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
     private static class JsonReaderImpl extends ReaderImpl {
 
-        public JsonReaderImpl(InputStream in, Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler) {
-            super(in, handlers, defaultHandler);
+        private final JsonFactory jf;
+
+        public JsonReaderImpl(JsonFactory jf, InputStream in, Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler, int decodeMemoSize) {
+            super(in, handlers, defaultHandler, decodeMemoSize);
+            this.jf = jf;
         }
 
         @Override
         protected AbstractParser createParser() {
             try {
-                JsonFactory jf = new JsonFactory();
                 return new JsonParser(jf.createParser(in), handlers, defaultHandler,
                         mapBuilder, listBuilder);
             } catch (Throwable e) {
@@ -158,8 +533,8 @@ public class ReaderFactory {
 
     private static class MsgPackReaderImpl extends ReaderImpl {
 
-        public MsgPackReaderImpl(InputStream in, Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler) {
-            super(in, handlers, defaultHandler);
+        public MsgPackReaderImpl(InputStream in, Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler, int decodeMemoSize) {
+            super(in, handlers, defaultHandler, decodeMemoSize);
         }
 
         @Override
@@ -169,4 +544,64 @@ public class ReaderFactory {
                     mapBuilder, listBuilder);
         }
     }
-}
\ No newline at end of file
+
+    private static class DirectJsonReaderImpl extends ReaderImpl {
+
+        // a heap buffer to parse in place, or null to read from in
+        private ByteBuffer bytes;
+
+        public DirectJsonReaderImpl(InputStream in, Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler, int decodeMemoSize) {
+            this(in, null, handlers, defaultHandler, decodeMemoSize);
+        }
+
+        DirectJsonReaderImpl(InputStream in, ByteBuffer bytes, Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler, int decodeMemoSize) {
+            super(in, handlers, defaultHandler, decodeMemoSize);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void reset(InputStream in) {
+            bytes = null;
+            super.reset(in);
+        }
+
+        @Override
+        protected AbstractParser createParser() {
+            if (bytes != null)
+                return new DirectJsonParser(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining(),
+                        handlers, defaultHandler, mapBuilder, listBuilder);
+            return new DirectJsonParser(in, handlers, defaultHandler,
+                    mapBuilder, listBuilder);
+        }
+    }
+
+    private static class DirectMsgPackReaderImpl extends ReaderImpl {
+
+        // a heap buffer to parse in place, or null to read from in
+        private ByteBuffer bytes;
+
+        public DirectMsgPackReaderImpl(InputStream in, Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler, int decodeMemoSize) {
+            this(in, null, handlers, defaultHandler, decodeMemoSize);
+        }
+
+        DirectMsgPackReaderImpl(InputStream in, ByteBuffer bytes, Map<String, ReadHandler<?,?>> handlers, DefaultReadHandler<?> defaultHandler, int decodeMemoSize) {
+            super(in, handlers, defaultHandler, decodeMemoSize);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void reset(InputStream in) {
+            bytes = null;
+            super.reset(in);
+        }
+
+        @Override
+        protected AbstractParser createParser() {
+            MsgpackDecoder decoder = bytes != null ?
+                    new MsgpackDecoder(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining()) :
+                    new MsgpackDecoder(in);
+            return new DirectMsgpackParser(decoder, handlers, defaultHandler,
+                    mapBuilder, listBuilder);
+        }
+    }
+}
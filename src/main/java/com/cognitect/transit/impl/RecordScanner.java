@@ -0,0 +1,178 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import java.io.IOException;
+
+/**
+ * Finds where top-level values end in JSON or msgpack input, without
+ * decoding them.
+ */
+public class RecordScanner {
+
+    private RecordScanner() {}
+
+    /**
+     * @return the offset of the first non-whitespace byte from off, or
+     * limit
+     */
+    public static int skipWhitespace(byte[] b, int off, int limit) {
+        while (off < limit && (b[off] == ' ' || b[off] == '\n' || b[off] == '\r' || b[off] == '\t'))
+            off++;
+        return off;
+    }
+
+    /**
+     * Finds the end of the JSON value starting at off, tracking nesting
+     * and skipping over strings
+     * @param eof true if no input follows limit, so a number or literal
+     *            running up to limit is complete
+     * @return the offset just past the value, or -1 if it is incomplete
+     */
+    public static int jsonValueEnd(byte[] b, int off, int limit, boolean eof) {
+        int i = off;
+        if (i >= limit)
+            return -1;
+        int c = b[i];
+        if (c == '"')
+            return stringEnd(b, i + 1, limit);
+        if (c != '{' && c != '[') {
+            while (i < limit) {
+                c = b[i];
+                if (c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '[' || c == '{' || c == '"')
+                    return i;
+                i++;
+            }
+            return eof ? limit : -1;
+        }
+        int depth = 0;
+        while (i < limit) {
+            c = b[i++];
+            switch (c) {
+                case '"':
+                    i = stringEnd(b, i, limit);
+                    if (i < 0)
+                        return -1;
+                    break;
+                case '{':
+                case '[':
+                    depth++;
+                    break;
+                case '}':
+                case ']':
+                    if (--depth == 0)
+                        return i;
+            }
+        }
+        return -1;
+    }
+
+    // off is just past the opening quote
+    private static int stringEnd(byte[] b, int off, int limit) {
+        int i = off;
+        while (i < limit) {
+            int c = b[i];
+            if (c == '"')
+                return i + 1;
+            i += (c == '\\') ? 2 : 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the end of the msgpack value starting at off from the headers
+     * of the value and the values it contains
+     * @return the offset just past the value, or -1 if it is incomplete
+     */
+    public static int msgpackValueEnd(byte[] b, int off, int limit) throws IOException {
+        long remaining = 1;
+        long i = off;
+        while (remaining > 0) {
+            if (i >= limit)
+                return -1;
+            int h = b[(int) i++] & 0xff;
+            remaining--;
+            if (h <= 0x7f || h >= 0xe0)
+                continue;
+            if (h <= 0x8f) {
+                remaining += 2 * (h & 0x0f);
+                continue;
+            }
+            if (h <= 0x9f) {
+                remaining += h & 0x0f;
+                continue;
+            }
+            if (h <= 0xbf) {
+                i += h & 0x1f;
+                continue;
+            }
+            switch (h) {
+                case 0xc0: case 0xc2: case 0xc3: break;
+                case 0xcc: case 0xd0: i += 1; break;
+                case 0xcd: case 0xd1: i += 2; break;
+                case 0xca: case 0xce: case 0xd2: i += 4; break;
+                case 0xcb: case 0xcf: case 0xd3: i += 8; break;
+                case 0xd4: i += 2; break;
+                case 0xd5: i += 3; break;
+                case 0xd6: i += 5; break;
+                case 0xd7: i += 9; break;
+                case 0xd8: i += 17; break;
+                case 0xc4: case 0xd9:
+                    if (i + 1 > limit) return -1;
+                    i += 1 + length(b, (int) i, 1);
+                    break;
+                case 0xc5: case 0xda:
+                    if (i + 2 > limit) return -1;
+                    i += 2 + length(b, (int) i, 2);
+                    break;
+                case 0xc6: case 0xdb:
+                    if (i + 4 > limit) return -1;
+                    i += 4 + length(b, (int) i, 4);
+                    break;
+                case 0xc7:
+                    if (i + 1 > limit) return -1;
+                    i += 2 + length(b, (int) i, 1);
+                    break;
+                case 0xc8:
+                    if (i + 2 > limit) return -1;
+                    i += 3 + length(b, (int) i, 2);
+                    break;
+                case 0xc9:
+                    if (i + 4 > limit) return -1;
+                    i += 5 + length(b, (int) i, 4);
+                    break;
+                case 0xdc:
+                    if (i + 2 > limit) return -1;
+                    remaining += length(b, (int) i, 2);
+                    i += 2;
+                    break;
+                case 0xdd:
+                    if (i + 4 > limit) return -1;
+                    remaining += length(b, (int) i, 4);
+                    i += 4;
+                    break;
+                case 0xde:
+                    if (i + 2 > limit) return -1;
+                    remaining += 2 * length(b, (int) i, 2);
+                    i += 2;
+                    break;
+                case 0xdf:
+                    if (i + 4 > limit) return -1;
+                    remaining += 2 * length(b, (int) i, 4);
+                    i += 4;
+                    break;
+                default:
+                    throw new IOException("Invalid msgpack type 0x" + Integer.toHexString(h));
+            }
+        }
+        return i <= limit ? (int) i : -1;
+    }
+
+    private static long length(byte[] b, int off, int n) {
+        long v = 0;
+        for (int j = 0; j < n; j++)
+            v = (v << 8) | (b[off + j] & 0xff);
+        return v;
+    }
+}
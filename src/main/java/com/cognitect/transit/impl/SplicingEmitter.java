@@ -0,0 +1,35 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+/**
+ * An emitter that ArraySplitter can write parts of large arrays with, and
+ * splice the parts into the output of
+ */
+public interface SplicingEmitter extends Emitter {
+
+    /**
+     * Starts a part of an array, writing partFraming bytes, which
+     * splicing drops along with those written by endPart
+     */
+    void startPart() throws Exception;
+
+    void endPart() throws Exception;
+
+    int partFraming();
+
+    /**
+     * @return the byte written between array elements, or -1 for none
+     */
+    int partSeparator();
+
+    int emptyStringLength();
+
+    void spliceBytes(byte[] b, int off, int len) throws Exception;
+
+    /**
+     * Writes s as an array element, after the bytes spliced so far
+     */
+    void spliceString(String s) throws Exception;
+}
@@ -5,12 +5,15 @@ package com.cognitect.transit.impl;
 
 import com.cognitect.transit.Named;
 import com.cognitect.transit.Symbol;
+import com.fasterxml.jackson.core.io.SerializedString;
 
 public class SymbolImpl implements Symbol, Comparable<Symbol>, Named {
 
     final String ns;
     final String name;
     String _str;
+    transient int _hash;
+    transient SerializedString _encoded;
 
     public SymbolImpl(String nsname) {
         int i = nsname.indexOf('/');
@@ -21,6 +24,27 @@ public class SymbolImpl implements Symbol, Comparable<Symbol>, Named {
             ns = nsname.substring(0, i);
             name = nsname.substring(i + 1);
         }
+        _hash = 19 * toString().hashCode();
+    }
+
+    private static final CanonicalTable<SymbolImpl> canonical = new CanonicalTable<SymbolImpl>(SymbolImpl::new);
+
+    /**
+     * Returns the canonical symbol for nsname; decoding and
+     * TransitFactory.symbol return canonical symbols, so equal symbols
+     * from either are the same instance
+     * @param nsname namespace and name
+     */
+    public static SymbolImpl canonical(String nsname) {
+        return canonical.get(nsname);
+    }
+
+    /**
+     * Returns the canonical symbol for the chars of nsname from start to end,
+     * building no string when there is one
+     */
+    public static SymbolImpl canonical(CharSequence nsname, int start, int end) {
+        return canonical.get(nsname, start, end);
     }
 
     @Override
@@ -34,6 +58,16 @@ public class SymbolImpl implements Symbol, Comparable<Symbol>, Named {
         return _str;
     }
 
+    /**
+     * @return the escaped transit string for this symbol, e.g. "~$foo",
+     * with its encoded forms computed on first use
+     */
+    public SerializedString encoded() {
+        if(_encoded == null)
+            _encoded = new SerializedString(Constants.ESC_STR + "$" + toString());
+        return _encoded;
+    }
+
     @Override
     public String getName() {
         return name;
@@ -60,7 +94,7 @@ public class SymbolImpl implements Symbol, Comparable<Symbol>, Named {
 
     @Override
     public int hashCode() {
-        return 19 * getValue().hashCode();
+        return _hash;
     }
 
     @Override
@@ -0,0 +1,43 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import java.io.IOException;
+
+/**
+ * The raw tokens of a JSON or msgpack input, before any transit
+ * interpretation. Token data is valid until the next call to next.
+ */
+public interface TokenSource {
+
+    enum Kind { EOF, MAP_START, MAP_END, ARRAY_START, ARRAY_END, STRING, LONG, DOUBLE, TRUE, FALSE, NULL, VALUE }
+
+    /**
+     * Advances to the next token; EOF is only returned between top-level
+     * values
+     */
+    Kind next() throws IOException;
+
+    /**
+     * @return the number of entries or elements of the container just
+     * started, or -1 if the format does not say
+     */
+    int size();
+
+    /**
+     * Wraps the current STRING token's chars in window
+     * @return window
+     */
+    CharWindow chars(CharWindow window) throws IOException;
+
+    long longValue();
+
+    double doubleValue();
+
+    /**
+     * @return the current VALUE token's value, e.g. a BigInteger, byte[]
+     * or a value decoded from a msgpack extension type
+     */
+    Object value();
+}
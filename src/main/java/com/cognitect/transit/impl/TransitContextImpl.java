@@ -0,0 +1,131 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.*;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Function;
+
+public class TransitContextImpl implements TransitContext {
+
+    private final TransitFactory.Engine engine;
+    private final JsonFactory jsonFactory;
+    private final WriteHandlerMap writeHandlers;
+    private final WriteHandlerMap verboseWriteHandlers;
+    private final WriteHandler<?, ?> defaultWriteHandler;
+    private final Function<Object, Object> transform;
+    private final ReadHandlerMap readHandlers;
+    private final DefaultReadHandler<?> defaultReadHandler;
+    private final Map<TransitFactory.Format, OneShotCodec> codecs =
+            new EnumMap<TransitFactory.Format, OneShotCodec>(TransitFactory.Format.class);
+
+    public TransitContextImpl(TransitFactory.Engine engine,
+                              Map<Class, WriteHandler<?, ?>> customWriteHandlers, WriteHandler<?, ?> defaultWriteHandler,
+                              Map<String, ReadHandler<?, ?>> customReadHandlers, DefaultReadHandler<?> customDefaultReadHandler,
+                              Function<Object, Object> transform) {
+        this.engine = engine;
+        this.jsonFactory = JsonFactory.builder()
+                .enable(StreamReadFeature.USE_FAST_DOUBLE_PARSER)
+                .enable(StreamWriteFeature.USE_FAST_DOUBLE_WRITER)
+                .build();
+        this.writeHandlers = WriterFactory.buildWriteHandlerMap(customWriteHandlers);
+        this.verboseWriteHandlers = writeHandlers.verboseWriteHandlerMap();
+        this.defaultWriteHandler = defaultWriteHandler != null ? defaultWriteHandler : WriterFactory.defaultDefaultHandler();
+        this.transform = transform;
+        this.readHandlers = (ReadHandlerMap) ReaderFactory.handlerMap(customReadHandlers);
+        this.defaultReadHandler = ReaderFactory.defaultHandler(customDefaultReadHandler);
+
+        codecs.put(TransitFactory.Format.JSON, new OneShotCodec(
+                WriterFactory.jsonEmitterSource(jsonFactory, writeHandlers, this.defaultWriteHandler, false, transform),
+                true, false, readHandlers, defaultReadHandler));
+        codecs.put(TransitFactory.Format.JSON_VERBOSE, new OneShotCodec(
+                WriterFactory.jsonEmitterSource(jsonFactory, verboseWriteHandlers, this.defaultWriteHandler, true, transform),
+                false, false, readHandlers, defaultReadHandler));
+        codecs.put(TransitFactory.Format.MSGPACK, new OneShotCodec(
+                WriterFactory.msgpackEmitterSource(writeHandlers, this.defaultWriteHandler, false, transform),
+                true, true, readHandlers, defaultReadHandler));
+        codecs.put(TransitFactory.Format.MSGPACK_NATIVE, new OneShotCodec(
+                WriterFactory.msgpackEmitterSource(writeHandlers, this.defaultWriteHandler, true, transform),
+                true, true, readHandlers, defaultReadHandler));
+    }
+
+    @Override
+    public <T> Writer<T> writer(TransitFactory.Format type, OutputStream out) {
+        return writer(type, out, null);
+    }
+
+    @Override
+    public <T> Writer<T> writer(TransitFactory.Format type, OutputStream out, FlushPolicy flushPolicy) {
+        try {
+            switch (type) {
+                case MSGPACK:
+                    if (engine == TransitFactory.Engine.DIRECT)
+                        return WriterFactory.directMsgpackWriter(out, writeHandlers, defaultWriteHandler, transform, flushPolicy);
+                    return WriterFactory.msgpackWriter(out, writeHandlers, defaultWriteHandler, transform, flushPolicy);
+                case MSGPACK_NATIVE:
+                    return WriterFactory.nativeMsgpackWriter(out, writeHandlers, defaultWriteHandler, transform, flushPolicy);
+                case JSON:
+                    return WriterFactory.jsonWriter(jsonFactory, out, writeHandlers, defaultWriteHandler, false, transform, flushPolicy);
+                case JSON_VERBOSE:
+                    return WriterFactory.jsonWriter(jsonFactory, out, verboseWriteHandlers, defaultWriteHandler, true, transform, flushPolicy);
+                default:
+                    throw new IllegalArgumentException("Unknown Writer type: " + type.toString());
+            }
+        } catch (Throwable e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    @Override
+    public StreamingReader reader(TransitFactory.Format type, InputStream in) {
+        switch (type) {
+            case JSON:
+            case JSON_VERBOSE:
+                if (engine == TransitFactory.Engine.DIRECT)
+                    return ReaderFactory.getDirectJsonInstance(in, readHandlers, defaultReadHandler);
+                return ReaderFactory.getJsonInstance(jsonFactory, in, readHandlers, defaultReadHandler, 0);
+            case MSGPACK:
+                if (engine == TransitFactory.Engine.DIRECT)
+                    return ReaderFactory.getDirectMsgpackInstance(in, readHandlers, defaultReadHandler);
+                return ReaderFactory.getMsgpackInstance(in, readHandlers, defaultReadHandler);
+            case MSGPACK_NATIVE:
+                return ReaderFactory.getDirectMsgpackInstance(in, readHandlers, defaultReadHandler);
+            default:
+                throw new IllegalArgumentException("Unknown Reader type: " + type.toString());
+        }
+    }
+
+    @Override
+    public byte[] encode(TransitFactory.Format type, Object o) {
+        return codecs.get(type).encode(o);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T decode(TransitFactory.Format type, byte[] bytes) {
+        return (T) codecs.get(type).decode(bytes, 0, bytes.length);
+    }
+
+    @Override
+    public CodecPool codecPool(final TransitFactory.Format type, int size) {
+        return new CodecPoolImpl(new Function<OutputStream, ResettableWriter<?>>() {
+            @Override
+            public ResettableWriter<?> apply(OutputStream out) {
+                return (ResettableWriter<?>) writer(type, out);
+            }
+        }, new Function<InputStream, ResettableReader>() {
+            @Override
+            public ResettableReader apply(InputStream in) {
+                return (ResettableReader) reader(type, in);
+            }
+        }, size);
+    }
+}
@@ -0,0 +1,424 @@
+// Copyright (c) Cognitect, Inc.
+// All rights reserved.
+
+package com.cognitect.transit.impl;
+
+import com.cognitect.transit.Keyword;
+import com.cognitect.transit.Symbol;
+import com.cognitect.transit.TransitEventHandler;
+import com.cognitect.transit.TransitTokenReader.Token;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Walks the raw tokens of a parser's input one transit token at a time.
+ * Cache codes, map-as-array markers, tags and quotes are interpreted here,
+ * with the same cache bookkeeping as a full parse, but no maps or lists
+ * are built.
+ */
+public class TransitCursor {
+
+    // kinds of open containers
+    private static final byte ARRAY = 0;
+    private static final byte MAP = 1;
+    private static final byte TAGGED = 2;
+    private static final byte QUOTE = 3;
+
+    private final AbstractParser p;
+    private final TokenSource src;
+    private ReadCache cache;
+
+    // the open containers, with the raw token that closes each of them
+    private byte[] types = new byte[16];
+    private TokenSource.Kind[] closers = new TokenSource.Kind[16];
+    private boolean[] keys = new boolean[16];
+    private boolean[] marked = new boolean[16];
+    private String[] tags = new String[16];
+    private int depth;
+
+    // lookahead needed to recognize map-as-array markers and tags
+    private TokenSource.Kind pushedBack;
+    private boolean hasPending;
+    private Object pending;
+
+    private Token token;
+    private int size;
+    private boolean booleanValue;
+    private long longValue;
+    private double doubleValue;
+    private Object value;
+    private String tag;
+
+    public TransitCursor(AbstractParser p, TokenSource src) {
+        this.p = p;
+        this.src = src;
+    }
+
+    /**
+     * Prepares the cursor to read a new top-level value
+     */
+    public TransitCursor init(ReadCache cache) {
+        this.cache = cache;
+        depth = 0;
+        pushedBack = null;
+        hasPending = false;
+        pending = null;
+        token = null;
+        return this;
+    }
+
+    /**
+     * @return the number of containers the current token is in, or has
+     * opened; 0 once a top-level value is complete
+     */
+    public int depth() {
+        return depth;
+    }
+
+    public Token token() { return token; }
+
+    /**
+     * @return the size of the container just started, or -1 if unknown
+     */
+    public int size() { return size; }
+
+    public boolean booleanValue() { return booleanValue; }
+
+    public long longValue() { return longValue; }
+
+    public double doubleValue() { return doubleValue; }
+
+    /**
+     * @return the value of a STRING, KEYWORD, SYMBOL or VALUE token
+     */
+    public Object value() { return value; }
+
+    /**
+     * @return the tag of a TAGGED_START token
+     */
+    public String tag() { return tag; }
+
+    /**
+     * Reads one top-level value, reporting it to handler
+     */
+    public void read(TransitEventHandler handler) throws IOException {
+        if (next() == null)
+            throw new EOFException();
+        while (true) {
+            switch (token) {
+                case MAP_START: handler.onMapStart(size); break;
+                case KEY: handler.onKey(); break;
+                case MAP_END: handler.onMapEnd(); break;
+                case ARRAY_START: handler.onArrayStart(size); break;
+                case ARRAY_END: handler.onArrayEnd(); break;
+                case TAGGED_START: handler.onTagged(tag); break;
+                case TAGGED_END: handler.onTaggedEnd(); break;
+                case NULL: handler.onNull(); break;
+                case BOOLEAN: handler.onBoolean(booleanValue); break;
+                case LONG: handler.onLong(longValue); break;
+                case DOUBLE: handler.onDouble(doubleValue); break;
+                case STRING: handler.onString((String) value); break;
+                case KEYWORD: handler.onKeyword((Keyword) value); break;
+                case SYMBOL: handler.onSymbol((Symbol) value); break;
+                default: handler.onValue(value);
+            }
+            if (depth == 0)
+                return;
+            next();
+        }
+    }
+
+    /**
+     * Advances to the next token
+     * @return the token, or null at the end of the input
+     */
+    public Token next() throws IOException {
+        if (depth > 0) {
+            int f = depth - 1;
+            if (types[f] == MAP && keys[f] && !marked[f]) {
+                if (!hasPending) {
+                    TokenSource.Kind k = raw();
+                    if (k == closers[f]) {
+                        depth--;
+                        return complete(Token.MAP_END);
+                    }
+                    pushedBack = k;
+                }
+                marked[f] = true;
+                return token = Token.KEY;
+            }
+        }
+        if (hasPending) {
+            hasPending = false;
+            return complete(scalar(pending));
+        }
+        TokenSource.Kind k = raw();
+        if (depth == 0 && k == TokenSource.Kind.EOF)
+            return token = null;
+        if (depth > 0 && k == closers[depth - 1]) {
+            byte type = types[--depth];
+            return complete(type == ARRAY ? Token.ARRAY_END : type == MAP ? Token.MAP_END : Token.TAGGED_END);
+        }
+        return value(k, depth > 0 && types[depth - 1] == MAP && keys[depth - 1]);
+    }
+
+    /**
+     * @return the tag of the innermost open tagged value, or null
+     */
+    public String currentTag() {
+        for (int f = depth - 1; f >= 0; f--) {
+            if (types[f] == TAGGED)
+                return tags[f];
+        }
+        return null;
+    }
+
+    /**
+     * Skips the current value, reading it so the cache stays in step
+     */
+    public void skip() throws IOException {
+        if (token == Token.KEY) {
+            next();
+            next();
+        }
+        if (token == Token.MAP_START || token == Token.ARRAY_START || token == Token.TAGGED_START) {
+            int d = depth;
+            while (depth >= d)
+                next();
+        }
+    }
+
+    private TokenSource.Kind raw() throws IOException {
+        TokenSource.Kind k = pushedBack;
+        if (k != null) {
+            pushedBack = null;
+            return k;
+        }
+        return src.next();
+    }
+
+    private void push(byte type, TokenSource.Kind closer, String tag) {
+        if (depth == types.length) {
+            int n = depth * 2;
+            types = Arrays.copyOf(types, n);
+            closers = Arrays.copyOf(closers, n);
+            keys = Arrays.copyOf(keys, n);
+            marked = Arrays.copyOf(marked, n);
+            tags = Arrays.copyOf(tags, n);
+        }
+        types[depth] = type;
+        closers[depth] = closer;
+        keys[depth] = true;
+        marked[depth] = false;
+        tags[depth] = tag;
+        depth++;
+    }
+
+    // records that a value, or the key of an entry, is complete
+    private Token complete(Token t) throws IOException {
+        token = t;
+        if (depth > 0) {
+            int f = depth - 1;
+            if (types[f] == MAP) {
+                keys[f] = !keys[f];
+                marked[f] = false;
+            } else if (types[f] == QUOTE) {
+                // a quote holds a single value, close it right away
+                if (raw() != closers[f])
+                    throw new IOException("Expected end of quoted value");
+                depth--;
+                return complete(t);
+            }
+        }
+        return t;
+    }
+
+    private Token value(TokenSource.Kind k, boolean asMapKey) throws IOException {
+        switch (k) {
+            case MAP_START:
+                return startMap(src.size());
+            case ARRAY_START:
+                return startArray(src.size());
+            case STRING:
+                return complete(scalar(classify(asMapKey)));
+            case LONG:
+                longValue = src.longValue();
+                value = null;
+                return complete(Token.LONG);
+            case DOUBLE:
+                doubleValue = src.doubleValue();
+                value = null;
+                return complete(Token.DOUBLE);
+            case TRUE:
+            case FALSE:
+                booleanValue = k == TokenSource.Kind.TRUE;
+                value = null;
+                return complete(Token.BOOLEAN);
+            case NULL:
+                value = null;
+                return complete(Token.NULL);
+            case VALUE:
+                return complete(scalar(src.value()));
+            case EOF:
+                throw new EOFException();
+            default:
+                throw new IOException("Unexpected " + k);
+        }
+    }
+
+    private Token startArray(int n) throws IOException {
+        TokenSource.Kind k = raw();
+        if (k == TokenSource.Kind.STRING) {
+            Object o = classify(false);
+            if (o == Constants.MAP_AS_ARRAY) {
+                push(MAP, TokenSource.Kind.ARRAY_END, null);
+                size = n < 0 ? -1 : (n - 1) / 2;
+                return token = Token.MAP_START;
+            }
+            if (o instanceof Tag)
+                return startTagged(((Tag) o).getValue(), TokenSource.Kind.ARRAY_END);
+            pending = o;
+            hasPending = true;
+        } else {
+            pushedBack = k;
+        }
+        push(ARRAY, TokenSource.Kind.ARRAY_END, null);
+        size = n;
+        return token = Token.ARRAY_START;
+    }
+
+    private Token startMap(int n) throws IOException {
+        TokenSource.Kind k = raw();
+        if (k == TokenSource.Kind.STRING) {
+            Object o = classify(true);
+            if (o instanceof Tag)
+                return startTagged(((Tag) o).getValue(), TokenSource.Kind.MAP_END);
+            pending = o;
+            hasPending = true;
+        } else {
+            pushedBack = k;
+        }
+        push(MAP, TokenSource.Kind.MAP_END, null);
+        size = n;
+        return token = Token.MAP_START;
+    }
+
+    private Token startTagged(String t, TokenSource.Kind closer) throws IOException {
+        if (t.equals("'")) {
+            push(QUOTE, closer, t);
+            return next();
+        }
+        TokenSource.Kind k = raw();
+        boolean container = k == TokenSource.Kind.MAP_START || k == TokenSource.Kind.ARRAY_START;
+        if (container && !t.equals("u")) {
+            pushedBack = k;
+            push(TAGGED, closer, t);
+            tag = t;
+            return token = Token.TAGGED_START;
+        }
+        // scalar types are decoded as a full parse would, including a
+        // uuid, which msgpack represents as an array of two longs
+        Object o = p.decode(t, build(k));
+        if (raw() != closer)
+            throw new IOException("Expected end of tagged value " + t);
+        return complete(scalar(o));
+    }
+
+    // the representation of a uuid: a string, or an array of two longs
+    private Object build(TokenSource.Kind k) throws IOException {
+        switch (k) {
+            case ARRAY_START: {
+                List<Object> l = new ArrayList<Object>();
+                TokenSource.Kind e;
+                while ((e = src.next()) != TokenSource.Kind.ARRAY_END)
+                    l.add(build(e));
+                return l;
+            }
+            case STRING: return classify(false);
+            case LONG: return src.longValue();
+            case DOUBLE: return src.doubleValue();
+            case TRUE: return true;
+            case FALSE: return false;
+            case NULL: return null;
+            case VALUE: return src.value();
+            case EOF: throw new EOFException();
+            default: throw new IOException("Unexpected " + k);
+        }
+    }
+
+    private Token scalar(Object o) {
+        value = o;
+        if (o == null)
+            return Token.NULL;
+        if (o instanceof String)
+            return Token.STRING;
+        if (o instanceof Keyword)
+            return Token.KEYWORD;
+        if (o instanceof Symbol)
+            return Token.SYMBOL;
+        if (o instanceof Long) {
+            longValue = (Long) o;
+            return Token.LONG;
+        }
+        if (o instanceof Double) {
+            doubleValue = (Double) o;
+            return Token.DOUBLE;
+        }
+        if (o instanceof Boolean) {
+            booleanValue = (Boolean) o;
+            return Token.BOOLEAN;
+        }
+        return Token.VALUE;
+    }
+
+    // the equivalent of ReadCache.cacheRead for the current STRING token,
+    // working on its chars until a String is needed
+    private Object classify(boolean asMapKey) throws IOException {
+        CharWindow w = src.chars(p.window);
+        int len = w.length();
+        if (len >= 2) {
+            char c0 = w.charAt(0);
+            char c1 = w.charAt(1);
+            if (c0 == Constants.SUB) {
+                if (c1 == ' ' && len == 2)
+                    return Constants.MAP_AS_ARRAY;
+                int i = c1 - WriteCache.BASE_CHAR_IDX;
+                if (len == 3)
+                    i = (i * WriteCache.CACHE_CODE_DIGITS) + (w.charAt(2) - WriteCache.BASE_CHAR_IDX);
+                return cache.get(i);
+            }
+            if (c0 == Constants.ESC) {
+                switch (c1) {
+                    case Constants.ESC:
+                    case Constants.SUB:
+                    case Constants.RESERVED: {
+                        String s = w.subSequence(1, len);
+                        if (asMapKey && len >= WriteCache.MIN_SIZE_CACHEABLE)
+                            cache.put(s);
+                        return s;
+                    }
+                    case Constants.TAG: {
+                        Tag t = new Tag(w.subSequence(2, len));
+                        if (len >= WriteCache.MIN_SIZE_CACHEABLE)
+                            cache.put(t);
+                        return t;
+                    }
+                    default: {
+                        Object o = p.decode(c1, w.skip(2));
+                        if (len >= WriteCache.MIN_SIZE_CACHEABLE && (asMapKey || c1 == ':' || c1 == '$'))
+                            cache.put(o);
+                        return o;
+                    }
+                }
+            }
+        }
+        String s = w.toString();
+        if (asMapKey && len >= WriteCache.MIN_SIZE_CACHEABLE)
+            cache.put(s);
+        return s;
+    }
+}
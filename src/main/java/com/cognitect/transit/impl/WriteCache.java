@@ -3,8 +3,7 @@
 
 package com.cognitect.transit.impl;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
 
 public class WriteCache {
 
@@ -13,7 +12,18 @@ public class WriteCache {
     public static final int MAX_CACHE_ENTRIES = CACHE_CODE_DIGITS * CACHE_CODE_DIGITS;
     public static final int BASE_CHAR_IDX = 48;
 
-    private final Map<String, String> cache;
+    // open-addressed table, kept under half full at MAX_CACHE_ENTRIES
+    private static final int TABLE_SIZE = 4096;
+    private static final int MASK = TABLE_SIZE - 1;
+
+    private static final String[] CODES = codes();
+
+    // a slot is occupied only if its stamp matches the current generation,
+    // so init() empties the table without touching it
+    private String[] keys;
+    private short[] indexes;
+    private int[] stamps;
+    private int generation;
     private int index;
     private boolean enabled;
 
@@ -21,10 +31,21 @@ public class WriteCache {
 
     public WriteCache(boolean enabled) {
         index = 0;
-        cache = new HashMap<String, String>(MAX_CACHE_ENTRIES);
+        generation = 1;
         this.enabled = enabled;
     }
 
+    private static String[] codes() {
+        String[] codes = new String[MAX_CACHE_ENTRIES];
+        for (int i = 0; i < MAX_CACHE_ENTRIES; i++)
+            codes[i] = indexToCode(i).intern();
+        return codes;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
     public static boolean isCacheable(String s, boolean asMapKey) {
         return (s.length() >= MIN_SIZE_CACHEABLE) &&
                  (asMapKey ||
@@ -32,7 +53,7 @@ public class WriteCache {
                     (s.charAt(1) == ':' || s.charAt(1) == '$' || s.charAt(1) == '#')));
     }
 
-    private String indexToCode(int index) {
+    private static String indexToCode(int index) {
         int hi = index / CACHE_CODE_DIGITS;
         int lo = index % CACHE_CODE_DIGITS;
         if (hi == 0) {
@@ -42,25 +63,45 @@ public class WriteCache {
         }
     }
 
+    private static int slot(String s) {
+        int h = s.hashCode();
+        return (h ^ (h >>> 16)) & MASK;
+    }
+
     public String cacheWrite(String s, boolean asMapKey) {
 
         if(enabled && isCacheable(s, asMapKey)) {
-            String val = cache.get(s);
-            if(val != null)
-                return val;
-            else {
-                if(index == MAX_CACHE_ENTRIES)
-                    init();
-                String code = indexToCode(index++);
-                cache.put(s, code);
+            if(keys == null) {
+                keys = new String[TABLE_SIZE];
+                indexes = new short[TABLE_SIZE];
+                stamps = new int[TABLE_SIZE];
+            }
+            int i = slot(s);
+            while(stamps[i] == generation) {
+                String k = keys[i];
+                if(k == s || k.equals(s))
+                    return CODES[indexes[i]];
+                i = (i + 1) & MASK;
+            }
+            if(index == MAX_CACHE_ENTRIES) {
+                init();
+                i = slot(s);
             }
+            keys[i] = s;
+            indexes[i] = (short)index++;
+            stamps[i] = generation;
         }
         return s;
     }
 
 	public WriteCache init(){
 		index = 0;
-		cache.clear();
+		if(++generation == 0) {
+			// stamps wrapped around, so old stamps could look current again
+			if(stamps != null)
+				Arrays.fill(stamps, 0);
+			generation = 1;
+		}
 		return this;
 	}
 }
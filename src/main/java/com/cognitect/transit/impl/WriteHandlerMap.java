@@ -19,7 +19,8 @@ import com.cognitect.transit.*;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.*;
-import java.util.function.Function;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public class WriteHandlerMap implements TagProvider, Map<Class, WriteHandler<?, ?>> {
 
@@ -44,7 +45,7 @@ public class WriteHandlerMap implements TagProvider, Map<Class, WriteHandler<?,
         handlers.put(BigDecimal.class, new WriteHandlers.ToStringWriteHandler("f"));
         handlers.put(Character.class, new WriteHandlers.ToStringWriteHandler("c"));
         handlers.put(Keyword.class, new WriteHandlers.KeywordWriteHandler());
-        handlers.put(Symbol.class, new WriteHandlers.ToStringWriteHandler("$"));
+        handlers.put(Symbol.class, new WriteHandlers.SymbolWriteHandler());
         handlers.put(byte[].class, new WriteHandlers.BinaryWriteHandler());
         handlers.put(UUID.class, new WriteHandlers.UUIDWriteHandler());
         handlers.put(java.net.URI.class, uriHandler);
@@ -70,14 +71,26 @@ public class WriteHandlerMap implements TagProvider, Map<Class, WriteHandler<?,
 
     public final static Map<Class, WriteHandler<?, ?>> defaults = defaultHandlers();
 
+    // marks classes known to have no handler, so misses are cached too
+    private static final WriteHandler<?, ?> NO_HANDLER = new WriteHandlers.NullWriteHandler();
+
     private final Map<Class, WriteHandler<?, ?>> handlers;
-    private WriteHandlerMap verboseHandlerMap;
-    Function<Object, Object> transform = null;
+    private final WriteHandler<?, ?> nullHandler;
+    // per-class memo of handler resolution, safe to share across threads;
+    // unlike a ClassValue, it goes away with the map
+    private final ConcurrentMap<Class, WriteHandler<?, ?>> resolved = new ConcurrentHashMap<Class, WriteHandler<?, ?>>();
+    // per key class, whether keys of the class are written as strings
+    private final ConcurrentMap<Class, Boolean> stringableKeyClasses = new ConcurrentHashMap<Class, Boolean>();
+    private volatile WriteHandlerMap verboseHandlerMap;
 
     public WriteHandlerMap() {
         this(null);
     }
 
+    /**
+     * Compiles the handlers once. The map is immutable and holds no writer
+     * state, such as a transform, so all writers share it as it is.
+     */
     public WriteHandlerMap(Map<Class, WriteHandler<?, ?>> customHandlers) {
         handlers = new HashMap<Class, WriteHandler<?, ?>>();
         if (customHandlers instanceof WriteHandlerMap) {
@@ -89,10 +102,13 @@ public class WriteHandlerMap implements TagProvider, Map<Class, WriteHandler<?,
             }
         }
         handlers.put(Map.class, new WriteHandlers.MapWriteHandler());
+        WriteHandler<?, ?> h = handlers.get(null);
+        nullHandler = (h != null) ? h : NO_HANDLER;
         setTagProvider(handlers);
     }
 
     public WriteHandlerMap verboseWriteHandlerMap() {
+        // built at most once or twice, as racing threads build equal maps
         if (verboseHandlerMap == null) {
             Map<Class, WriteHandler<?, ?>> verboseHandlers = new HashMap<Class, WriteHandler<?, ?>>(handlers.size());
             for (Map.Entry<Class, WriteHandler<?, ?>> entry : handlers.entrySet()) {
@@ -189,44 +205,71 @@ public class WriteHandlerMap implements TagProvider, Map<Class, WriteHandler<?,
     }
 
     public WriteHandler<Object,Object> getHandler(Object o) {
-        Class c = (o != null) ? o.getClass() : null;
-        WriteHandler<?, ?> h = null;
+        WriteHandler<?, ?> h = (o != null) ? resolved(o.getClass()) : nullHandler;
+        return (h != NO_HANDLER) ? (WriteHandler<Object, Object>) h : null;
+    }
+
+    private WriteHandler<?,?> resolved(Class c) {
+        WriteHandler<?, ?> h = resolved.get(c);
+        if (h == null) {
+            h = resolve(c);
+            resolved.putIfAbsent(c, h);
+        }
+        return h;
+    }
 
-        if(h == null) h = handlers.get(c);
+    private WriteHandler<?,?> resolve(Class c) {
+        WriteHandler<?, ?> h = handlers.get(c);
         if(h == null) h = checkBaseClasses(c);
         if(h == null) h = checkBaseInterfaces(c);
-
-        return (WriteHandler<Object, Object>) h;
+        return (h != null) ? h : NO_HANDLER;
     }
 
     private WriteHandler<?,?> checkBaseClasses(Class c) {
-        for(Class base = c.getSuperclass(); base != Object.class; base = base.getSuperclass()) {
+        for(Class base = c.getSuperclass(); base != Object.class && base != null; base = base.getSuperclass()) {
             WriteHandler<?, ?> h = handlers.get(base);
-            if(h != null) {
-                handlers.put(c, h);
+            if(h != null)
                 return h;
-            }
         }
         return null;
     }
 
     private WriteHandler<?,?> checkBaseInterfaces(Class c) {
-        Map<Class, WriteHandler<?,?>> possibles = new HashMap<Class,WriteHandler<?,?>>();
-        for (Class base = c; base != Object.class; base = base.getSuperclass()) {
+        Class match = null;
+        WriteHandler<?, ?> found = null;
+        for (Class base = c; base != Object.class && base != null; base = base.getSuperclass()) {
             for (Class itf : base.getInterfaces()) {
                 WriteHandler<?, ?> h = handlers.get(itf);
-                if (h != null) possibles.put(itf, h);
+                if (h != null && itf != match) {
+                    if (match != null)
+                        throw new RuntimeException("More than one match for " + c);
+                    match = itf;
+                    found = h;
+                }
             }
         }
-        switch (possibles.size()) {
-            case 0: return null;
-            case 1: {
-                WriteHandler<?, ?> h = possibles.values().iterator().next();
-                handlers.put(c, h);
-                return h;
-            }
-            default: throw new RuntimeException("More than one match for " + c);
+        return found;
+    }
+
+    /**
+     * Returns whether every key of the class of k is written as a string,
+     * or null if that depends on the key. Only the built-in handlers, the
+     * length of whose tags does not depend on the value, are memoized.
+     */
+    public Boolean stringableKeyClass(Object k) {
+        Class c = k.getClass();
+        Boolean b = stringableKeyClasses.get(c);
+        if (b == null) {
+            WriteHandler<Object, Object> h = getHandler(k);
+            if (h == null || h.getClass().getEnclosingClass() != WriteHandlers.class || h.getClass() == WriteHandlers.TaggedValueWriteHandler.class)
+                return null;
+            String tag = h.tag(k);
+            if (tag == null)
+                return null;
+            b = tag.length() == 1;
+            stringableKeyClasses.putIfAbsent(c, b);
         }
+        return b;
     }
 
     @Override
@@ -236,11 +279,10 @@ public class WriteHandlerMap implements TagProvider, Map<Class, WriteHandler<?,
         return h.tag(o);
     }
 
+    // writers apply their transform to map keys themselves, see
+    // MapWriteHandler.stringableKeys(Map, Function)
     @Override
     public String getTagAfterPossibleTransform(Object o) {
-        if (transform != null)
-            return this.getTag(transform.apply(o));
-        else
-            return this.getTag(o);
+        return this.getTag(o);
     }
 }
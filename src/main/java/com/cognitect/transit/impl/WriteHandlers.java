@@ -4,9 +4,11 @@
 package com.cognitect.transit.impl;
 
 import com.cognitect.transit.*;
+import com.fasterxml.jackson.core.io.SerializedString;
 
 import java.math.BigInteger;
 import java.util.*;
+import java.util.function.Function;
 
 public class WriteHandlers {
     public static class ArrayWriteHandler extends AbstractWriteHandler<Object, Object> {
@@ -52,7 +54,7 @@ public class WriteHandlers {
         }
     }
 
-    public static class KeywordWriteHandler extends AbstractWriteHandler<Keyword, Object> {
+    public static class KeywordWriteHandler extends AbstractWriteHandler<Keyword, Object> implements EncodedWriteHandler {
 
         @Override
         public String tag(Keyword ignored) {
@@ -68,6 +70,11 @@ public class WriteHandlers {
         public String stringRep(Keyword o) {
             return o.toString().substring(1);
         }
+
+        @Override
+        public SerializedString encodedString(Object o) {
+            return (o instanceof KeywordImpl) ? ((KeywordImpl) o).encoded() : null;
+        }
     }
 
     public static class ListWriteHandler extends AbstractWriteHandler<List<Object>, Object> {
@@ -99,12 +106,33 @@ public class WriteHandlers {
             this.tagProvider = tagProvider;
         }
 
-        private boolean stringableKeys(Map<Object, Object> m) {
+        /**
+         * Returns true if every key of m can be written as a string,
+         * i.e. m can be written as a map rather than a cmap
+         */
+        public boolean stringableKeys(Map<Object, Object> m) {
+            return stringableKeys(m, null);
+        }
+
+        /**
+         * Returns true if every key of m, as transform makes it, can be
+         * written as a string
+         */
+        public boolean stringableKeys(Map<Object, Object> m, Function<Object, Object> transform) {
 
+            WriteHandlerMap memo = (tagProvider instanceof WriteHandlerMap) ? (WriteHandlerMap) tagProvider : null;
             Iterator<Object> i = m.keySet().iterator();
             while(i.hasNext()) {
                 Object key = i.next();
-                String tag = tagProvider.getTagAfterPossibleTransform(key);
+                Object k = transform != null ? transform.apply(key) : key;
+                // most keys, such as keywords, are classified by class
+                Boolean stringable = (memo != null && k != null) ? memo.stringableKeyClass(k) : null;
+                if (stringable != null) {
+                    if (!stringable)
+                        return false;
+                    continue;
+                }
+                String tag = tagProvider.getTagAfterPossibleTransform(k);
 
                 if(tag != null && tag.length() > 1)
                     return false;
@@ -128,19 +156,56 @@ public class WriteHandlers {
         @Override
         public Object rep(Map<Object, Object> o) {
 
-            if(stringableKeys(o)) {
+            if(stringableKeys(o))
                 return o.entrySet();
-            }
-            else {
-                List<Object> l = new ArrayList<Object>(2*o.size());
-                Iterator<Map.Entry<Object, Object>> i = o.entrySet().iterator();
-                while(i.hasNext()) {
-                    Map.Entry<Object, Object> e = i.next();
-                    l.add(e.getKey());
-                    l.add(e.getValue());
+            else
+                return cmapRep(o);
+        }
+
+        /**
+         * Returns the cmap representation of m: an array of its keys and
+         * values, interleaved, read directly from m's entry set
+         */
+        public Object cmapRep(Map<Object, Object> m) {
+            return TransitFactory.taggedValue("array", new KeysAndValues(m));
+        }
+    }
+
+    private static class KeysAndValues extends AbstractCollection<Object> {
+
+        private final Map<Object, Object> m;
+
+        KeysAndValues(Map<Object, Object> m) {
+            this.m = m;
+        }
+
+        @Override
+        public int size() {
+            return 2 * m.size();
+        }
+
+        @Override
+        public Iterator<Object> iterator() {
+            final Iterator<Map.Entry<Object, Object>> i = m.entrySet().iterator();
+            return new Iterator<Object>() {
+                private Map.Entry<Object, Object> e = null;
+
+                @Override
+                public boolean hasNext() {
+                    return e != null || i.hasNext();
                 }
-                return TransitFactory.taggedValue("array", l);
-            }
+
+                @Override
+                public Object next() {
+                    if (e != null) {
+                        Object v = e.getValue();
+                        e = null;
+                        return v;
+                    }
+                    e = i.next();
+                    return e.getKey();
+                }
+            };
         }
     }
 
@@ -287,6 +352,18 @@ public class WriteHandlers {
         }
     }
 
+    public static class SymbolWriteHandler extends ToStringWriteHandler implements EncodedWriteHandler {
+
+        public SymbolWriteHandler() {
+            super("$");
+        }
+
+        @Override
+        public SerializedString encodedString(Object o) {
+            return (o instanceof SymbolImpl) ? ((SymbolImpl) o).encoded() : null;
+        }
+    }
+
     public static class TaggedValueWriteHandler extends AbstractWriteHandler<TaggedValue, Object> {
 
         @Override
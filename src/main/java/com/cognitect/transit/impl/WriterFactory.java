@@ -3,6 +3,8 @@
 
 package com.cognitect.transit.impl;
 
+import com.cognitect.transit.FlushPolicy;
+import com.cognitect.transit.ResettableWriter;
 import com.cognitect.transit.WriteHandler;
 import com.cognitect.transit.Writer;
 import com.fasterxml.jackson.core.JsonFactory;
@@ -10,18 +12,37 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import org.msgpack.MessagePack;
 import org.msgpack.packer.Packer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 public class WriterFactory {
 
+    // shared, so writers reuse its buffers
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final WriteHandlerMap DEFAULT_HANDLERS = new WriteHandlerMap();
+
     private static final Map<Map<Class, WriteHandler<?,?>>, WriteHandlerMap> handlerCache = new Cache<Map<Class, WriteHandler<?,?>>, WriteHandlerMap>();
 
-    private static WriteHandlerMap buildWriteHandlerMap(Map<Class, WriteHandler<?, ?>> customHandlers) {
+    // compiled maps are used as they are; others are compiled once and
+    // cached, keyed by their contents
+    static WriteHandlerMap buildWriteHandlerMap(Map<Class, WriteHandler<?, ?>> customHandlers) {
         if (customHandlers instanceof WriteHandlerMap)
-            return new WriteHandlerMap(customHandlers);
+            return (WriteHandlerMap) customHandlers;
+        if (customHandlers == null)
+            return DEFAULT_HANDLERS;
 
         WriteHandlerMap writeHandlerMap;
         synchronized (handlerCache) {
@@ -31,10 +52,10 @@ public class WriterFactory {
                 handlerCache.put(customHandlers, writeHandlerMap);
             }
         }
-        return new WriteHandlerMap(writeHandlerMap);
+        return writeHandlerMap;
     }
 
-    private static WriteHandlerMap verboseHandlerMap(Map<Class, WriteHandler<?, ?>> customHandlers) {
+    static WriteHandlerMap verboseHandlerMap(Map<Class, WriteHandler<?, ?>> customHandlers) {
         return buildWriteHandlerMap(customHandlers).verboseWriteHandlerMap();
     }
 
@@ -43,27 +64,78 @@ public class WriterFactory {
     }
 
     public static <T> Writer<T> getJsonInstance(final OutputStream out, Map<Class, WriteHandler<?,?>> customHandlers,  WriteHandler<?, ?> defaultWriteHandler, boolean verboseMode, Function<Object,Object> transform) throws IOException {
+        return getJsonInstance(out, customHandlers, defaultWriteHandler, verboseMode, transform, null);
+    }
 
-        JsonGenerator gen = new JsonFactory().createGenerator(out);
-        final JsonEmitter emitter;
+    public static <T> Writer<T> getJsonInstance(final OutputStream out, Map<Class, WriteHandler<?,?>> customHandlers,  WriteHandler<?, ?> defaultWriteHandler, boolean verboseMode, Function<Object,Object> transform, FlushPolicy flushPolicy) throws IOException {
+        WriteHandlerMap handlers = verboseMode ? verboseHandlerMap(customHandlers) : buildWriteHandlerMap(customHandlers);
+        return jsonWriter(JSON_FACTORY, out, handlers, defaultWriteHandler, verboseMode, transform, flushPolicy);
+    }
 
-        if (verboseMode) {
-            emitter = new JsonVerboseEmitter(gen, verboseHandlerMap(customHandlers), defaultWriteHandler, transform);
-        } else {
-            emitter = new JsonEmitter(gen, buildWriteHandlerMap(customHandlers), defaultWriteHandler, transform);
-        }
+    /**
+     * Creates a JSON writer with handlers as they are, which must be
+     * verbose ones if verboseMode
+     */
+    static <T> Writer<T> jsonWriter(JsonFactory jf, OutputStream out, WriteHandlerMap handlers, WriteHandler<?, ?> defaultWriteHandler,
+                                    boolean verboseMode, Function<Object,Object> transform, FlushPolicy flushPolicy) throws IOException {
+
+        flushPolicy = flushPolicy(flushPolicy);
+        CountingOutputStream counter = new CountingOutputStream(out);
 
-        final WriteCache writeCache = new WriteCache(!verboseMode);
+        JsonGenerator gen = jf.createGenerator(counter);
+        // the writer separates values itself, so that a reset writer
+        // writes no separator before its first value
+        gen.setRootValueSeparator(null);
+        // the writer flushes the stream itself, as its flush policy dictates
+        gen.disable(JsonGenerator.Feature.FLUSH_PASSED_TO_STREAM);
+        JsonEmitter emitter = verboseMode ? new JsonVerboseEmitter(gen, handlers, defaultWriteHandler, transform) :
+                new JsonEmitter(gen, handlers, defaultWriteHandler, transform);
 
-        return new Writer<T>() {
+        EmitterSource source = jsonEmitterSource(jf, handlers, defaultWriteHandler, verboseMode, transform);
+
+        return new WriterImpl<T>(out, counter, emitter, new WriteCache(!verboseMode), flushPolicy, source, ' ');
+    }
+
+    static EmitterSource jsonEmitterSource(final JsonFactory jf, final WriteHandlerMap handlers, final WriteHandler<?, ?> defaultWriteHandler,
+                                                   final boolean verboseMode, final Function<Object,Object> transform) {
+        return new EmitterSource() {
             @Override
-            public void write(T o) {
-                try {
-                    emitter.emit(o, false, writeCache.init());
-                    out.flush();
-                } catch (Throwable e) {
-                    throw new RuntimeException(e);
-                }
+            public AbstractEmitter emitter(OutputStream o) throws IOException {
+                JsonGenerator g = jf.createGenerator(o);
+                // callers separate values themselves
+                g.setRootValueSeparator(null);
+                return verboseMode ? new JsonVerboseEmitter(g, handlers, defaultWriteHandler, transform) :
+                        new JsonEmitter(g, handlers, defaultWriteHandler, transform);
+            }
+        };
+    }
+
+    /**
+     * Creates a source of JSON emitters that write no separators between
+     * top-level values
+     */
+    public static EmitterSource getJsonEmitterSource(Map<Class, WriteHandler<?,?>> customHandlers, WriteHandler<?, ?> defaultWriteHandler,
+                                                     boolean verboseMode, Function<Object,Object> transform) {
+        WriteHandlerMap handlers = verboseMode ? verboseHandlerMap(customHandlers) : buildWriteHandlerMap(customHandlers);
+        return jsonEmitterSource(JSON_FACTORY, handlers, defaultWriteHandler, verboseMode, transform);
+    }
+
+    /**
+     * Creates a source of emitters writing msgpack with the direct
+     * encoder, or native msgpack if nativeTypes
+     */
+    public static EmitterSource getMsgpackEmitterSource(Map<Class, WriteHandler<?,?>> customHandlers, WriteHandler<?, ?> defaultWriteHandler,
+                                                        boolean nativeTypes, Function<Object,Object> transform) {
+        return msgpackEmitterSource(buildWriteHandlerMap(customHandlers), defaultWriteHandler, nativeTypes, transform);
+    }
+
+    static EmitterSource msgpackEmitterSource(final WriteHandlerMap handlers, final WriteHandler<?, ?> defaultWriteHandler,
+                                                      final boolean nativeTypes, final Function<Object,Object> transform) {
+        return new EmitterSource() {
+            @Override
+            public AbstractEmitter emitter(OutputStream o) {
+                return nativeTypes ? new NativeMsgpackEmitter(new MsgpackEncoder(o), handlers, defaultWriteHandler, transform) :
+                        new DirectMsgpackEmitter(new MsgpackEncoder(o), handlers, defaultWriteHandler, transform);
             }
         };
     }
@@ -73,24 +145,277 @@ public class WriterFactory {
     }
 
     public static <T> Writer<T> getMsgpackInstance(final OutputStream out, Map<Class, WriteHandler<?,?>> customHandlers, WriteHandler<?, ?> defaultWriteHandler, Function<Object,Object> transform) throws IOException {
+        return getMsgpackInstance(out, customHandlers, defaultWriteHandler, transform, null);
+    }
+
+    public static <T> Writer<T> getMsgpackInstance(final OutputStream out, Map<Class, WriteHandler<?,?>> customHandlers, WriteHandler<?, ?> defaultWriteHandler, Function<Object,Object> transform, FlushPolicy flushPolicy) throws IOException {
+        return msgpackWriter(out, buildWriteHandlerMap(customHandlers), defaultWriteHandler, transform, flushPolicy);
+    }
+
+    static <T> Writer<T> msgpackWriter(OutputStream out, final WriteHandlerMap handlers, final WriteHandler<?, ?> defaultWriteHandler,
+                                       final Function<Object,Object> transform, FlushPolicy flushPolicy) throws IOException {
 
-        Packer packer = new MessagePack().createPacker(out);
+        flushPolicy = flushPolicy(flushPolicy);
+        CountingOutputStream counter = new CountingOutputStream(out);
 
-        final MsgpackEmitter emitter = new MsgpackEmitter(packer, buildWriteHandlerMap(customHandlers), defaultWriteHandler, transform);
+        final MessagePack mp = new MessagePack();
+        Packer packer = mp.createPacker(counter);
 
-        final WriteCache writeCache = new WriteCache(true);
+        final MsgpackEmitter emitter = new MsgpackEmitter(packer, handlers, defaultWriteHandler, transform);
 
-        return new Writer<T>() {
+        EmitterSource source = new EmitterSource() {
             @Override
-            public void write(T o) {
-                try {
-                    emitter.emit(o, false, writeCache.init());
-                    out.flush();
-                } catch (Throwable e) {
-                    throw new RuntimeException(e);
-                }
+            public AbstractEmitter emitter(OutputStream o) {
+                return new MsgpackEmitter(mp.createPacker(o), handlers, defaultWriteHandler, transform);
             }
         };
+
+        return new WriterImpl<T>(out, counter, emitter, new WriteCache(true), flushPolicy, source, 0);
+    }
+
+    public static <T> Writer<T> getDirectMsgpackInstance(final OutputStream out, Map<Class, WriteHandler<?,?>> customHandlers, WriteHandler<?, ?> defaultWriteHandler, Function<Object,Object> transform, FlushPolicy flushPolicy) throws IOException {
+        return directMsgpackWriter(out, buildWriteHandlerMap(customHandlers), defaultWriteHandler, transform, flushPolicy);
+    }
+
+    static <T> Writer<T> directMsgpackWriter(OutputStream out, WriteHandlerMap handlers, WriteHandler<?, ?> defaultWriteHandler,
+                                       Function<Object,Object> transform, FlushPolicy flushPolicy) {
+
+        flushPolicy = flushPolicy(flushPolicy);
+        CountingOutputStream counter = new CountingOutputStream(out);
+
+        MsgpackEncoder encoder = new MsgpackEncoder(counter);
+        DirectMsgpackEmitter emitter = new DirectMsgpackEmitter(encoder, handlers, defaultWriteHandler, transform);
+
+        EmitterSource source = msgpackEmitterSource(handlers, defaultWriteHandler, false, transform);
+
+        return new WriterImpl<T>(out, counter, emitter, new WriteCache(true), flushPolicy, source, 0);
+    }
+
+    public static <T> Writer<T> getNativeMsgpackInstance(final OutputStream out, Map<Class, WriteHandler<?,?>> customHandlers, WriteHandler<?, ?> defaultWriteHandler, Function<Object,Object> transform, FlushPolicy flushPolicy) throws IOException {
+        return nativeMsgpackWriter(out, buildWriteHandlerMap(customHandlers), defaultWriteHandler, transform, flushPolicy);
+    }
+
+    static <T> Writer<T> nativeMsgpackWriter(OutputStream out, WriteHandlerMap handlers, WriteHandler<?, ?> defaultWriteHandler,
+                                       Function<Object,Object> transform, FlushPolicy flushPolicy) {
+
+        flushPolicy = flushPolicy(flushPolicy);
+        CountingOutputStream counter = new CountingOutputStream(out);
+
+        MsgpackEncoder encoder = new MsgpackEncoder(counter);
+        NativeMsgpackEmitter emitter = new NativeMsgpackEmitter(encoder, handlers, defaultWriteHandler, transform);
+
+        EmitterSource source = msgpackEmitterSource(handlers, defaultWriteHandler, true, transform);
+
+        return new WriterImpl<T>(out, counter, emitter, new WriteCache(true), flushPolicy, source, 0);
+    }
+
+    private static FlushPolicy flushPolicy(FlushPolicy flushPolicy) {
+        return flushPolicy != null ? flushPolicy : FlushPolicy.EACH_VALUE;
+    }
+
+
+    private static class Buffer extends ByteArrayOutputStream {
+        Buffer() {
+            super(8192);
+        }
+
+        void writeTo(OutputStream out, int from, int to) throws IOException {
+            out.write(buf, from, to - from);
+        }
+    }
+
+    private static class WriterImpl<T> implements ResettableWriter<T> {
+
+        private static final int CHUNKS_PER_CPU = 4;
+
+        private OutputStream out;
+        // out, counted, which the emitter writes to
+        private final CountingOutputStream counter;
+        private final AbstractEmitter emitter;
+        private final WriteCache writeCache;
+        private final FlushPolicy flushPolicy;
+        private final EmitterSource source;
+        // written between top-level values, 0 for none
+        private final int separator;
+        private final Queue<Chunk> chunks = new ConcurrentLinkedQueue<Chunk>();
+        private long unflushedValues;
+        private long flushedBytes;
+        private long lastFlushNanos;
+        // whether any value has been written
+        private boolean wroteValue;
+
+        WriterImpl(OutputStream out, CountingOutputStream counter, AbstractEmitter emitter, WriteCache writeCache, FlushPolicy flushPolicy,
+                   EmitterSource source, int separator) {
+            this.out = out;
+            this.counter = counter;
+            this.emitter = emitter;
+            this.writeCache = writeCache;
+            this.flushPolicy = flushPolicy;
+            this.source = source;
+            this.separator = separator;
+            if (flushPolicy.getMode() == FlushPolicy.Mode.INTERVAL)
+                this.lastFlushNanos = System.nanoTime();
+        }
+
+        // a pooled emitter, with the encoded values of one part of the
+        // list passed to writeAll
+        private class Chunk {
+            private final Buffer buf = new Buffer();
+            private final AbstractEmitter emitter;
+            private final WriteCache cache = new WriteCache(writeCache.isEnabled());
+            private int[] ends = new int[64];
+            private int count;
+
+            Chunk() throws IOException {
+                this.emitter = source.emitter(buf);
+            }
+
+            void encode(List<T> values) throws Exception {
+                buf.reset();
+                count = 0;
+                for (T o : values) {
+                    emitter.emit(o, false, cache.init());
+                    if (separator != 0) {
+                        emitter.flushWriter();
+                        if (count == ends.length)
+                            ends = Arrays.copyOf(ends, count * 2);
+                        ends[count++] = buf.size();
+                    }
+                }
+                emitter.flushWriter();
+            }
+
+            void writeTo(OutputStream target) throws IOException {
+                if (separator == 0) {
+                    buf.writeTo(target);
+                    wroteValue |= buf.size() > 0;
+                    return;
+                }
+                int start = 0;
+                for (int i = 0; i < count; i++) {
+                    if (wroteValue)
+                        target.write(separator);
+                    buf.writeTo(target, start, ends[i]);
+                    wroteValue = true;
+                    start = ends[i];
+                }
+            }
+        }
+
+        private Chunk encode(List<T> values) {
+            try {
+                Chunk c = chunks.poll();
+                if (c == null)
+                    c = new Chunk();
+                c.encode(values);
+                return c;
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void writeAll(List<T> values, Executor executor) {
+            int n = values.size();
+            if (n == 0)
+                return;
+            int size = Math.max(1, n / (CHUNKS_PER_CPU * Runtime.getRuntime().availableProcessors()));
+            List<CompletableFuture<Chunk>> parts = new ArrayList<CompletableFuture<Chunk>>();
+            for (int i = 0; i < n; i += size) {
+                final List<T> part = values.subList(i, Math.min(n, i + size));
+                parts.add(CompletableFuture.supplyAsync(new Supplier<Chunk>() {
+                    @Override
+                    public Chunk get() {
+                        return encode(part);
+                    }
+                }, executor));
+            }
+            try {
+                emitter.flushWriter();
+                for (CompletableFuture<Chunk> part : parts) {
+                    Chunk c = part.join();
+                    c.writeTo(counter);
+                    chunks.offer(c);
+                }
+                unflushedValues += n;
+                if (shouldFlush())
+                    flushOutput();
+            } catch (CompletionException e) {
+                throw new RuntimeException(e.getCause());
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void write(T o) {
+            try {
+                if (separator != 0 && wroteValue)
+                    emitter.emitSeparator(separator);
+                wroteValue = true;
+                emitter.emit(o, false, writeCache.init());
+                unflushedValues++;
+                if (shouldFlush())
+                    flushOutput();
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        @Override
+        public void write(T o, Executor executor) {
+            if (!(emitter instanceof SplicingEmitter)) {
+                write(o);
+                return;
+            }
+            emitter.splitArrays(new ArraySplitter((SplicingEmitter) emitter, source, executor, writeCache.isEnabled()));
+            try {
+                write(o);
+            } finally {
+                emitter.splitArrays(null);
+            }
+        }
+
+        @Override
+        public void reset(OutputStream out) {
+            try {
+                flushOutput();
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+            this.out = out;
+            counter.reset(out);
+            flushedBytes = 0;
+            wroteValue = false;
+        }
+
+        @Override
+        public void flush() {
+            try {
+                flushOutput();
+            } catch (Throwable e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private boolean shouldFlush() {
+            switch (flushPolicy.getMode()) {
+                case EACH_VALUE: return true;
+                case EVERY_N_VALUES: return unflushedValues >= flushPolicy.getThreshold();
+                case EVERY_N_BYTES: return (counter.getCount() + emitter.bufferedBytes() - flushedBytes) >= flushPolicy.getThreshold();
+                case INTERVAL: return (System.nanoTime() - lastFlushNanos) >= flushPolicy.getThreshold();
+                default: return false;
+            }
+        }
+
+        private void flushOutput() throws IOException {
+            emitter.flushWriter();
+            out.flush();
+            unflushedValues = 0;
+            flushedBytes = counter.getCount();
+            if (flushPolicy.getMode() == FlushPolicy.Mode.INTERVAL)
+                lastFlushNanos = System.nanoTime();
+        }
     }
 
     public static WriteHandler defaultDefaultHandler() {
@@ -14,6 +14,7 @@
 
 package com.cognitect.transit;
 
+import com.cognitect.transit.impl.AbstractWriteHandler;
 import com.cognitect.transit.impl.JsonParser;
 import com.cognitect.transit.impl.Tag;
 import com.cognitect.transit.impl.WriteCache;
@@ -31,6 +32,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.net.URISyntaxException;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
 import java.util.*;
 
 public class TransitMPTest extends TestCase {
@@ -471,4 +473,704 @@ public class TransitMPTest extends TestCase {
         assertEquals(Double.NEGATIVE_INFINITY, (Double)r.read());
     }
 
+    public void testWriteEncodedStrings() throws Exception {
+
+        TransitFactory.registerMapKeys("registered");
+        Map m = new HashMap();
+        m.put("registered", TransitFactory.symbol("sym"));
+        List l = new ArrayList();
+        l.add(TransitFactory.keyword("foo"));
+        l.add(TransitFactory.keyword("foo"));
+        l.add(m);
+        l.add(m);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransitFactory.writer(TransitFactory.Format.MSGPACK, out).write(l);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        Packer packer = new MessagePack().createPacker(expected);
+        packer.writeArrayBegin(4);
+        packer.write("~:foo");
+        packer.write("^0");
+        for (int i = 0; i < 2; i++) {
+            packer.writeMapBegin(1);
+            packer.write(i == 0 ? "registered" : "^1");
+            packer.write(i == 0 ? "~$sym" : "^2");
+            packer.writeMapEnd();
+        }
+        packer.writeArrayEnd();
+
+        assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+
+        Reader r = TransitFactory.reader(TransitFactory.Format.MSGPACK, new ByteArrayInputStream(out.toByteArray()));
+        List rl = r.read();
+        assertEquals(TransitFactory.keyword("foo"), rl.get(1));
+        assertEquals(TransitFactory.symbol("sym"), ((Map) rl.get(3)).get("registered"));
+    }
+
+    private byte[] writeMsgpack(TransitFactory.Engine engine, Object o) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransitFactory.writer(TransitFactory.Format.MSGPACK, engine, out, null, null, null, null).write(o);
+        return out.toByteArray();
+    }
+
+    private Object readMsgpack(TransitFactory.Engine engine, byte[] bytes) {
+        ByteArrayInputStream in = new ByteArrayInputStream(bytes);
+        return TransitFactory.reader(TransitFactory.Format.MSGPACK, engine, in, null, null).read();
+    }
+
+    public void testDirectEngine() throws Exception {
+
+        List l = new ArrayList();
+        long[] longs = {0, 1, 127, 128, 255, 256, 65535, 65536, 4294967295L, 4294967296L, Long.MAX_VALUE,
+                        -1, -32, -33, -128, -129, -32768, -32769, -2147483648L, -2147483649L, Long.MIN_VALUE};
+        for (long n : longs)
+            l.add(n);
+        l.add(42);
+        l.add(1.5f);
+        l.add(Math.PI);
+        l.add(true);
+        l.add(false);
+        l.add(null);
+        l.add("");
+        l.add("caf\u00e9 \u20ac \ud83d\ude00 \ud800 lone");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 70000; i++)
+            sb.append((char) ('a' + i % 26));
+        l.add(sb.toString());
+        l.add(sb.substring(0, 40));
+        l.add(TransitFactory.keyword("foo"));
+        l.add(TransitFactory.keyword("foo"));
+        l.add(new Date(946728000000L));
+        l.add(UUID.fromString("5a2cbea3-e8c6-428b-b525-21239370dd55"));
+        Map m = new HashMap();
+        for (int i = 0; i < 20; i++)
+            m.put("key" + i, i);
+        l.add(m);
+        List big = new ArrayList();
+        for (int i = 0; i < 70000; i++)
+            big.add(i % 100);
+        l.add(big);
+
+        byte[] expected = writeMsgpack(TransitFactory.Engine.DEFAULT, l);
+        byte[] direct = writeMsgpack(TransitFactory.Engine.DIRECT, l);
+        assertTrue(Arrays.equals(expected, direct));
+
+        Object o = readMsgpack(TransitFactory.Engine.DEFAULT, expected);
+        assertEquals(o, readMsgpack(TransitFactory.Engine.DIRECT, direct));
+    }
+
+    public void testDirectEngineReadsOtherEncodings() throws Exception {
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Packer packer = new MessagePack().createPacker(out);
+        packer.write(new BigInteger("18446744073709551615"));
+        out.write(new byte[]{(byte) 0xd9, 3, 'f', 'o', 'o'});
+
+        Reader r = TransitFactory.reader(TransitFactory.Format.MSGPACK, TransitFactory.Engine.DIRECT,
+                new ByteArrayInputStream(out.toByteArray()), null, null);
+        assertEquals(new BigInteger("18446744073709551615"), r.read());
+        assertEquals("foo", r.read());
+    }
+
+    public void testWriteReadNative() throws Exception {
+
+        byte[] small = "foobarbaz".getBytes();
+        byte[] medium = new byte[300];
+        byte[] large = new byte[70000];
+        new Random(42).nextBytes(medium);
+        new Random(43).nextBytes(large);
+        UUID uuid = UUID.fromString("5a2cbea3-e8c6-428b-b525-21239370dd55");
+        Map m = new HashMap();
+        m.put(small, "binary key");
+
+        List l = new ArrayList();
+        l.add(small);
+        l.add(medium);
+        l.add(large);
+        l.add(new Date(0));
+        l.add(new Date(1396909037123L));
+        l.add(new Date(-6106017600001L));
+        l.add(new Date(32503680000000L));
+        l.add(uuid);
+        l.add(m);
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransitFactory.writer(TransitFactory.Format.MSGPACK_NATIVE, out).write(l);
+        byte[] bytes = out.toByteArray();
+
+        out = new ByteArrayOutputStream();
+        TransitFactory.writer(TransitFactory.Format.MSGPACK, out).write(l);
+        assertTrue(bytes.length < out.size());
+
+        List rl = TransitFactory.reader(TransitFactory.Format.MSGPACK_NATIVE, new ByteArrayInputStream(bytes)).read();
+        assertTrue(Arrays.equals(small, (byte[]) rl.get(0)));
+        assertTrue(Arrays.equals(medium, (byte[]) rl.get(1)));
+        assertTrue(Arrays.equals(large, (byte[]) rl.get(2)));
+        assertEquals(new Date(0), rl.get(3));
+        assertEquals(new Date(1396909037123L), rl.get(4));
+        assertEquals(new Date(-6106017600001L), rl.get(5));
+        assertEquals(new Date(32503680000000L), rl.get(6));
+        assertEquals(uuid, rl.get(7));
+        Map.Entry e = (Map.Entry) ((Map) rl.get(8)).entrySet().iterator().next();
+        assertTrue(Arrays.equals(small, (byte[]) e.getKey()));
+
+        out = new ByteArrayOutputStream();
+        TransitFactory.writer(TransitFactory.Format.MSGPACK_NATIVE, out).write(Arrays.asList(new Date(1000)));
+        assertTrue(Arrays.equals(new byte[]{(byte) 0x91, (byte) 0xd6, -1, 0, 0, 0, 1}, out.toByteArray()));
+    }
+
+    public void testInstantNeedsCustomHandler() throws Exception {
+
+        Instant i = Instant.ofEpochSecond(1396909037L, 123456789);
+        for (TransitFactory.Format format : TransitFactory.Format.values()) {
+            try {
+                TransitFactory.writer(format, new ByteArrayOutputStream()).write(i);
+                fail();
+            } catch (RuntimeException e) {
+            }
+        }
+
+        Map<Class, WriteHandler<?, ?>> handlers = new HashMap<Class, WriteHandler<?, ?>>();
+        handlers.put(Instant.class, new AbstractWriteHandler<Instant, Long>() {
+            public String tag(Instant o) { return "m"; }
+            public Long rep(Instant o) { return o.toEpochMilli(); }
+        });
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransitFactory.writer(TransitFactory.Format.MSGPACK_NATIVE, out, handlers).write(Arrays.asList(i));
+        // a 64-bit timestamp, whose top 30 bits are the nanoseconds
+        byte[] bytes = out.toByteArray();
+        assertEquals(11, bytes.length);
+        assertEquals((byte) 0xd7, bytes[1]);
+        assertEquals(123456789, java.nio.ByteBuffer.wrap(bytes, 3, 4).getInt() >>> 2);
+        assertEquals(Arrays.asList(new Date(1396909037123L)),
+                TransitFactory.reader(TransitFactory.Format.MSGPACK_NATIVE, new ByteArrayInputStream(bytes)).read());
+    }
+
+    public void testReadNativeWithCustomHandlers() throws Exception {
+
+        Map<String, ReadHandler<?, ?>> handlers = new HashMap<String, ReadHandler<?, ?>>();
+        handlers.put("m", new ReadHandler<Object, Long>() {
+            public Object fromRep(Long rep) { return rep; }
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransitFactory.writer(TransitFactory.Format.MSGPACK_NATIVE, out).write(Arrays.asList("foo".getBytes(), new Date(5)));
+        List l = TransitFactory.reader(TransitFactory.Format.MSGPACK_NATIVE, new ByteArrayInputStream(out.toByteArray()), handlers).read();
+        assertTrue(Arrays.equals("foo".getBytes(), (byte[]) l.get(0)));
+        assertEquals(5L, l.get(1));
+    }
+
+
+    private static class EventLog implements TransitEventHandler {
+
+        StringBuilder sb = new StringBuilder();
+
+        private void log(Object o) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(o);
+        }
+
+        public void onMapStart(int size) { log(size < 0 ? "{" : "{" + size); }
+        public void onKey() { log("k"); }
+        public void onMapEnd() { log("}"); }
+        public void onArrayStart(int size) { log(size < 0 ? "[" : "[" + size); }
+        public void onArrayEnd() { log("]"); }
+        public void onTagged(String tag) { log("#" + tag); }
+        public void onTaggedEnd() { log("#"); }
+        public void onNull() { log("nil"); }
+        public void onBoolean(boolean b) { log(b); }
+        public void onLong(long l) { log("L" + l); }
+        public void onDouble(double d) { log("D" + d); }
+        public void onString(String s) { log("\"" + s); }
+        public void onKeyword(Keyword k) { log(k); }
+        public void onSymbol(Symbol s) { log("'" + s); }
+        public void onValue(Object o) { log("V" + o.getClass().getSimpleName() + "=" + o); }
+
+        public String toString() { return sb.toString(); }
+    }
+
+    private static String readEvents(StreamingReader r) {
+        EventLog log = new EventLog();
+        r.read(log);
+        return log.toString();
+    }
+
+    // maps whose keywords repeat, so most of them are written as cache codes
+    private static List<Object> records(int n) {
+        List<Object> l = new ArrayList<Object>();
+        for (int i = 0; i < n; i++) {
+            Map<Object, Object> m = new HashMap<Object, Object>();
+            m.put(TransitFactory.keyword("id"), (long) i);
+            m.put(TransitFactory.keyword("name"), TransitFactory.keyword("name" + (i % 10)));
+            m.put(TransitFactory.keyword("tags"), new HashSet<Object>(Arrays.asList(TransitFactory.keyword("t" + (i % 3)))));
+            l.add(m);
+        }
+        return l;
+    }
+
+    private static byte[] writeAll(TransitFactory.Format format, List<Object> values) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer<Object> w = TransitFactory.writer(format, out);
+        for (Object o : values)
+            w.write(o);
+        return out.toByteArray();
+    }
+
+    public void testReadEvents() throws Exception {
+
+        Map<Object, Object> m = new LinkedHashMap<Object, Object>();
+        m.put(TransitFactory.keyword("aaaa"), 1L);
+        m.put(TransitFactory.keyword("bbbb"), Arrays.asList("foo", 2.5));
+        UUID uuid = UUID.fromString("b8ec2b29-4e25-4b35-8f3f-f65b1cdf3542");
+        List<Object> l = Arrays.asList(m, m, new Date(1000), uuid, Long.MAX_VALUE, null, false,
+                TransitFactory.link("a", "b", null, null, null));
+
+        String expected = "[8 {2 k :aaaa L1 k :bbbb [2 \"foo D2.5 ] } {2 k :aaaa L1 k :bbbb [2 \"foo D2.5 ] }" +
+                " VDate=" + new Date(1000) + " VUUID=" + uuid + " L" + Long.MAX_VALUE + " nil false" +
+                " #link {2 k \"rel \"b k \"href VURIImpl=a } # ]";
+
+        for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer<Object> w = TransitFactory.writer(TransitFactory.Format.MSGPACK, engine, out, null, null, null, null);
+            w.write(l);
+            w.write(42);
+            w.write(l);
+            for (TransitFactory.Engine readEngine : TransitFactory.Engine.values()) {
+                StreamingReader r = TransitFactory.reader(TransitFactory.Format.MSGPACK, readEngine, new ByteArrayInputStream(out.toByteArray()), null, null);
+                assertEquals(expected, readEvents(r));
+                assertEquals("L42", readEvents(r));
+                assertEquals(expected, readEvents(r));
+            }
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransitFactory.writer(TransitFactory.Format.MSGPACK_NATIVE, out).write(l);
+        StreamingReader r = TransitFactory.streamingReader(TransitFactory.Format.MSGPACK_NATIVE, new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(expected, readEvents(r));
+    }
+
+    public void testTokenReader() throws Exception {
+
+        Keyword skip = TransitFactory.keyword("skip");
+        Keyword inner = TransitFactory.keyword("inner");
+        Keyword x = TransitFactory.keyword("x");
+        Map<Object, Object> m1 = new LinkedHashMap<Object, Object>();
+        m1.put(skip, Collections.singletonMap(inner, Arrays.asList(inner, TransitFactory.symbol("sym"))));
+        m1.put(x, 1L);
+        Map<Object, Object> m2 = new LinkedHashMap<Object, Object>();
+        m2.put(skip, Collections.singletonMap(inner, 2.5));
+        m2.put(x, 2L);
+
+        for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer<Object> w = TransitFactory.writer(TransitFactory.Format.MSGPACK, engine, out, null, null, null, null);
+            w.write(Arrays.asList(m1, m2));
+            w.write(TransitFactory.keyword("last"));
+            for (TransitFactory.Engine readEngine : TransitFactory.Engine.values()) {
+                StreamingReader r = TransitFactory.reader(TransitFactory.Format.MSGPACK, readEngine, new ByteArrayInputStream(out.toByteArray()), null, null);
+                TransitTokenReader tr = r.tokenReader();
+                assertEquals(TransitTokenReader.Token.ARRAY_START, tr.nextToken());
+                assertEquals(2, tr.getSize());
+
+                assertEquals(TransitTokenReader.Token.MAP_START, tr.nextToken());
+                assertEquals(TransitTokenReader.Token.KEY, tr.nextToken());
+                assertEquals(TransitTokenReader.Token.KEYWORD, tr.nextToken());
+                assertEquals(skip, tr.getKeyword());
+                assertEquals(TransitTokenReader.Token.MAP_START, tr.nextToken());
+                tr.skipValue();
+                assertEquals(TransitTokenReader.Token.MAP_END, tr.currentToken());
+                assertEquals(TransitTokenReader.Token.KEY, tr.nextToken());
+                assertEquals(TransitTokenReader.Token.KEYWORD, tr.nextToken());
+                assertEquals(x, tr.getKeyword());
+                assertEquals(TransitTokenReader.Token.LONG, tr.nextToken());
+                assertEquals(1L, tr.getLong());
+                assertEquals(TransitTokenReader.Token.MAP_END, tr.nextToken());
+
+                // the keys of the skipped value are in the cache
+                assertEquals(TransitTokenReader.Token.MAP_START, tr.nextToken());
+                assertEquals(TransitTokenReader.Token.KEY, tr.nextToken());
+                assertEquals(TransitTokenReader.Token.KEYWORD, tr.nextToken());
+                assertEquals(skip, tr.getKeyword());
+                assertEquals(TransitTokenReader.Token.MAP_START, tr.nextToken());
+                assertEquals(TransitTokenReader.Token.KEY, tr.nextToken());
+                assertEquals(TransitTokenReader.Token.KEYWORD, tr.nextToken());
+                assertEquals(inner, tr.getKeyword());
+                assertEquals(TransitTokenReader.Token.DOUBLE, tr.nextToken());
+                assertEquals(2.5, tr.getDouble());
+                assertEquals(TransitTokenReader.Token.MAP_END, tr.nextToken());
+                assertEquals(TransitTokenReader.Token.KEY, tr.nextToken());
+                assertEquals(TransitTokenReader.Token.KEYWORD, tr.nextToken());
+                assertEquals(x, tr.getKeyword());
+                assertEquals(TransitTokenReader.Token.LONG, tr.nextToken());
+                assertEquals(2L, tr.getLong());
+                assertEquals(TransitTokenReader.Token.MAP_END, tr.nextToken());
+                assertEquals(TransitTokenReader.Token.ARRAY_END, tr.nextToken());
+
+                assertEquals(TransitTokenReader.Token.KEYWORD, tr.nextToken());
+                assertEquals(TransitFactory.keyword("last"), tr.getKeyword());
+                assertNull(tr.nextToken());
+            }
+        }
+    }
+
+    public void testIterate() throws Exception {
+
+        List<Object> l = records(3000);
+        for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer<Object> w = TransitFactory.writer(TransitFactory.Format.MSGPACK, engine, out, null, null, null, null);
+            w.write(l);
+            w.write(new ArrayList<Object>());
+            w.write(TransitFactory.keyword("next"));
+            for (TransitFactory.Engine readEngine : TransitFactory.Engine.values()) {
+                StreamingReader r = TransitFactory.reader(TransitFactory.Format.MSGPACK, readEngine, new ByteArrayInputStream(out.toByteArray()), null, null);
+                Iterator<Object> it = r.iterate();
+                for (Object o : l)
+                    assertEquals(o, it.next());
+                assertFalse(it.hasNext());
+                assertFalse(r.iterate().hasNext());
+                assertEquals(TransitFactory.keyword("next"), r.read());
+            }
+        }
+    }
+
+    public void testValueStreams() throws Exception {
+
+        List<Object> l = records(3000);
+        byte[] bytes = writeAll(TransitFactory.Format.MSGPACK, l);
+        for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+            StreamingReader r = TransitFactory.reader(TransitFactory.Format.MSGPACK, engine, new ByteArrayInputStream(bytes), null, null);
+            final List<Object> values = new ArrayList<Object>();
+            r.forEach(new java.util.function.Consumer<Object>() {
+                public void accept(Object o) { values.add(o); }
+            });
+            assertEquals(l, values);
+            assertFalse(r.hasNext());
+
+            r = TransitFactory.reader(TransitFactory.Format.MSGPACK, engine, new ByteArrayInputStream(bytes), null, null);
+            long sum = r.<Map<Keyword, Object>>stream().parallel()
+                    .mapToLong(new java.util.function.ToLongFunction<Map<Keyword, Object>>() {
+                        public long applyAsLong(Map<Keyword, Object> m) { return (Long) m.get(TransitFactory.keyword("id")); }
+                    }).sum();
+            assertEquals(3000L * 2999 / 2, sum);
+
+            assertFalse(TransitFactory.reader(TransitFactory.Format.MSGPACK, engine, new ByteArrayInputStream(new byte[0]), null, null).hasNext());
+        }
+    }
+
+    public void testParallelReader() throws Exception {
+
+        List<Object> l = records(3000);
+        l.add(TransitFactory.keyword("scalar"));
+        l.add(Long.MAX_VALUE);
+        l.add(Collections.singletonMap("big", new byte[70000]).keySet());
+        byte[] bytes = writeAll(TransitFactory.Format.MSGPACK, l);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            assertEquals(l, TransitFactory.parallelReader(TransitFactory.Format.MSGPACK, new ByteArrayInputStream(bytes), null, null, pool, true).readAll());
+            List<Object> values = TransitFactory.parallelReader(TransitFactory.Format.MSGPACK, new ByteArrayInputStream(bytes), null, null, pool, false).readAll();
+            assertEquals(l.size(), values.size());
+            assertEquals(new HashSet<Object>(l), new HashSet<Object>(values));
+            try {
+                TransitFactory.parallelReader(TransitFactory.Format.MSGPACK, new ByteArrayInputStream(Arrays.copyOf(bytes, 5)), null, null, pool, true).readAll();
+                fail();
+            } catch (RuntimeException e) {
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        List<Object> n = Arrays.asList((Object) new Date(1000), UUID.randomUUID(), Arrays.asList(1L, 2.5, "x"));
+        bytes = writeAll(TransitFactory.Format.MSGPACK_NATIVE, n);
+        assertEquals(n, TransitFactory.parallelReader(TransitFactory.Format.MSGPACK_NATIVE, new ByteArrayInputStream(bytes)).readAll());
+    }
+
+    public void testWriteAll() throws Exception {
+
+        List<Object> l = records(3000);
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.MSGPACK, TransitFactory.Format.MSGPACK_NATIVE}) {
+                for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+                    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                    Writer<Object> w = TransitFactory.writer(format, engine, expected, null, null, null, null);
+                    w.write("first");
+                    for (Object o : l)
+                        w.write(o);
+                    w.write("last");
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    w = TransitFactory.writer(format, engine, out, null, null, null, null);
+                    w.write("first");
+                    w.writeAll(l, pool);
+                    w.writeAll(new ArrayList<Object>(), pool);
+                    w.write("last");
+                    assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    // a list long enough to be split, with more cacheable strings than
+    // the cache holds
+    private static List<Object> longList() {
+        List<Object> l = new ArrayList<Object>();
+        for (int i = 0; i < 12000; i++) {
+            switch (i % 4) {
+                case 0: l.add(TransitFactory.keyword("k" + i)); break;
+                case 1: l.add(Collections.singletonMap(TransitFactory.keyword("id"), (long) i)); break;
+                case 2: l.add(Arrays.asList("\u00e9" + i, null, 1L << 60, 2.5, true)); break;
+                default: l.add(new Object[] {"^x", "~y", TransitFactory.keyword("k" + (i - 3))}); break;
+            }
+        }
+        return l;
+    }
+
+    public void testSplitWrite() throws Exception {
+
+        List<Object> l = longList();
+        Object[] values = {l, Collections.singletonMap(TransitFactory.keyword("data"), l.toArray()), Arrays.asList(l, l)};
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.MSGPACK, TransitFactory.Format.MSGPACK_NATIVE}) {
+                for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+                    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                    Writer<Object> w = TransitFactory.writer(format, engine, expected, null, null, null, null);
+                    for (Object o : values)
+                        w.write(o);
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    w = TransitFactory.writer(format, engine, out, null, null, null, null);
+                    for (Object o : values)
+                        w.write(o, pool);
+                    assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testParallelArrayRead() throws Exception {
+
+        List<Object> l = longList();
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.MSGPACK, TransitFactory.Format.MSGPACK_NATIVE}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer<Object> w = TransitFactory.writer(format, out);
+            w.write(l);
+            w.write(Arrays.asList(l.get(0), l.get(1)));
+            w.write(TransitFactory.keyword("last"));
+            byte[] bytes = out.toByteArray();
+
+            Reader r = TransitFactory.reader(format, new ByteArrayInputStream(bytes));
+            java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+            try {
+                ParallelReader pr = TransitFactory.parallelReader(format, new ByteArrayInputStream(bytes), null, null, pool, true);
+                for (int i = 0; i < 3; i++)
+                    assertEquals((Object) r.read(), pr.read());
+                try {
+                    pr.read();
+                    fail();
+                } catch (RuntimeException e) {
+                }
+            } finally {
+                pool.shutdown();
+            }
+        }
+    }
+
+    public void testFramed() throws Exception {
+
+        List<Object> l = records(1000);
+        java.io.File f = java.io.File.createTempFile("transit", ".trf");
+        f.deleteOnExit();
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.MSGPACK, TransitFactory.Format.MSGPACK_NATIVE}) {
+            java.io.FileOutputStream out = new java.io.FileOutputStream(f);
+            FramedWriter<Object> w = TransitFactory.framedWriter(format, out, true);
+            for (Object o : l)
+                w.write(o);
+            w.finish();
+            out.close();
+
+            java.nio.channels.FileChannel ch = new java.io.RandomAccessFile(f, "rw").getChannel();
+            try {
+                FramedReader r = TransitFactory.framedReader(format, ch);
+                assertEquals(1000, r.count());
+                assertEquals(l.get(500), r.read(500));
+                assertEquals(l.get(501), r.next());
+                r.seek(0);
+                for (Object o : l)
+                    assertEquals(o, r.next());
+                assertFalse(r.hasNext());
+
+                // without the footer, records are found by their lengths
+                ch.truncate(r.offset(999) + 3);
+                r = TransitFactory.framedReader(format, ch);
+                assertEquals(999, r.count());
+                assertEquals(l.get(998), r.read(998));
+
+                ch.write(java.nio.ByteBuffer.wrap(new byte[] {(byte) 0xc1}), r.offset(10) + 6);
+                try {
+                    r.read(10);
+                    fail();
+                } catch (RuntimeException e) {
+                }
+            } finally {
+                ch.close();
+            }
+        }
+    }
+
+    public void testTokenReaderIntegers() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Packer packer = new MessagePack().createPacker(out);
+        BigInteger big = BigInteger.ONE.shiftLeft(64).subtract(BigInteger.ONE);
+        packer.write(Arrays.asList(7L, -5L, Long.MAX_VALUE, big));
+
+        StreamingReader r = TransitFactory.streamingReader(TransitFactory.Format.MSGPACK, new ByteArrayInputStream(out.toByteArray()));
+        TransitTokenReader tr = r.tokenReader();
+        assertEquals(TransitTokenReader.Token.ARRAY_START, tr.nextToken());
+        for (long l : new long[] {7L, -5L, Long.MAX_VALUE}) {
+            assertEquals(TransitTokenReader.Token.LONG, tr.nextToken());
+            assertEquals(l, tr.getLong());
+        }
+        // uint64 values above Long.MAX_VALUE are read as BigIntegers
+        assertEquals(TransitTokenReader.Token.VALUE, tr.nextToken());
+        assertEquals(big, tr.getValue());
+        assertEquals(TransitTokenReader.Token.ARRAY_END, tr.nextToken());
+        assertNull(tr.nextToken());
+    }
+
+    public void testFramedRecordsAreWholeValues() throws Exception {
+        List<Object> values = Arrays.asList((Object) Arrays.asList(32L), Arrays.asList(32L, 32L));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FramedWriter<Object> w = TransitFactory.framedWriter(TransitFactory.Format.MSGPACK, out, false);
+        for (Object o : values)
+            w.write(o);
+        w.finish();
+        java.nio.ByteBuffer b = java.nio.ByteBuffer.wrap(out.toByteArray());
+        b.position(5);
+        for (Object o : values) {
+            byte[] record = new byte[b.getInt()];
+            b.get(record);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            TransitFactory.writer(TransitFactory.Format.MSGPACK, expected).write(o);
+            assertTrue(Arrays.equals(expected.toByteArray(), record));
+        }
+    }
+
+    public void testBufferReads() throws Exception {
+
+        List<Object> l = records(100);
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.MSGPACK, TransitFactory.Format.MSGPACK_NATIVE}) {
+            byte[] bytes = writeAll(format, l);
+            java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(bytes.length + 4);
+            direct.put("junk".getBytes());
+            direct.put(bytes);
+            direct.position(4);
+            for (java.nio.ByteBuffer b : new java.nio.ByteBuffer[] {java.nio.ByteBuffer.wrap(bytes), direct}) {
+                int position = b.position();
+                StreamingReader r = TransitFactory.reader(format, b);
+                for (Object o : l)
+                    assertEquals(o, r.read());
+                assertFalse(r.hasNext());
+                assertEquals(position, b.position());
+            }
+        }
+    }
+
+    public void testOneShot() throws Exception {
+
+        List<Object> values = records(3);
+        values.add(Arrays.asList(new UUID(1, 2), new Date(1000), 2.5, "~x"));
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.MSGPACK, TransitFactory.Format.MSGPACK_NATIVE}) {
+            for (int i = 0; i < 3; i++) {
+                for (Object o : values) {
+                    byte[] bytes = TransitFactory.encode(format, o);
+                    assertTrue(Arrays.equals(writeAll(format, Arrays.asList(o)), bytes));
+                    assertEquals(o, TransitFactory.decode(format, bytes));
+                }
+            }
+        }
+    }
+
+    public void testReset() throws Exception {
+
+        List<Object> values = records(3);
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.MSGPACK, TransitFactory.Format.MSGPACK_NATIVE}) {
+            byte[] expected = writeAll(format, values);
+            ByteArrayOutputStream first = new ByteArrayOutputStream();
+            ResettableWriter<Object> w = (ResettableWriter<Object>) TransitFactory.<Object>writer(format, first);
+            w.write(values.get(1));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            w.reset(out);
+            for (Object o : values)
+                w.write(o);
+            assertTrue(Arrays.equals(expected, out.toByteArray()));
+
+            ResettableReader r = (ResettableReader) TransitFactory.reader(format, new ByteArrayInputStream(first.toByteArray()));
+            assertEquals(values.get(1), r.read());
+            r.reset(new ByteArrayInputStream(expected));
+            for (Object o : values)
+                assertEquals(o, r.read());
+        }
+    }
+
+    public void testCodecPool() throws Exception {
+
+        List<Object> values = records(3);
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.MSGPACK, TransitFactory.Format.MSGPACK_NATIVE}) {
+            CodecPool pool = TransitFactory.codecPool(format, 1);
+            for (Object o : values) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ResettableWriter<Object> w = pool.writer(out);
+                w.write(o);
+                pool.release(w);
+                assertTrue(Arrays.equals(writeAll(format, Arrays.asList(o)), out.toByteArray()));
+
+                ResettableReader r = pool.reader(new ByteArrayInputStream(out.toByteArray()));
+                assertEquals(o, r.read());
+                pool.release(r);
+            }
+        }
+    }
+
+    public void testContext() throws Exception {
+
+        Map<Class, WriteHandler<?, ?>> writeHandlers = new HashMap<Class, WriteHandler<?, ?>>();
+        writeHandlers.put(Locale.class, new AbstractWriteHandler<Locale, String>() {
+            @Override
+            public String tag(Locale l) { return "locale"; }
+
+            @Override
+            public String rep(Locale l) { return l.toLanguageTag(); }
+        });
+        Map<String, ReadHandler<?, ?>> readHandlers = new HashMap<String, ReadHandler<?, ?>>();
+        readHandlers.put("locale", new ReadHandler<Locale, String>() {
+            @Override
+            public Locale fromRep(String rep) { return Locale.forLanguageTag(rep); }
+        });
+        List<Object> values = records(3);
+        values.add(Arrays.asList(Locale.CANADA_FRENCH, 2.5, Locale.CANADA_FRENCH));
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.MSGPACK, TransitFactory.Format.MSGPACK_NATIVE}) {
+            TransitContext context = TransitFactory.context(TransitFactory.Engine.DIRECT, writeHandlers, null, readHandlers, null, null);
+            ByteArrayOutputStream expected = new ByteArrayOutputStream();
+            Writer<Object> w = TransitFactory.writer(format, expected, writeHandlers);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer<Object> cw = context.writer(format, out);
+            for (Object o : values) {
+                w.write(o);
+                cw.write(o);
+                assertEquals(o, context.decode(format, context.encode(format, o)));
+            }
+            assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+
+            Reader r = context.reader(format, new ByteArrayInputStream(out.toByteArray()));
+            for (Object o : values)
+                assertEquals(o, r.read());
+        }
+    }
 }
@@ -26,6 +26,7 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.function.Function;
 
 public class TransitTest extends TestCase {
 
@@ -575,6 +576,31 @@ public class TransitTest extends TestCase {
         assertEquals(scalarVerbose("\"~$foo\""), writeJsonVerbose(TransitFactory.symbol("foo")));
     }
 
+    public void testWriteEncodedSymbolsAndKeys() throws Exception {
+
+        List l = new ArrayList();
+        l.add(TransitFactory.symbol("foo/bar"));
+        l.add(TransitFactory.symbol("foo/bar"));
+        assertEquals("[\"~$foo/bar\",\"^0\"]", writeJson(l));
+        assertEquals("[\"~$foo/bar\",\"~$foo/bar\"]", writeJsonVerbose(l));
+
+        TransitFactory.registerMapKeys("registered", "~escaped");
+        Map m = new HashMap();
+        m.put("registered", TransitFactory.keyword("registered"));
+        assertEquals("[\"^ \",\"registered\",\"~:registered\"]", writeJson(m));
+        assertEquals("{\"registered\":\"~:registered\"}", writeJsonVerbose(m));
+
+        m = new HashMap();
+        m.put("~escaped", 1);
+        assertEquals("[\"^ \",\"~~escaped\",1]", writeJson(m));
+        assertEquals("{\"~~escaped\":1}", writeJsonVerbose(m));
+
+        l = new ArrayList();
+        l.add(m);
+        l.add(m);
+        assertEquals("[[\"^ \",\"~~escaped\",1],[\"^ \",\"^0\",1]]", writeJson(l));
+    }
+
     public void testWriteArray() throws Exception {
 
         List l = new ArrayList();
@@ -709,6 +735,27 @@ public class TransitTest extends TestCase {
         assertEquals("^" + (char)(WriteCache.BASE_CHAR_IDX + 3), wc.cacheWrite("abcd", true));
     }
 
+    public void testWriteCacheRollover() {
+
+        WriteCache wc = new WriteCache(true);
+        for (int i = 0; i < WriteCache.MAX_CACHE_ENTRIES; i++)
+            assertEquals("key" + i, wc.cacheWrite("key" + i, true));
+        assertEquals("^" + (char)WriteCache.BASE_CHAR_IDX, wc.cacheWrite("key0", true));
+        String last = wc.cacheWrite("key" + (WriteCache.MAX_CACHE_ENTRIES - 1), true);
+        assertEquals("^" + (char)(WriteCache.BASE_CHAR_IDX + 43) + (char)(WriteCache.BASE_CHAR_IDX + 43), last);
+
+        // a full cache starts over
+        assertEquals("next", wc.cacheWrite("next", true));
+        assertEquals("^" + (char)WriteCache.BASE_CHAR_IDX, wc.cacheWrite("next", true));
+        assertEquals("key0", wc.cacheWrite("key0", true));
+
+        for (int i = 0; i < 10; i++) {
+            wc.init();
+            assertEquals("key0", wc.cacheWrite("key0", true));
+            assertEquals("^" + (char)WriteCache.BASE_CHAR_IDX, wc.cacheWrite("key0", true));
+        }
+    }
+
     public void testWriteCacheDisabled() {
 
         WriteCache wc = new WriteCache(false);
@@ -973,4 +1020,1306 @@ public class TransitTest extends TestCase {
 
     }
 
+
+    public void testWriteHandlerMapResolution() throws Exception {
+        final WriteHandlerMap handlers = new WriteHandlerMap();
+        int size = handlers.size();
+
+        assertSame(handlers.get(List.class), handlers.getHandler(new ArrayList<Object>()));
+        assertSame(handlers.get(Map.class), handlers.getHandler(new TreeMap<Object, Object>()));
+        assertSame(handlers.get(Date.class), handlers.getHandler(new java.sql.Timestamp(0)));
+        assertSame(handlers.get(null), handlers.getHandler(null));
+        assertNull(handlers.getHandler(new Point(1, 2)));
+        assertNull(handlers.getHandler(new Point(3, 4)));
+        // resolved handlers are memoized separately from the registered ones
+        assertEquals(size, handlers.size());
+        assertFalse(handlers.containsKey(ArrayList.class));
+
+        Thread[] threads = new Thread[4];
+        final List<Throwable> errors = Collections.synchronizedList(new ArrayList<Throwable>());
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        for (int j = 0; j < 10000; j++) {
+                            assertSame(handlers.get(List.class), handlers.getHandler(new LinkedList<Object>()));
+                            assertSame(handlers.get(Set.class), handlers.getHandler(new HashSet<Object>()));
+                            assertNull(handlers.getHandler(new StringBuilder()));
+                        }
+                    } catch (Throwable e) {
+                        errors.add(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        assertTrue(errors.isEmpty());
+    }
+
+    // true once GC has cleared any of refs
+    private static boolean anyCollected(List<? extends java.lang.ref.Reference<?>> refs) throws InterruptedException {
+        for (int i = 0; i < 50; i++) {
+            System.gc();
+            for (java.lang.ref.Reference<?> r : refs) {
+                if (r.get() == null)
+                    return true;
+            }
+            Thread.sleep(20);
+        }
+        return false;
+    }
+
+    public void testWriteHandlerMapCollectable() throws Exception {
+        List<java.lang.ref.WeakReference<WriteHandlerMap>> refs = new ArrayList<java.lang.ref.WeakReference<WriteHandlerMap>>();
+        for (int i = 0; i < 100; i++) {
+            WriteHandlerMap handlers = new WriteHandlerMap();
+            // resolves to the map's own MapWriteHandler
+            assertNotNull(handlers.getHandler(new HashMap<Object, Object>()));
+            refs.add(new java.lang.ref.WeakReference<WriteHandlerMap>(handlers));
+        }
+        assertTrue(anyCollected(refs));
+    }
+
+    public void testWriteHandlerMapShared() throws Exception {
+        Map<Class, WriteHandler<?, ?>> customHandlers = new HashMap<Class, WriteHandler<?, ?>>();
+        customHandlers.put(Locale.class, new AbstractWriteHandler<Locale, String>() {
+            @Override
+            public String tag(Locale l) { return "locale"; }
+
+            @Override
+            public String rep(Locale l) { return l.toLanguageTag(); }
+        });
+        WriteHandlerMap handlers = (WriteHandlerMap) TransitFactory.writeHandlerMap(customHandlers);
+        assertSame(handlers.verboseWriteHandlerMap(), handlers.verboseWriteHandlerMap());
+
+        // writers sharing a map must each find map key tags after their
+        // own transform
+        Function<Object, Object> transform = new Function<Object, Object>() {
+            @Override
+            public Object apply(Object o) {
+                return o instanceof Locale ? o.toString() : o;
+            }
+        };
+        Map<Object, Object> m = new HashMap<Object, Object>();
+        m.put(Locale.FRANCE, 1L);
+        for (int i = 0; i < 2; i++) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TransitFactory.writer(TransitFactory.Format.JSON, out, handlers, null, transform).write(m);
+            assertEquals("[\"^ \",\"fr_FR\",1]", out.toString());
+            out = new ByteArrayOutputStream();
+            TransitFactory.writer(TransitFactory.Format.JSON, out, handlers, null, null).write(m);
+            assertEquals("[\"~#cmap\",[[\"~#locale\",\"fr-FR\"],1]]", out.toString());
+        }
+    }
+
+    public void testWriteHandlerMapNotCopiedPerTransform() throws Exception {
+        WriteHandlerMap handlers = (WriteHandlerMap) TransitFactory.writeHandlerMap(null);
+        Map<Object, Object> m = new HashMap<Object, Object>();
+        m.put(Locale.FRANCE, 1L);
+        List<java.lang.ref.WeakReference<Function<Object, Object>>> refs = new ArrayList<java.lang.ref.WeakReference<Function<Object, Object>>>();
+        for (int i = 0; i < 100; i++) {
+            final String suffix = "_" + i;
+            Function<Object, Object> transform = new Function<Object, Object>() {
+                @Override
+                public Object apply(Object o) {
+                    return o instanceof Locale ? o + suffix : o;
+                }
+            };
+            refs.add(new java.lang.ref.WeakReference<Function<Object, Object>>(transform));
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            TransitFactory.writer(TransitFactory.Format.JSON, out, handlers, null, transform).write(m);
+            assertEquals("[\"^ \",\"fr_FR_" + i + "\",1]", out.toString());
+        }
+        // the shared map holds none of the writers' transforms
+        assertNull(handlers.getTagAfterPossibleTransform(Locale.FRANCE));
+        assertTrue(anyCollected(refs));
+    }
+
+    public void testMapKeysClassifiedOnce() {
+        final int[] tagCalls = {0};
+        Map<Class, WriteHandler<?, ?>> customHandlers = new HashMap<Class, WriteHandler<?, ?>>();
+        customHandlers.put(Point.class, new WriteHandler<Point, String>() {
+            @Override
+            public String tag(Point p) { tagCalls[0]++; return "P"; }
+
+            @Override
+            public String rep(Point p) { return p.x + "," + p.y; }
+
+            @Override
+            public String stringRep(Point p) { return rep(p); }
+
+            @Override
+            public <V> WriteHandler<Point, V> getVerboseHandler() { return null; }
+        });
+
+        Map<Object, Object> m = new LinkedHashMap<Object, Object>();
+        for (int i = 0; i < 10; i++)
+            m.put(new Point(i, i), i);
+
+        assertEquals("[\"^ \",\"~P0,0\",0,\"~P1,1\",1]",
+                write(new LinkedHashMap<Object, Object>() {{ put(new Point(0, 0), 0); put(new Point(1, 1), 1); }},
+                        TransitFactory.Format.JSON, customHandlers));
+        tagCalls[0] = 0;
+        write(m, TransitFactory.Format.JSON, customHandlers);
+        // once to classify, once to emit
+        assertEquals(20, tagCalls[0]);
+    }
+
+    public void testStringableKeyClasses() {
+        WriteHandlerMap handlers = new WriteHandlerMap(new HashMap<Class, WriteHandler<?, ?>>() {{
+            put(Point.class, new AbstractWriteHandler<Point, String>() {
+                @Override
+                public String tag(Point p) { return "P"; }
+
+                @Override
+                public String rep(Point p) { return p.x + "," + p.y; }
+            });
+        }});
+        assertEquals(Boolean.TRUE, handlers.stringableKeyClass(TransitFactory.keyword("a")));
+        assertEquals(Boolean.TRUE, handlers.stringableKeyClass(1L));
+        assertEquals(Boolean.FALSE, handlers.stringableKeyClass(Arrays.asList(1L)));
+        // custom handlers, and tagged values, may tag each key differently
+        assertNull(handlers.stringableKeyClass(new Point(1, 2)));
+        assertNull(handlers.stringableKeyClass(TransitFactory.taggedValue("x", "a")));
+
+        Map<Object, Object> m = new LinkedHashMap<Object, Object>();
+        m.put(TransitFactory.taggedValue("x", "a"), 1L);
+        assertEquals("[\"^ \",\"~xa\",1]", writeJson(m));
+        m.put(TransitFactory.taggedValue("xyz", "a"), 2L);
+        assertEquals("[\"~#cmap\",[\"~xa\",1,[\"~#xyz\",\"a\"],2]]", writeJson(m));
+    }
+
+    public void testMapWriteHandlerSubclass() {
+        Map<Class, WriteHandler<?, ?>> customHandlers = new HashMap<Class, WriteHandler<?, ?>>();
+        customHandlers.put(TreeMap.class, new WriteHandlers.MapWriteHandler() {
+            @Override
+            public String tag(Map<Object, Object> o) { return "sorted"; }
+
+            @Override
+            public Object rep(Map<Object, Object> o) { return new ArrayList<Object>(o.keySet()); }
+        });
+        Map<Object, Object> m = new TreeMap<Object, Object>();
+        m.put(2L, "b");
+        m.put(1L, "a");
+        assertEquals("[\"~#sorted\",[1,2]]", write(m, TransitFactory.Format.JSON, customHandlers));
+        assertEquals("[[\"~#sorted\",[1,2]]]", write(Arrays.asList(m), TransitFactory.Format.JSON, customHandlers));
+    }
+
+    public void testWriteCmapFromEntries() {
+        Map<Object, Object> m = new LinkedHashMap<Object, Object>();
+        m.put(Arrays.asList(1L, 2L), "a");
+        m.put(Arrays.asList(3L), "b");
+        String s = writeJson(m);
+        assertEquals("[\"~#cmap\",[[1,2],\"a\",[3],\"b\"]]", s);
+        assertEquals(m, reader(s).read());
+
+        Object rep = new WriteHandlers.MapWriteHandler().cmapRep(m);
+        assertEquals(Arrays.asList(Arrays.asList(1L, 2L), "a", Arrays.asList(3L), "b"),
+                new ArrayList<Object>((Collection<?>) ((TaggedValue<?>) rep).getRep()));
+    }
+
+    private Object readDirect(String s, TransitFactory.Format format) {
+        InputStream in = new ByteArrayInputStream(s.getBytes(java.nio.charset.StandardCharsets.UTF_8));
+        return TransitFactory.reader(format, TransitFactory.Engine.DIRECT, in, null, null).read();
+    }
+
+    public void testDirectJsonEngine() throws Exception {
+
+        List l = new ArrayList();
+        l.add("plain");
+        l.add("");
+        l.add("~tilde");
+        l.add("^caret");
+        l.add("`tick");
+        l.add("quote \" backslash \\ newline \n tab \t control \u0001");
+        l.add("caf\u00e9 \u20ac \ud83d\ude00");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            sb.append((char) ('a' + i % 26));
+        l.add(sb.toString());
+        l.add(0L);
+        l.add(-42L);
+        l.add(Long.MAX_VALUE);
+        l.add(Long.MIN_VALUE);
+        l.add(new BigInteger("123456789012345678901234567890"));
+        l.add(1.5);
+        l.add(-2.5e-10);
+        l.add(Double.NaN);
+        l.add(true);
+        l.add(false);
+        l.add(null);
+        l.add(new Date(1396909037123L));
+        l.add(UUID.fromString("5a2cbea3-e8c6-428b-b525-21239370dd55"));
+        l.add(TransitFactory.taggedValue("point", Arrays.asList(1L, 2L)));
+        l.add(new ArrayList());
+        l.add(new HashMap());
+        l.add(new HashSet(Arrays.asList(1L, 2L)));
+        for (int i = 0; i < 3; i++) {
+            Map m = new HashMap();
+            m.put(TransitFactory.keyword("key" + (i % 2)), TransitFactory.symbol("sym/bol"));
+            m.put("long string key", "~:not a keyword");
+            m.put("quoted \"key\"", sb.substring(0, 5));
+            l.add(m);
+        }
+        Map cmap = new HashMap();
+        cmap.put(Arrays.asList(1L, 2L), "cmap");
+        l.add(cmap);
+        l.add(TransitFactory.keyword("key0"));
+
+        for (TransitFactory.Format format : new TransitFactory.Format[]{TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer w = TransitFactory.writer(format, out);
+            w.write(l);
+            w.write("second");
+            String s = out.toString("UTF-8");
+
+            Reader r = TransitFactory.reader(format, TransitFactory.Engine.DIRECT,
+                    new ByteArrayInputStream(out.toByteArray()), null, null);
+            List expected = TransitFactory.reader(format, new ByteArrayInputStream(out.toByteArray())).read();
+            List actual = r.read();
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) {
+                if (expected.get(i) instanceof Double && ((Double) expected.get(i)).isNaN())
+                    assertTrue(((Double) actual.get(i)).isNaN());
+                else
+                    assertEquals(s, expected.get(i), actual.get(i));
+            }
+            assertEquals("second", r.read());
+            try {
+                r.read();
+                fail();
+            } catch (RuntimeException e) {
+                assertTrue(e.getCause() instanceof EOFException);
+            }
+        }
+
+        assertEquals("foo", ((Tag) readDirect("\"~#foo\"", TransitFactory.Format.JSON)).getValue());
+        assertEquals(Arrays.asList("~foo"), readDirect(" [ \"\\u007e~foo\" ] ", TransitFactory.Format.JSON));
+        assertEquals(Arrays.asList(TransitFactory.keyword("foo")), readDirect("[\"\\u007e:foo\"]", TransitFactory.Format.JSON));
+    }
+
+    private static class CharsHandler implements ReadHandler<Object, String>, CharSequenceReadHandler<Object> {
+        int windows;
+
+        @Override
+        public Object fromRep(String rep) {
+            return "string:" + rep;
+        }
+
+        @Override
+        public Object fromChars(CharSequence rep) {
+            windows++;
+            return "chars:" + rep;
+        }
+    }
+
+    public void testReadFromCharWindows() throws Exception {
+
+        String json = "[\"~:foo/bar\",\"~:baz\",\"~$ns/sym\",\"~$/\",\"~i-42\",\"~i1234567890123456789\"," +
+                "\"~u5a2cbea3-e8c6-428b-b525-21239370dd55\",\"~u5A2CBEA3-E8C6-428B-B525-21239370DD55\"," +
+                "\"~m1396909037123\",\"~?t\",\"~?f\",\"~cx\",\"~xwindow\",\"~#tag\",\"^2\"]";
+        List expected = Arrays.asList(TransitFactory.keyword("foo/bar"), TransitFactory.keyword("baz"),
+                TransitFactory.symbol("ns/sym"), TransitFactory.symbol("/"), -42L, 1234567890123456789L,
+                UUID.fromString("5a2cbea3-e8c6-428b-b525-21239370dd55"), UUID.fromString("5a2cbea3-e8c6-428b-b525-21239370dd55"),
+                new Date(1396909037123L), true, false, 'x', "chars:window", null, TransitFactory.symbol("ns/sym"));
+
+        for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+            CharsHandler handler = new CharsHandler();
+            Map<String, ReadHandler<?, ?>> handlers = new HashMap<String, ReadHandler<?, ?>>();
+            handlers.put("x", handler);
+            List l = TransitFactory.reader(TransitFactory.Format.JSON, engine,
+                    new ByteArrayInputStream(json.getBytes()), handlers, null).read();
+            assertEquals(expected.size(), l.size());
+            for (int i = 0; i < l.size(); i++) {
+                if (i == 13)
+                    assertEquals("tag", ((Tag) l.get(i)).getValue());
+                else
+                    assertEquals(expected.get(i), l.get(i));
+            }
+            assertEquals(1, handler.windows);
+            assertEquals("foo", ((Keyword) l.get(0)).getNamespace());
+            assertEquals("bar", ((Keyword) l.get(0)).getName());
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        TransitFactory.writer(TransitFactory.Format.MSGPACK, out).write(Arrays.asList("~xwindow"));
+        Map<String, ReadHandler<?, ?>> handlers = new HashMap<String, ReadHandler<?, ?>>();
+        handlers.put("x", new CharsHandler());
+        assertEquals(Arrays.asList("~xwindow"), TransitFactory.reader(TransitFactory.Format.MSGPACK,
+                new ByteArrayInputStream(out.toByteArray()), handlers).read());
+    }
+
+    public void testCanonicalKeywordsAndSymbols() throws Exception {
+
+        assertSame(TransitFactory.keyword("user/id"), TransitFactory.keyword(":user/id"));
+        assertSame(TransitFactory.symbol("user/id"), TransitFactory.symbol("user/id"));
+        assertNotSame((Object) TransitFactory.keyword("user/id"), TransitFactory.symbol("user/id"));
+
+        String json = "[\"~:user/id\",\"~$user/id\",[\"^ \",\"~:user/id\",1]]";
+        for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+            for (int i = 0; i < 2; i++) {
+                List l = TransitFactory.reader(TransitFactory.Format.JSON, engine,
+                        new ByteArrayInputStream(json.getBytes()), null, null).read();
+                assertSame(TransitFactory.keyword("user/id"), l.get(0));
+                assertSame(TransitFactory.symbol("user/id"), l.get(1));
+                assertSame(l.get(0), ((Map) l.get(2)).keySet().iterator().next());
+            }
+        }
+
+        final Keyword[] results = new Keyword[8];
+        Thread[] threads = new Thread[results.length];
+        for (int i = 0; i < threads.length; i++) {
+            final int n = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    results[n] = TransitFactory.keyword("concurrent/key");
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        for (Keyword k : results)
+            assertSame(results[0], k);
+        assertEquals(TransitFactory.keyword("concurrent/key").hashCode(), new KeywordImpl("concurrent/key").hashCode());
+        assertEquals(TransitFactory.keyword("concurrent/key"), new KeywordImpl("concurrent/key"));
+    }
+
+    public void testCanonicalTableCharLookup() throws Exception {
+        final int[] created = new int[1];
+        CanonicalTable<KeywordImpl> table = new CanonicalTable<KeywordImpl>(new java.util.function.Function<String, KeywordImpl>() {
+            @Override
+            public KeywordImpl apply(String s) {
+                created[0]++;
+                return new KeywordImpl(s);
+            }
+        });
+        KeywordImpl k = table.get("user/id");
+        assertSame(k, table.get(new StringBuilder("~:user/id!"), 2, 9));
+        assertSame(k, table.get("x user/id", 2, 9));
+        assertEquals(1, created[0]);
+
+        // grows past its initial capacity, and drops collected instances
+        List<KeywordImpl> held = new ArrayList<KeywordImpl>();
+        for (int i = 0; i < 5000; i++)
+            held.add(table.get("key" + i));
+        for (int i = 0; i < 5000; i++)
+            assertSame(held.get(i), table.get(new StringBuilder("key" + i), 0, 3 + Integer.toString(i).length()));
+        assertEquals(5001, table.size());
+        held.clear();
+        for (int i = 0; i < 50 && table.size() > 1; i++) {
+            System.gc();
+            Thread.sleep(20);
+        }
+        assertTrue(table.size() < 5001);
+        assertSame(k, table.get("user/id"));
+    }
+
+    private static class CountingReadHandler implements ReadHandler<Object, String> {
+        int calls;
+
+        @Override
+        public Object fromRep(String rep) {
+            calls++;
+            return "decoded:" + rep;
+        }
+    }
+
+    private static class PureCountingReadHandler extends CountingReadHandler implements PureReadHandler {
+    }
+
+    public void testDecodeMemo() throws Exception {
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 10; i++)
+            sb.append("[\"~pkey\",\"~xkey\",\"~:user/id\",[\"^ \",\"~pa\",\"~pb\"]] ");
+
+        for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+            for (int memoSize : new int[]{0, 1, 64}) {
+                PureCountingReadHandler pure = new PureCountingReadHandler();
+                CountingReadHandler impure = new CountingReadHandler();
+                Map<String, ReadHandler<?, ?>> handlers = new HashMap<String, ReadHandler<?, ?>>();
+                handlers.put("p", pure);
+                handlers.put("x", impure);
+                Reader r = TransitFactory.reader(TransitFactory.Format.JSON, engine,
+                        new ByteArrayInputStream(sb.toString().getBytes()), handlers, null, memoSize);
+                for (int i = 0; i < 10; i++) {
+                    List l = r.read();
+                    assertEquals("decoded:key", l.get(0));
+                    assertEquals("decoded:key", l.get(1));
+                    assertSame(TransitFactory.keyword("user/id"), l.get(2));
+                    Map m = (Map) l.get(3);
+                    assertEquals("decoded:b", m.get("decoded:a"));
+                }
+                assertEquals(10, impure.calls);
+                if (memoSize == 64)
+                    assertEquals(3, pure.calls);
+                else if (memoSize == 0)
+                    assertEquals(30, pure.calls);
+                else
+                    assertTrue(pure.calls <= 30);
+            }
+        }
+    }
+
+    private static class EventLog implements TransitEventHandler {
+
+        StringBuilder sb = new StringBuilder();
+
+        private void log(Object o) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(o);
+        }
+
+        public void onMapStart(int size) { log(size < 0 ? "{" : "{" + size); }
+        public void onKey() { log("k"); }
+        public void onMapEnd() { log("}"); }
+        public void onArrayStart(int size) { log(size < 0 ? "[" : "[" + size); }
+        public void onArrayEnd() { log("]"); }
+        public void onTagged(String tag) { log("#" + tag); }
+        public void onTaggedEnd() { log("#"); }
+        public void onNull() { log("nil"); }
+        public void onBoolean(boolean b) { log(b); }
+        public void onLong(long l) { log("L" + l); }
+        public void onDouble(double d) { log("D" + d); }
+        public void onString(String s) { log("\"" + s); }
+        public void onKeyword(Keyword k) { log(k); }
+        public void onSymbol(Symbol s) { log("'" + s); }
+        public void onValue(Object o) { log("V" + o.getClass().getSimpleName() + "=" + o); }
+
+        public String toString() { return sb.toString(); }
+    }
+
+    private static String readEvents(StreamingReader r) {
+        EventLog log = new EventLog();
+        r.read(log);
+        return log.toString();
+    }
+
+    public void testReadEvents() throws Exception {
+
+        Map<Object, Object> m1 = new LinkedHashMap<Object, Object>();
+        m1.put(TransitFactory.keyword("aaaa"), 1L);
+        m1.put(TransitFactory.keyword("bbbb"), "foo");
+        Map<Object, Object> m2 = new LinkedHashMap<Object, Object>();
+        m2.put(TransitFactory.keyword("aaaa"), 2L);
+        m2.put(TransitFactory.keyword("bbbb"), "~bar");
+        Map<Object, Object> m3 = new LinkedHashMap<Object, Object>();
+        m3.put("cccc", Arrays.asList());
+        m3.put(1L, new HashMap());
+        UUID uuid = UUID.fromString("b8ec2b29-4e25-4b35-8f3f-f65b1cdf3542");
+        BigInteger big = new BigInteger("123456789012345678901234567890");
+        List<Object> l = Arrays.asList(m1, m2, m3, new HashSet<Object>(Arrays.asList(1L)), uuid, 2.5, big,
+                null, true, TransitFactory.symbol("sym"), TransitFactory.keyword("aaaa"), "^ ");
+
+        String expected = "[ { k :aaaa L1 k :bbbb \"foo } { k :aaaa L2 k :bbbb \"~bar }" +
+                " { k \"cccc [ ] k L1 { } } #set [ L1 ] # VUUID=" + uuid + " D2.5 VBigInteger=" + big +
+                " nil true 'sym :aaaa \"^  ]";
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer<Object> w = TransitFactory.writer(format, out);
+            w.write(l);
+            w.write(TransitFactory.keyword("quoted"));
+            w.write(l);
+            for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+                StreamingReader r = TransitFactory.reader(format, engine, new ByteArrayInputStream(out.toByteArray()), null, null);
+                assertEquals(expected, readEvents(r));
+                assertEquals(":quoted", readEvents(r));
+                assertEquals(expected, readEvents(r));
+            }
+        }
+
+        // events and reads can be mixed on one reader
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Writer<Object> w = TransitFactory.writer(TransitFactory.Format.JSON, out);
+        w.write(l);
+        w.write(l);
+        StreamingReader r = TransitFactory.streamingReader(TransitFactory.Format.JSON, new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(expected, readEvents(r));
+        List<Object> rl = r.read();
+        assertEquals(m2, rl.get(1));
+    }
+
+    private static List<Object> tokenReaderData() {
+        Keyword skip = TransitFactory.keyword("skip");
+        Keyword inner = TransitFactory.keyword("inner");
+        Keyword x = TransitFactory.keyword("x");
+        Map<Object, Object> m1 = new LinkedHashMap<Object, Object>();
+        m1.put(skip, Collections.singletonMap(inner, Arrays.asList(inner, TransitFactory.symbol("sym"))));
+        m1.put(x, 1L);
+        Map<Object, Object> m2 = new LinkedHashMap<Object, Object>();
+        m2.put(skip, Collections.singletonMap(inner, 2.5));
+        m2.put(x, 2L);
+        return Arrays.asList(m1, m2, new HashSet<Object>(Arrays.asList("aaaa")));
+    }
+
+    // walks tokenReaderData, skipping the first :skip value
+    private static void assertTokens(TransitTokenReader tr) {
+        Keyword skip = TransitFactory.keyword("skip");
+        Keyword inner = TransitFactory.keyword("inner");
+        Keyword x = TransitFactory.keyword("x");
+
+        assertEquals(TransitTokenReader.Token.ARRAY_START, tr.nextToken());
+        long sum = 0;
+        for (int i = 0; i < 2; i++) {
+            assertEquals(TransitTokenReader.Token.MAP_START, tr.nextToken());
+            while (tr.nextToken() == TransitTokenReader.Token.KEY) {
+                assertEquals(TransitTokenReader.Token.KEYWORD, tr.nextToken());
+                Keyword k = tr.getKeyword();
+                if (k.equals(x)) {
+                    tr.nextToken();
+                    sum += tr.getLong();
+                } else if (i == 0) {
+                    assertEquals(skip, k);
+                    assertEquals(TransitTokenReader.Token.MAP_START, tr.nextToken());
+                    tr.skipValue();
+                    assertEquals(TransitTokenReader.Token.MAP_END, tr.currentToken());
+                } else {
+                    // the keys of the skipped value are in the cache
+                    assertEquals(TransitTokenReader.Token.MAP_START, tr.nextToken());
+                    assertEquals(TransitTokenReader.Token.KEY, tr.nextToken());
+                    assertEquals(TransitTokenReader.Token.KEYWORD, tr.nextToken());
+                    assertEquals(inner, tr.getKeyword());
+                    assertEquals(TransitTokenReader.Token.DOUBLE, tr.nextToken());
+                    assertEquals(2.5, tr.getDouble());
+                    assertEquals(2.5, tr.getValue());
+                    assertEquals(TransitTokenReader.Token.MAP_END, tr.nextToken());
+                }
+            }
+            assertEquals(TransitTokenReader.Token.MAP_END, tr.currentToken());
+        }
+        assertEquals(3, sum);
+
+        assertEquals(TransitTokenReader.Token.TAGGED_START, tr.nextToken());
+        assertEquals("set", tr.currentTag());
+        assertEquals(TransitTokenReader.Token.ARRAY_START, tr.nextToken());
+        assertEquals(TransitTokenReader.Token.STRING, tr.nextToken());
+        assertEquals("aaaa", tr.getString());
+        assertEquals("set", tr.currentTag());
+        assertEquals(TransitTokenReader.Token.ARRAY_END, tr.nextToken());
+        assertEquals(TransitTokenReader.Token.TAGGED_END, tr.nextToken());
+        assertNull(tr.currentTag());
+        assertEquals(TransitTokenReader.Token.ARRAY_END, tr.nextToken());
+    }
+
+    public void testTokenReader() throws Exception {
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer<Object> w = TransitFactory.writer(format, out);
+            w.write(tokenReaderData());
+            w.write(tokenReaderData());
+            w.write(TransitFactory.keyword("last"));
+            for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+                StreamingReader r = TransitFactory.reader(format, engine, new ByteArrayInputStream(out.toByteArray()), null, null);
+                TransitTokenReader tr = r.tokenReader();
+                assertTokens(tr);
+                assertEquals(TransitTokenReader.Token.ARRAY_START, tr.nextToken());
+                tr.skipValue();
+                assertEquals(TransitTokenReader.Token.ARRAY_END, tr.currentToken());
+                assertEquals(TransitTokenReader.Token.KEYWORD, tr.nextToken());
+                assertEquals(TransitFactory.keyword("last"), tr.getKeyword());
+                assertNull(tr.nextToken());
+                try {
+                    tr.getLong();
+                    fail();
+                } catch (IllegalStateException e) {
+                }
+            }
+        }
+    }
+
+    public void testSingleCharTagCompositeRep() throws Exception {
+
+        String s = "[\"~#p\",[\"^ \",\"~:abcd\",[\"~#q\",[\"^0\",2]]]]";
+        Keyword a = TransitFactory.keyword("abcd");
+
+        for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+            StreamingReader r = TransitFactory.reader(TransitFactory.Format.JSON, engine,
+                    new ByteArrayInputStream((s + " " + s + " " + s).getBytes()), null, null);
+
+            TaggedValue tv = r.read();
+            assertEquals("p", tv.getTag());
+            TaggedValue inner = (TaggedValue) ((Map) tv.getRep()).get(a);
+            assertEquals("q", inner.getTag());
+            assertEquals(Arrays.asList(a, 2L), inner.getRep());
+
+            assertEquals("#p { k :abcd #q [ :abcd L2 ] # } #", readEvents(r));
+
+            TransitTokenReader tr = r.tokenReader();
+            assertEquals(TransitTokenReader.Token.TAGGED_START, tr.nextToken());
+            assertEquals("p", tr.currentTag());
+            assertEquals(TransitTokenReader.Token.MAP_START, tr.nextToken());
+            assertEquals(TransitTokenReader.Token.KEY, tr.nextToken());
+            assertEquals(TransitTokenReader.Token.KEYWORD, tr.nextToken());
+            assertEquals(a, tr.getKeyword());
+            assertEquals(TransitTokenReader.Token.TAGGED_START, tr.nextToken());
+            assertEquals("q", tr.currentTag());
+            tr.skipValue();
+            assertEquals(TransitTokenReader.Token.TAGGED_END, tr.currentToken());
+            assertEquals(TransitTokenReader.Token.MAP_END, tr.nextToken());
+            assertEquals(TransitTokenReader.Token.TAGGED_END, tr.nextToken());
+            assertNull(tr.nextToken());
+        }
+    }
+
+    private static List<Object> iterateData() {
+        List<Object> l = new ArrayList<Object>();
+        for (int i = 0; i < 3000; i++) {
+            Map<Object, Object> m = new HashMap<Object, Object>();
+            m.put(TransitFactory.keyword("id"), (long) i);
+            m.put(TransitFactory.keyword("name"), TransitFactory.keyword("name" + (i % 10)));
+            m.put(TransitFactory.keyword("tags"), new HashSet<Object>(Arrays.asList(TransitFactory.keyword("t" + (i % 3)))));
+            l.add(m);
+        }
+        return l;
+    }
+
+    public void testIterate() throws Exception {
+
+        List<Object> l = iterateData();
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer<Object> w = TransitFactory.writer(format, out);
+            w.write(l);
+            w.write(new ArrayList<Object>());
+            w.write(TransitFactory.keyword("next"));
+            w.write(Collections.singletonMap("a", 1));
+            for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+                StreamingReader r = TransitFactory.reader(format, engine, new ByteArrayInputStream(out.toByteArray()), null, null);
+                Iterator<Object> it = r.iterate();
+                for (Object o : l) {
+                    assertTrue(it.hasNext());
+                    assertEquals(o, it.next());
+                }
+                assertFalse(it.hasNext());
+                assertFalse(r.iterate().hasNext());
+                assertEquals(TransitFactory.keyword("next"), r.read());
+                if (format == TransitFactory.Format.JSON) {
+                    try {
+                        r.iterate().next();
+                        fail();
+                    } catch (IllegalStateException e) {
+                    }
+                }
+            }
+        }
+    }
+
+    private static void assertValueStreams(byte[] bytes, TransitFactory.Format format, TransitFactory.Engine engine, int count) {
+        StreamingReader r = TransitFactory.reader(format, engine, new ByteArrayInputStream(bytes), null, null);
+        final List<Object> values = new ArrayList<Object>();
+        r.forEach(new java.util.function.Consumer<Object>() {
+            public void accept(Object o) { values.add(o); }
+        });
+        assertEquals(count, values.size());
+        assertFalse(r.hasNext());
+        assertEquals(values, iterateData().subList(0, count));
+
+        r = TransitFactory.reader(format, engine, new ByteArrayInputStream(bytes), null, null);
+        Spliterator<Map<Keyword, Object>> sp = r.spliterator(10);
+        final long[] n = new long[1];
+        assertEquals(10, sp.trySplit().getExactSizeIfKnown());
+        while (sp.tryAdvance(new java.util.function.Consumer<Map<Keyword, Object>>() {
+            public void accept(Map<Keyword, Object> m) { n[0]++; }
+        }));
+        assertEquals(count - 10, n[0]);
+
+        r = TransitFactory.reader(format, engine, new ByteArrayInputStream(bytes), null, null);
+        long sum = r.<Map<Keyword, Object>>stream().parallel()
+                .mapToLong(new java.util.function.ToLongFunction<Map<Keyword, Object>>() {
+                    public long applyAsLong(Map<Keyword, Object> m) { return (Long) m.get(TransitFactory.keyword("id")); }
+                }).sum();
+        assertEquals((long) count * (count - 1) / 2, sum);
+    }
+
+    public void testValueStreams() throws Exception {
+
+        List<Object> l = iterateData();
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer<Object> w = TransitFactory.writer(format, out);
+            for (Object o : l)
+                w.write(o);
+            for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+                assertValueStreams(out.toByteArray(), format, engine, l.size());
+                assertFalse(TransitFactory.reader(format, engine, new ByteArrayInputStream(new byte[0]), null, null).hasNext());
+                assertFalse(TransitFactory.reader(format, engine, new ByteArrayInputStream(" \n".getBytes()), null, null).hasNext());
+            }
+        }
+    }
+
+    private static void assertParallelReads(byte[] bytes, TransitFactory.Format format, List<Object> expected) {
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+        try {
+            List<Object> values = TransitFactory.parallelReader(format, new ByteArrayInputStream(bytes), null, null, pool, true).readAll();
+            assertEquals(expected, values);
+            values = TransitFactory.parallelReader(format, new ByteArrayInputStream(bytes), null, null, pool, false).readAll();
+            assertEquals(expected.size(), values.size());
+            assertEquals(new HashSet<Object>(expected), new HashSet<Object>(values));
+            try {
+                TransitFactory.parallelReader(format, new ByteArrayInputStream(Arrays.copyOf(bytes, 5)), null, null, pool, true).readAll();
+                fail();
+            } catch (RuntimeException e) {
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testParallelReader() throws Exception {
+
+        List<Object> l = new ArrayList<Object>(iterateData());
+        l.add(TransitFactory.keyword("scalar"));
+        l.add("a string with \" and ] in it");
+        l.add(42L);
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            Writer<Object> w = TransitFactory.writer(format, out);
+            for (Object o : l) {
+                w.write(o);
+                out.write('\n');
+            }
+            assertParallelReads(out.toByteArray(), format, l);
+        }
+
+        assertEquals(Arrays.asList(1L, "two", Arrays.asList(3L)),
+                TransitFactory.parallelReader(TransitFactory.Format.JSON,
+                        new ByteArrayInputStream("1 \"two\"\n[3]  ".getBytes())).readAll());
+    }
+
+    public void testParallelReaderCancelsUnorderedBatches() throws Exception {
+        // four batches of 256 values are in flight on two threads; each
+        // but the first holds its thread, so at least one is still queued
+        // when the action fails, and must then never be decoded
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 4 * 256; i++)
+            sb.append("[\"~#'\",\"~x").append(i).append("\"] ");
+        final java.util.concurrent.CountDownLatch release = new java.util.concurrent.CountDownLatch(1);
+        final java.util.concurrent.atomic.AtomicInteger decoded = new java.util.concurrent.atomic.AtomicInteger();
+        Map<String, ReadHandler<?, ?>> handlers = new HashMap<String, ReadHandler<?, ?>>();
+        handlers.put("x", new ReadHandler<Object, String>() {
+            @Override
+            public Object fromRep(String rep) {
+                int n = Integer.parseInt(rep);
+                if (n > 0 && n % 256 == 0) {
+                    try {
+                        release.await(10, java.util.concurrent.TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                decoded.incrementAndGet();
+                return n;
+            }
+        });
+        java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(2);
+        try {
+            ParallelReader pr = TransitFactory.parallelReader(TransitFactory.Format.JSON,
+                    new ByteArrayInputStream(sb.toString().getBytes()), handlers, null, pool, false);
+            try {
+                pr.forEach(new java.util.function.Consumer<Object>() {
+                    @Override
+                    public void accept(Object o) {
+                        throw new IllegalStateException("stop");
+                    }
+                });
+                fail();
+            } catch (RuntimeException e) {
+            }
+            release.countDown();
+            pool.shutdown();
+            assertTrue(pool.awaitTermination(10, java.util.concurrent.TimeUnit.SECONDS));
+            assertTrue(decoded.get() <= 3 * 256);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    public void testParallelReaderRead() throws Exception {
+
+        ParallelReader pr = TransitFactory.parallelReader(TransitFactory.Format.JSON,
+                new ByteArrayInputStream("[\"~:abc\",\"^0\"] 42 \"x\"".getBytes()));
+        assertEquals(Arrays.asList(TransitFactory.keyword("abc"), TransitFactory.keyword("abc")), pr.read());
+        assertEquals(42L, (long) (Long) pr.read());
+        assertEquals("x", pr.read());
+        try {
+            pr.read();
+            fail();
+        } catch (RuntimeException e) {
+        }
+    }
+
+    public void testFramed() throws Exception {
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            List<Object> l = iterateData().subList(0, 1000);
+            File f = File.createTempFile("transit", ".trf");
+            f.deleteOnExit();
+            for (boolean checksums : new boolean[] {true, false}) {
+                FileOutputStream out = new FileOutputStream(f);
+                FramedWriter<Object> w = TransitFactory.framedWriter(format, out, checksums);
+                for (Object o : l)
+                    w.write(o);
+                w.finish();
+                out.close();
+
+                java.nio.channels.FileChannel ch = new RandomAccessFile(f, "rw").getChannel();
+                try {
+                    FramedReader r = TransitFactory.framedReader(format, ch);
+                    assertEquals(1000, r.count());
+                    assertEquals(l.get(500), r.read(500));
+                    assertEquals(l.get(501), r.next());
+                    r.seek(0);
+                    for (Object o : l)
+                        assertEquals(o, r.next());
+                    assertFalse(r.hasNext());
+                    assertTrue(r.offset(999) > r.offset(998));
+
+                    // a partly written footer is not taken for records
+                    long index = ch.size() - 1000 * 8 - 20;
+                    for (long cut : new long[] {index + 8 * 1000 + 10, index + 8 * 500 + 3, index + 4}) {
+                        ch.truncate(cut);
+                        r = TransitFactory.framedReader(format, ch);
+                        assertEquals(1000, r.count());
+                        assertEquals(l.get(999), r.read(999));
+                    }
+
+                    // without the footer, records are found by their lengths
+                    ch.truncate(r.offset(999) + 3);
+                    r = TransitFactory.framedReader(format, ch);
+                    assertEquals(999, r.count());
+                    assertEquals(l.get(998), r.read(998));
+
+                    if (checksums) {
+                        ch.write(java.nio.ByteBuffer.wrap(new byte[] {'?'}), r.offset(10) + 6);
+                        try {
+                            r.read(10);
+                            fail();
+                        } catch (RuntimeException e) {
+                        }
+                        // a scan stops at the first corrupt record
+                        r = TransitFactory.framedReader(format, ch);
+                        assertEquals(10, r.count());
+                    }
+                } finally {
+                    ch.close();
+                }
+            }
+        }
+
+        File f = File.createTempFile("transit", ".trf");
+        f.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(f);
+        TransitFactory.framedWriter(TransitFactory.Format.JSON, out, false).finish();
+        out.close();
+        java.nio.channels.FileChannel ch = new RandomAccessFile(f, "r").getChannel();
+        assertEquals(0, TransitFactory.framedReader(TransitFactory.Format.JSON, ch).count());
+        ch.close();
+    }
+
+    public void testFramedRecordsAreWholeValues() throws Exception {
+        List<Object> values = Arrays.asList((Object) Arrays.asList(1L), " a", TransitFactory.keyword("b"));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        FramedWriter<Object> w = TransitFactory.framedWriter(TransitFactory.Format.JSON, out, false);
+        for (Object o : values)
+            w.write(o);
+        w.finish();
+        java.nio.ByteBuffer b = java.nio.ByteBuffer.wrap(out.toByteArray());
+        b.position(5);
+        for (Object o : values) {
+            byte[] record = new byte[b.getInt()];
+            b.get(record);
+            assertEquals(writeJson(o), new String(record));
+        }
+    }
+
+    public void testBufferReads() throws Exception {
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            List<Object> l = iterateData().subList(0, 100);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            out.write("junk".getBytes());
+            Writer<Object> w = TransitFactory.writer(format, out);
+            for (Object o : l)
+                w.write(o);
+            byte[] bytes = out.toByteArray();
+
+            java.nio.ByteBuffer direct = java.nio.ByteBuffer.allocateDirect(bytes.length);
+            direct.put(bytes);
+            java.nio.ByteBuffer slice = java.nio.ByteBuffer.wrap(bytes, 2, bytes.length - 2).slice();
+            java.nio.ByteBuffer[] buffers = {
+                    java.nio.ByteBuffer.wrap(bytes, 4, bytes.length - 4),
+                    slice,
+                    java.nio.ByteBuffer.wrap(bytes, 4, bytes.length - 4).asReadOnlyBuffer(),
+                    direct};
+            slice.position(2);
+            direct.position(4);
+            for (java.nio.ByteBuffer b : buffers) {
+                int position = b.position();
+                StreamingReader r = TransitFactory.reader(format, b);
+                for (Object o : l)
+                    assertEquals(o, r.read());
+                assertFalse(r.hasNext());
+                assertEquals(position, b.position());
+            }
+
+            File f = File.createTempFile("transit", ".dat");
+            f.deleteOnExit();
+            FileOutputStream fo = new FileOutputStream(f);
+            fo.write(bytes, 4, bytes.length - 4);
+            fo.close();
+            StreamingReader r = TransitFactory.reader(format, f.toPath());
+            for (Object o : l)
+                assertEquals(o, r.read());
+            assertFalse(r.hasNext());
+        }
+    }
+
+    // encode must produce what a writer does for a single value, and
+    // decode must read it back, however often the pooled codecs are reused
+    public void testOneShot() throws Exception {
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            List<Object> values = new ArrayList<Object>(iterateData().subList(0, 3));
+            values.add(TransitFactory.keyword("scalar"));
+            values.add(null);
+            values.add(Arrays.asList(new UUID(1, 2), new Date(1000), 2.5, "~x"));
+            for (int i = 0; i < 3; i++) {
+                for (Object o : values) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    TransitFactory.writer(format, out).write(o);
+                    byte[] bytes = TransitFactory.encode(format, o);
+                    assertTrue(Arrays.equals(out.toByteArray(), bytes));
+                    assertEquals(o, TransitFactory.decode(format, bytes));
+                }
+            }
+            try {
+                TransitFactory.encode(format, Arrays.asList(TransitFactory.keyword("ok"), new Object()));
+                fail();
+            } catch (RuntimeException e) {
+            }
+            assertTrue(Arrays.equals(TransitFactory.encode(format, values.get(0)), TransitFactory.encode(format, values.get(0))));
+        }
+        assertEquals(TransitFactory.keyword("abc"), TransitFactory.decode(TransitFactory.Format.JSON, "[\"~#\'\",\"~:abc\"]"));
+        try {
+            TransitFactory.decode(TransitFactory.Format.MSGPACK, "x");
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    // a reset writer or reader must behave as a new one on the new stream
+    public void testReset() throws Exception {
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            List<Object> values = new ArrayList<Object>(iterateData().subList(0, 3));
+            values.add(TransitFactory.keyword("scalar"));
+            for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                Writer<Object> fresh = TransitFactory.writer(format, engine, expected, null, null, null, FlushPolicy.NEVER);
+                for (Object o : values)
+                    fresh.write(o);
+                fresh.flush();
+
+                ByteArrayOutputStream first = new ByteArrayOutputStream();
+                ResettableWriter<Object> w = (ResettableWriter<Object>) TransitFactory.<Object>writer(format, engine, first, null, null, null, FlushPolicy.NEVER);
+                w.write(values.get(1));
+                w.write(values.get(0));
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                w.reset(out);
+                assertTrue(first.size() > 0);
+                for (Object o : values)
+                    w.write(o);
+                w.flush();
+                assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+
+                StreamingReader r = TransitFactory.reader(format, engine, new ByteArrayInputStream(first.toByteArray()), null, null);
+                assertTrue(r instanceof ResettableReader);
+                assertEquals(values.get(1), r.read());
+                for (int i = 0; i < 2; i++) {
+                    ((ResettableReader) r).reset(new ByteArrayInputStream(out.toByteArray()));
+                    for (Object o : values)
+                        assertEquals(o, r.read());
+                    assertFalse(r.hasNext());
+                }
+            }
+        }
+    }
+
+    public void testCodecPool() throws Exception {
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            CodecPool pool = TransitFactory.codecPool(format, 1);
+            List<Object> values = new ArrayList<Object>(iterateData().subList(0, 3));
+            ResettableWriter<Object> first = null;
+            ResettableReader firstReader = null;
+            for (Object o : values) {
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                TransitFactory.writer(format, expected).write(o);
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                ResettableWriter<Object> w = pool.writer(out);
+                w.write(o);
+                pool.release(w);
+                assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+                if (first == null)
+                    first = w;
+                assertSame(first, w);
+
+                ResettableReader r = pool.reader(new ByteArrayInputStream(out.toByteArray()));
+                assertEquals(o, r.read());
+                pool.release(r);
+                if (firstReader == null)
+                    firstReader = r;
+                assertSame(firstReader, r);
+            }
+            // what does not fit in the pool is dropped
+            ResettableWriter<Object> w1 = pool.writer(new ByteArrayOutputStream());
+            ResettableWriter<Object> w2 = pool.writer(new ByteArrayOutputStream());
+            assertNotSame(w1, w2);
+            pool.release(w1);
+            pool.release(w2);
+            assertSame(w1, pool.writer(new ByteArrayOutputStream()));
+            assertNotSame(w1, pool.writer(new ByteArrayOutputStream()));
+        }
+        try {
+            TransitFactory.codecPool(TransitFactory.Format.JSON, 0);
+            fail();
+        } catch (IllegalArgumentException e) {
+        }
+    }
+
+    // writers and readers from a context must behave as those from
+    // TransitFactory with the same handlers
+    public void testContext() throws Exception {
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            Map<Class, WriteHandler<?, ?>> writeHandlers = new HashMap<Class, WriteHandler<?, ?>>();
+            writeHandlers.put(Locale.class, new AbstractWriteHandler<Locale, String>() {
+                @Override
+                public String tag(Locale l) { return "locale"; }
+
+                @Override
+                public String rep(Locale l) { return l.toLanguageTag(); }
+            });
+            Map<String, ReadHandler<?, ?>> readHandlers = new HashMap<String, ReadHandler<?, ?>>();
+            readHandlers.put("locale", new ReadHandler<Locale, String>() {
+                @Override
+                public Locale fromRep(String rep) { return Locale.forLanguageTag(rep); }
+            });
+            List<Object> values = new ArrayList<Object>(iterateData().subList(0, 3));
+            values.add(Arrays.asList(Locale.CANADA_FRENCH, 0.1, 1e-3, 123456.789, -2.5e300, Locale.CANADA_FRENCH));
+
+            for (TransitFactory.Engine engine : TransitFactory.Engine.values()) {
+                TransitContext context = TransitFactory.context(engine, writeHandlers, null, readHandlers, null, null);
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                Writer<Object> w = TransitFactory.writer(format, engine, expected, writeHandlers,
+                        TransitFactory.defaultDefaultWriteHandler(), null, null);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                Writer<Object> cw = context.writer(format, out);
+                for (Object o : values) {
+                    w.write(o);
+                    cw.write(o);
+                    byte[] b = context.encode(format, o);
+                    assertEquals(o, context.decode(format, b));
+                    assertEquals(o, TransitFactory.reader(format, engine, new ByteArrayInputStream(b), readHandlers, null).read());
+                }
+                assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+
+                Reader r = context.reader(format, new ByteArrayInputStream(out.toByteArray()));
+                for (Object o : values)
+                    assertEquals(o, r.read());
+
+                CodecPool pool = context.codecPool(format, 1);
+                out = new ByteArrayOutputStream();
+                ResettableWriter<Object> pw = pool.writer(out);
+                pw.write(values.get(3));
+                pool.release(pw);
+                ResettableReader pr = pool.reader(new ByteArrayInputStream(out.toByteArray()));
+                assertEquals(values.get(3), pr.read());
+                pool.release(pr);
+            }
+        }
+    }
+
+    // writeAll must produce what writing the values one at a time does
+    public void testWriteAll() throws Exception {
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            List<Object> l = iterateData();
+            java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+            try {
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                Writer<Object> w = TransitFactory.writer(format, expected);
+                for (Object o : l)
+                    w.write(o);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                TransitFactory.writer(format, out).writeAll(l, pool);
+                assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+
+                expected = new ByteArrayOutputStream();
+                w = TransitFactory.writer(format, expected);
+                w.write("first");
+                for (Object o : l)
+                    w.write(o);
+                for (Object o : l.subList(0, 10))
+                    w.write(o);
+                w.write("last");
+                out = new ByteArrayOutputStream();
+                w = TransitFactory.writer(format, out);
+                w.write("first");
+                w.writeAll(l, pool);
+                w.writeAll(l.subList(0, 10), pool);
+                w.writeAll(new ArrayList<Object>(), pool);
+                w.write("last");
+                assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+
+                out = new ByteArrayOutputStream();
+                w = TransitFactory.writer(format, out);
+                w.writeAll(l.subList(0, 2), pool);
+                w.write("last");
+                expected = new ByteArrayOutputStream();
+                w = TransitFactory.writer(format, expected);
+                w.write(l.get(0));
+                w.write(l.get(1));
+                w.write("last");
+                assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        try {
+            TransitFactory.writer(TransitFactory.Format.JSON, new ByteArrayOutputStream())
+                    .writeAll(Arrays.asList((Object) "ok", new Object()), java.util.concurrent.ForkJoinPool.commonPool());
+            fail();
+        } catch (RuntimeException e) {
+        }
+    }
+
+    // a list long enough to be split, with more cacheable strings than
+    // the cache holds
+    private static List<Object> splitData() {
+        List<Object> l = new ArrayList<Object>();
+        for (int i = 0; i < 12000; i++) {
+            switch (i % 6) {
+                case 0: l.add(TransitFactory.keyword("k" + i)); break;
+                case 1: l.add(iterateData().get(0)); break;
+                case 2: l.add(TransitFactory.symbol("s" + (i % 50))); break;
+                case 3: l.add(Arrays.asList("\u00e9\"\n" + i, null, 1L << 60, 2.5, true)); break;
+                case 4: l.add(new UUID(i, i)); break;
+                default: l.add(new Object[] {"^x", "~y", TransitFactory.keyword("k" + (i - 5))}); break;
+            }
+        }
+        return l;
+    }
+
+    // writing with an executor must produce what writing sequentially does
+    public void testSplitWrite() throws Exception {
+
+        for (TransitFactory.Format format : new TransitFactory.Format[] {TransitFactory.Format.JSON, TransitFactory.Format.JSON_VERBOSE}) {
+            List<Object> l = splitData();
+            Map<Object, Object> m = new HashMap<Object, Object>();
+            m.put(TransitFactory.keyword("before"), TransitFactory.keyword("k0"));
+            m.put(TransitFactory.keyword("data"), l.toArray());
+            Object[] values = {l, m, l.subList(0, 10), Arrays.asList(l, l)};
+            java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(4);
+            try {
+                ByteArrayOutputStream expected = new ByteArrayOutputStream();
+                Writer<Object> w = TransitFactory.writer(format, expected);
+                for (Object o : values)
+                    w.write(o);
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                w = TransitFactory.writer(format, out);
+                for (Object o : values)
+                    w.write(o, pool);
+                assertTrue(Arrays.equals(expected.toByteArray(), out.toByteArray()));
+            } finally {
+                pool.shutdown();
+            }
+        }
+
+        List<Object> l = new ArrayList<Object>(splitData());
+        l.add(new Object());
+        try {
+            TransitFactory.writer(TransitFactory.Format.JSON, new ByteArrayOutputStream())
+                    .write(l, java.util.concurrent.ForkJoinPool.commonPool());
+            fail();
+        } catch (RuntimeException e) {
+        }
+    }
+
+    private static class FlushCountingOutputStream extends ByteArrayOutputStream {
+        public int flushes = 0;
+
+        @Override
+        public void flush() throws IOException {
+            flushes++;
+            super.flush();
+        }
+    }
+
+    private Writer<Object> writer(TransitFactory.Format format, OutputStream out, FlushPolicy flushPolicy) {
+        return TransitFactory.writer(format, out, null, null, null, flushPolicy);
+    }
+
+    public void testFlushEachValue() {
+        List<Object> l = new ArrayList<Object>();
+        for (int i = 0; i < 1000; i++)
+            l.add(Arrays.asList(TransitFactory.keyword("k" + i), i, "s" + i));
+
+        for (TransitFactory.Format format : TransitFactory.Format.values()) {
+            FlushCountingOutputStream out = new FlushCountingOutputStream();
+            Writer<Object> w = writer(format, out, FlushPolicy.EACH_VALUE);
+            w.write(l);
+            assertEquals(1, out.flushes);
+            w.write(l);
+            assertEquals(2, out.flushes);
+        }
+    }
+
+    public void testFlushNever() {
+        FlushCountingOutputStream out = new FlushCountingOutputStream();
+        Writer<Object> w = writer(TransitFactory.Format.JSON, out, FlushPolicy.NEVER);
+        w.write("foo");
+        w.write("bar");
+        assertEquals(0, out.flushes);
+        assertEquals("", out.toString());
+        w.flush();
+        assertEquals(1, out.flushes);
+        assertEquals(scalar("\"foo\"") + " " + scalar("\"bar\""), out.toString());
+    }
+
+    public void testFlushEveryValues() {
+        FlushCountingOutputStream out = new FlushCountingOutputStream();
+        Writer<Object> w = writer(TransitFactory.Format.MSGPACK, out, FlushPolicy.everyValues(3));
+        for (int i = 0; i < 10; i++)
+            w.write(i);
+        assertEquals(3, out.flushes);
+    }
+
+    public void testFlushEveryBytes() {
+        FlushCountingOutputStream out = new FlushCountingOutputStream();
+        Writer<Object> w = writer(TransitFactory.Format.JSON, out, FlushPolicy.everyBytes(100));
+        for (int i = 0; i < 10; i++)
+            w.write("0123456789012345678901234567890123456789");
+        assertEquals(10 * 50 + 9, out.size());
+        assertEquals(5, out.flushes);
+    }
+
+    public void testFlushInterval() {
+        FlushCountingOutputStream out = new FlushCountingOutputStream();
+        Writer<Object> w = writer(TransitFactory.Format.JSON, out, FlushPolicy.interval(1, java.util.concurrent.TimeUnit.HOURS));
+        w.write("foo");
+        assertEquals(0, out.flushes);
+        w = writer(TransitFactory.Format.JSON, out, FlushPolicy.interval(0, java.util.concurrent.TimeUnit.MILLISECONDS));
+        w.write("foo");
+        assertEquals(1, out.flushes);
+    }
+
 }